@@ -0,0 +1,60 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.exception.ApiErrors;
+import com.cursowendt.libraryapi.exception.BusinessException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApiErrorsBenchmark {
+
+    private BindingResult bindingResult;
+    private BusinessException businessException;
+    private ResponseStatusException responseStatusException;
+
+    @Setup
+    public void setUp() {
+        bindingResult = new BeanPropertyBindingResult(new BookDTO(), "bookDTO");
+        bindingResult.rejectValue("title", "NotEmpty", "must not be empty");
+        bindingResult.rejectValue("author", "NotEmpty", "must not be empty");
+        bindingResult.rejectValue("isbn", "NotEmpty", "must not be empty");
+        businessException = new BusinessException("Isbn já cadastrado.");
+        responseStatusException = new ResponseStatusException(HttpStatus.BAD_REQUEST, "Book not found for passed isbn");
+    }
+
+    @Benchmark
+    public ApiErrors fromBindingResult() {
+        return new ApiErrors(bindingResult);
+    }
+
+    @Benchmark
+    public ApiErrors fromBusinessException() {
+        return new ApiErrors(businessException);
+    }
+
+    @Benchmark
+    public ApiErrors fromResponseStatusException() {
+        return new ApiErrors(responseStatusException);
+    }
+
+}
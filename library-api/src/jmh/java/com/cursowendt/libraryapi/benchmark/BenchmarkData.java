@@ -0,0 +1,77 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class BenchmarkData {
+
+    public static final int CUSTOMERS = 100;
+
+    private BenchmarkData() {
+    }
+
+    public static Book book(final long i) {
+        return Book.builder()
+            .title("Title " + i)
+            .author("Author " + (i % 500))
+            .isbn("isbn-" + i)
+            .build();
+    }
+
+    public static Loan loan(final long i, final Book book) {
+        return Loan.builder()
+            .book(book)
+            .customer(customer(i))
+            .customerEmail(customer(i) + "@email.com")
+            .loanDate(LocalDate.now().minusDays(i % 10))
+            .build();
+    }
+
+    public static String customer(final long i) {
+        return "customer-" + (i % CUSTOMERS);
+    }
+
+    public static List<Book> books(final int size) {
+        final List<Book> books = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            final Book book = book(i);
+            book.setId(i + 1);
+            books.add(book);
+        }
+        return books;
+    }
+
+    public static List<Loan> loans(final List<Book> books) {
+        final List<Loan> loans = new ArrayList<>(books.size());
+        for (int i = 0; i < books.size(); i++) {
+            final Loan loan = loan(i, books.get(i));
+            loan.setId(i + 1L);
+            loans.add(loan);
+        }
+        return loans;
+    }
+
+    public static List<BookDTO> bookDtos(final int size) {
+        final List<BookDTO> dtos = new ArrayList<>(size);
+        for (long i = 0; i < size; i++) {
+            dtos.add(new BookDTO(i + 1, "Title " + i, "Author " + (i % 500), "isbn-" + i));
+        }
+        return dtos;
+    }
+
+    public static List<LoanDTO> loanDtos(final int size) {
+        final List<BookDTO> books = bookDtos(size);
+        final List<LoanDTO> dtos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            dtos.add(new LoanDTO(i + 1L, null, customer(i), customer(i) + "@email.com", books.get(i)));
+        }
+        return dtos;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts {@value #ROWS} books and their loans in one transaction through the repositories; the score is rows
+ * per second.
+ * <ul>
+ * <li>{@code IDENTITY}: the mapping before sequences, restored by {@code META-INF/identity-orm.xml}. Hibernate
+ * inserts row by row and reads each generated key back, so JDBC batching can't apply.</li>
+ * <li>{@code SEQUENCE}: pooled sequence ids, JDBC batching off.</li>
+ * <li>{@code SEQUENCE_BATCHED}: the current mapping, pooled sequence ids and batches of 50.</li>
+ * </ul>
+ * {@code database=tcp} runs H2 as a TCP server on localhost so every statement pays a real round trip, which is
+ * what batching saves; {@code mem} is the in-process database the other benchmarks use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InsertBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    public enum Strategy {
+        IDENTITY, SEQUENCE, SEQUENCE_BATCHED
+    }
+
+    @Param({"IDENTITY", "SEQUENCE", "SEQUENCE_BATCHED"})
+    public Strategy strategy;
+
+    @Param({"mem", "tcp"})
+    public String database;
+
+    private Server server;
+    private LibraryState state;
+    private BookRepository bookRepository;
+    private LoanRepository loanRepository;
+    private TransactionTemplate transactionTemplate;
+    private long next;
+
+    @Setup
+    public void setUp() throws SQLException, IOException {
+        String url = "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+        if ("tcp".equals(database)) {
+            server = Server.createTcpServer("-tcpPort", String.valueOf(freePort()), "-ifNotExists").start();
+            url = "jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:benchmark;DB_CLOSE_DELAY=-1";
+        }
+        final List<String> args = new ArrayList<>(List.of(
+            "--spring.datasource.url=" + url,
+            "--spring.jpa.properties.hibernate.jdbc.batch_size=" + (strategy == Strategy.SEQUENCE_BATCHED ? 50 : 0)));
+        if (strategy == Strategy.IDENTITY) {
+            args.add("--spring.jpa.mapping-resources=META-INF/identity-orm.xml");
+        }
+        state = LibraryState.start(0, args.toArray(new String[0]));
+        bookRepository = state.getBean(BookRepository.class);
+        loanRepository = state.getBean(LoanRepository.class);
+        transactionTemplate = new TransactionTemplate(state.getBean(PlatformTransactionManager.class));
+        if (strategy == Strategy.IDENTITY) {
+            final JdbcTemplate jdbcTemplate = state.getBean(JdbcTemplate.class);
+            jdbcTemplate.execute("alter table loan alter column id bigint auto_increment");
+            jdbcTemplate.execute("alter table book alter column id bigint auto_increment");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        loanRepository.deleteAllInBatch();
+        bookRepository.deleteAllInBatch();
+    }
+
+    @TearDown
+    public void tearDown() {
+        state.close();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2 * ROWS)
+    public List<Loan> insertBooksAndLoans() {
+        return transactionTemplate.execute(status -> {
+            final List<Book> books = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                books.add(BenchmarkData.book(next++));
+            }
+            final List<Book> saved = bookRepository.saveAll(books);
+            final List<Loan> loans = new ArrayList<>(ROWS);
+            for (int i = 0; i < ROWS; i++) {
+                loans.add(BenchmarkData.loan(i, saved.get(i)));
+            }
+            return loanRepository.saveAll(loans);
+        });
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.LibraryApiApplication;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Boots library-api without the web layer against a private in-memory H2 database
+ * seeded with {@code books} books and one loan per book. {@code extraArgs} override the defaults by key.
+ */
+public final class LibraryState {
+
+    private static final int SEED_CHUNK = 1_000;
+
+    private final ConfigurableApplicationContext context;
+    private final List<Book> books = new ArrayList<>();
+
+    private LibraryState(final ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    public static LibraryState start(final int books, final String... extraArgs) {
+        final List<String> args = new ArrayList<>(Arrays.asList(
+            "--spring.main.web-application-type=none",
+            "--spring.main.banner-mode=off",
+            "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+            "--spring.mail.host=localhost",
+            "--spring.mail.port=25",
+            "--spring.boot.admin.client.enabled=false",
+            "--logging.file.name=",
+            "--logging.level.root=WARN"));
+        for (final String extra : extraArgs) {
+            // Spring joins repeated options with commas, so an extra option replaces the default with the same key
+            final String key = extra.substring(0, extra.indexOf('=') + 1);
+            args.removeIf(arg -> arg.startsWith(key));
+            args.add(extra);
+        }
+
+        final LibraryState state = new LibraryState(new SpringApplicationBuilder(LibraryApiApplication.class)
+            .run(args.toArray(new String[0])));
+        state.seed(books);
+        return state;
+    }
+
+    private void seed(final int size) {
+        final BookRepository bookRepository = getBean(BookRepository.class);
+        final LoanRepository loanRepository = getBean(LoanRepository.class);
+        for (int offset = 0; offset < size; offset += SEED_CHUNK) {
+            final List<Book> chunk = new ArrayList<>(SEED_CHUNK);
+            for (long i = offset; i < Math.min(size, offset + SEED_CHUNK); i++) {
+                chunk.add(BenchmarkData.book(i));
+            }
+            final List<Book> saved = bookRepository.saveAll(chunk);
+            final List<Loan> loans = new ArrayList<>(saved.size());
+            for (int i = 0; i < saved.size(); i++) {
+                loans.add(BenchmarkData.loan(offset + i, saved.get(i)));
+            }
+            loanRepository.saveAll(loans);
+            books.addAll(saved);
+        }
+    }
+
+    public <T> T getBean(final Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public void close() {
+        context.close();
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.api.mapper.BookMapper;
+import com.cursowendt.libraryapi.api.mapper.LoanMapper;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Maps one page of rows the way BookController.find and LoanController.find do,
+ * comparing the generated mappers with the ModelMapper baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private List<Book> books;
+    private List<Loan> loans;
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final BookMapper bookMapper = new BookMapper();
+    private final LoanMapper loanMapper = new LoanMapper(bookMapper);
+
+    @Setup
+    public void setUp() {
+        books = BenchmarkData.books(pageSize);
+        loans = BenchmarkData.loans(books);
+    }
+
+    @Benchmark
+    public List<BookDTO> booksWithMapper() {
+        return books.stream().map(bookMapper::toDto).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<BookDTO> booksWithModelMapper() {
+        return books.stream().map(book -> modelMapper.map(book, BookDTO.class)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<LoanDTO> loansWithMapper() {
+        return loans.stream().map(loanMapper::toDto).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<LoanDTO> loansWithModelMapper() {
+        return loans.stream()
+            .map(loan -> {
+                LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
+                loanDTO.setBook(modelMapper.map(loan.getBook(), BookDTO.class));
+                return loanDTO;
+            })
+            .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.api.mapper.BookMapper;
+import com.cursowendt.libraryapi.api.mapper.LoanMapper;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reads one page of books and one page of loans per transaction, either as managed entities mapped to DTOs
+ * (the former read path, dirty-checked at commit) or straight into DTOs with the constructor expressions the
+ * repositories use. Run with {@code -prof gc} to compare allocation per operation next to latency, e.g.
+ * {@code -Djmh.args="ProjectionBenchmark -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private static final int BOOKS = 10_000;
+
+    @Param({"20", "100"})
+    public int pageSize;
+
+    private LibraryState state;
+    private EntityManagerFactory entityManagerFactory;
+
+    private final BookMapper bookMapper = new BookMapper();
+    private final LoanMapper loanMapper = new LoanMapper(bookMapper);
+
+    @Setup
+    public void setUp() {
+        state = LibraryState.start(BOOKS);
+        entityManagerFactory = state.getBean(EntityManagerFactory.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        state.close();
+    }
+
+    @Benchmark
+    public List<BookDTO> booksAsEntities() {
+        return inTransaction(entityManager -> entityManager
+            .createQuery(" select b from Book b where b.id > :after order by b.id ", Book.class)
+            .setParameter("after", randomId())
+            .setMaxResults(pageSize)
+            .getResultList()
+            .stream()
+            .map(bookMapper::toDto)
+            .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public List<BookDTO> booksAsProjections() {
+        return inTransaction(entityManager -> entityManager
+            .createQuery(BookRepository.BOOK_DTO + " from Book b where b.id > :after order by b.id ", BookDTO.class)
+            .setParameter("after", randomId())
+            .setMaxResults(pageSize)
+            .getResultList());
+    }
+
+    @Benchmark
+    public List<LoanDTO> loansAsEntities() {
+        return inTransaction(entityManager -> entityManager
+            .createQuery(" select l from Loan l join fetch l.book b where l.customer = :customer order by l.id ", Loan.class)
+            .setParameter("customer", randomCustomer())
+            .setMaxResults(pageSize)
+            .getResultList()
+            .stream()
+            .map(loanMapper::toDto)
+            .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public List<LoanDTO> loansAsProjections() {
+        return inTransaction(entityManager -> entityManager
+            .createQuery(LoanRepository.LOAN_DTO + " where l.customer = :customer order by l.id ", LoanDTO.class)
+            .setParameter("customer", randomCustomer())
+            .setMaxResults(pageSize)
+            .getResultList());
+    }
+
+    private <T> T inTransaction(final Function<EntityManager, T> work) {
+        final EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            final T result = work.apply(entityManager);
+            entityManager.getTransaction().commit();
+            return result;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private long randomId() {
+        return state.getBooks().get(ThreadLocalRandom.current().nextInt(BOOKS - pageSize)).getId();
+    }
+
+    private String randomCustomer() {
+        return BenchmarkData.customer(ThreadLocalRandom.current().nextInt(BenchmarkData.CUSTOMERS));
+    }
+
+}
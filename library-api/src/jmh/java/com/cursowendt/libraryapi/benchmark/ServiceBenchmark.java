@@ -0,0 +1,99 @@
+package com.cursowendt.libraryapi.benchmark;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.api.dto.LoanFilterDTO;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.LoanService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls BookService and LoanService against an embedded H2 database.
+ * Table size is set with {@code -p books=...}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private static final PageRequest FIRST_PAGE = PageRequest.of(0, 20);
+
+    @Param({"1000", "10000"})
+    public int books;
+
+    private LibraryState state;
+    private BookService bookService;
+    private LoanService loanService;
+    private List<Book> seeded;
+    private final AtomicLong isbnSequence = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        state = LibraryState.start(books);
+        bookService = state.getBean(BookService.class);
+        loanService = state.getBean(LoanService.class);
+        seeded = state.getBooks();
+        isbnSequence.set(books);
+    }
+
+    @TearDown
+    public void tearDown() {
+        state.close();
+    }
+
+    private Book randomBook() {
+        return seeded.get(ThreadLocalRandom.current().nextInt(seeded.size()));
+    }
+
+    @Benchmark
+    public Optional<Book> getBookById() {
+        return bookService.getById(randomBook().getId());
+    }
+
+    @Benchmark
+    public Page<BookDTO> findBooksByTitle() {
+        final Book filter = Book.builder().title("title " + ThreadLocalRandom.current().nextInt(100)).build();
+        return bookService.find(filter, FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Book saveBook() {
+        return bookService.save(BenchmarkData.book(isbnSequence.getAndIncrement()));
+    }
+
+    @Benchmark
+    public Page<LoanDTO> findLoans() {
+        final Book book = randomBook();
+        final LoanFilterDTO filter = new LoanFilterDTO(book.getIsbn(), BenchmarkData.customer(book.getId()));
+        return loanService.find(filter, FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Page<LoanDTO> getLoansByBook() {
+        return loanService.getLoansByBook(randomBook().getId(), FIRST_PAGE);
+    }
+
+}
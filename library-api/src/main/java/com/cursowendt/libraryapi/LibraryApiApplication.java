@@ -1,6 +1,7 @@
 package com.cursowendt.libraryapi;
 
-import org.modelmapper.ModelMapper;
+import com.cursowendt.libraryapi.api.mapper.BookMapper;
+import com.cursowendt.libraryapi.api.mapper.LoanMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -14,8 +15,13 @@ public class LibraryApiApplication {
 //    private EmailService emailService;
 
     @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
+    public BookMapper bookMapper() {
+        return new BookMapper();
+    }
+
+    @Bean
+    public LoanMapper loanMapper(final BookMapper bookMapper) {
+        return new LoanMapper(bookMapper);
     }
 //
 //    @Bean
@@ -2,6 +2,7 @@ package com.cursowendt.libraryapi.api;
 
 import com.cursowendt.libraryapi.api.exception.ApiErrors;
 import com.cursowendt.libraryapi.exception.BusinessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -28,6 +29,11 @@ public class ApplicationControllerAdvice {
         return new ApiErrors(ex);
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity handleOptimisticLockingFailure(OptimisticLockingFailureException ex) {
+        return handleResponseStatusException(
+            new ResponseStatusException(HttpStatus.CONFLICT, "Resource was changed by another request"));
+    }
 
     @ExceptionHandler(ResponseStatusException.class)
     public ResponseEntity handleResponseStatusException(ResponseStatusException ex) {
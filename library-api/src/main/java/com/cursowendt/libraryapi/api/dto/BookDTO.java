@@ -1,5 +1,6 @@
 package com.cursowendt.libraryapi.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -24,4 +25,14 @@ public class BookDTO {
     @NotEmpty
     private String isbn;
 
+    /**
+     * Sent as the ETag header rather than in the body.
+     */
+    @JsonIgnore
+    private Long version;
+
+    public BookDTO(final Long id, final String title, final String author, final String isbn) {
+        this(id, title, author, isbn, null);
+    }
+
 }
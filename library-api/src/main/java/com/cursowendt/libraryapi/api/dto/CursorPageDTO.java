@@ -0,0 +1,23 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+
+    private List<T> content;
+
+    /**
+     * Token to send as {@code after} to fetch the next page, or null on the last page.
+     */
+    private String next;
+
+}
@@ -0,0 +1,20 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportErrorDTO {
+
+    private long line;
+    private String isbn;
+    private List<String> errors;
+
+}
@@ -0,0 +1,26 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportReportDTO {
+
+    private long imported;
+    private long rejected;
+
+    /**
+     * Rejected lines, capped at {@code application.import.max-reported-errors}; {@code rejected} has the full count.
+     */
+    @Builder.Default
+    private List<ImportErrorDTO> errors = new ArrayList<>();
+
+}
@@ -0,0 +1,22 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IsbnLookupDTO {
+
+    @NotEmpty
+    @Size(max = RequestLimits.MAX_ROWS)
+    private List<@NotEmpty String> isbns;
+
+}
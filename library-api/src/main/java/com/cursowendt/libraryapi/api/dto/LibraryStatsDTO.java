@@ -0,0 +1,79 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Snapshot served by the {@code librarystats} actuator endpoint. Latencies are in milliseconds.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryStatsDTO {
+
+    private List<LatencyDTO> endpoints;
+    private List<LatencyDTO> repositories;
+    private List<CacheDTO> caches;
+    private PoolDTO pool;
+    private LateLoansDTO lateLoans;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LatencyDTO {
+
+        private String name;
+        private long count;
+        private long errors;
+        private double p50;
+        private double p99;
+
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CacheDTO {
+
+        private String name;
+        private long hits;
+        private long misses;
+
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PoolDTO {
+
+        private long active;
+        private long idle;
+        private long pending;
+        private long max;
+        private double acquireP99;
+        private double usageP99;
+
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class LateLoansDTO {
+
+        private long unfinishedPartitions;
+        private long remaining;
+        private long processed;
+        private long leaseLost;
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchDTO {
+
+    /**
+     * One JDBC batch and one loan sequence allocation.
+     */
+    public static final int MAX_ISBNS = 50;
+
+    @NotEmpty
+    private String customer;
+
+    @NotEmpty
+    private String email;
+
+    @NotEmpty
+    @Size(max = MAX_ISBNS)
+    private List<@NotEmpty String> isbns;
+
+}
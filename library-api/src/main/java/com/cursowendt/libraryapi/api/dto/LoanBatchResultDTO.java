@@ -0,0 +1,21 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one ISBN of a bulk checkout: the new loan id, or the reason no loan was made.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanBatchResultDTO {
+
+    private String isbn;
+    private Long loanId;
+    private String error;
+
+}
@@ -23,4 +23,12 @@ public class LoanDTO {
     private String email;
     private BookDTO book;
 
+    /**
+     * Flat constructor used by the JPQL constructor expressions in LoanRepository, which cannot nest a BookDTO.
+     */
+    public LoanDTO(final Long id, final String customer, final String email,
+                   final Long bookId, final String title, final String author, final String isbn) {
+        this(id, null, customer, email, new BookDTO(bookId, title, author, isbn));
+    }
+
 }
@@ -0,0 +1,49 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Result of a multi-get: what was found in request order, plus the requested keys that matched nothing.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LookupDTO<K, T> {
+
+    @Builder.Default
+    private List<T> content = new ArrayList<>();
+
+    @Builder.Default
+    private List<K> missing = new ArrayList<>();
+
+    /**
+     * Orders {@code rows} as {@code keys}, which may come back from an IN query in any order. Repeated keys are
+     * answered once.
+     */
+    public static <K, T> LookupDTO<K, T> of(final Collection<K> keys, final List<T> rows, final Function<T, K> key) {
+        final Map<K, T> found = rows.stream().collect(Collectors.toMap(key, Function.identity()));
+        final LookupDTO<K, T> lookup = new LookupDTO<>();
+        for (final K requested : new LinkedHashSet<>(keys)) {
+            final T row = found.get(requested);
+            if (row == null) {
+                lookup.getMissing().add(requested);
+            } else {
+                lookup.getContent().add(row);
+            }
+        }
+        return lookup;
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.cursowendt.libraryapi.api.dto;
+
+/**
+ * Bounds shared by the read endpoints, so a cursor page and a multi-get never read more rows than one another.
+ */
+public final class RequestLimits {
+
+    public static final int MAX_ROWS = 100;
+
+    private RequestLimits() {
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loan ids of a bulk return, split by outcome and kept in request order.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReturnReportDTO {
+
+    @Builder.Default
+    private List<Long> returned = new ArrayList<>();
+
+    @Builder.Default
+    private List<Long> alreadyReturned = new ArrayList<>();
+
+    @Builder.Default
+    private List<Long> notFound = new ArrayList<>();
+
+}
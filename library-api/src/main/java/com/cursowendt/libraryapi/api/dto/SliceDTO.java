@@ -0,0 +1,31 @@
+package com.cursowendt.libraryapi.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SliceDTO<T> {
+
+    private List<T> content;
+    private int number;
+    private int size;
+    private boolean hasNext;
+
+    /**
+     * Cached total, only filled when requested with {@code estimate=true}. May lag behind recent writes.
+     */
+    private Long totalEstimate;
+
+    public static <T> SliceDTO<T> of(final List<T> content, final Slice<?> slice, final Long totalEstimate) {
+        return new SliceDTO<>(content, slice.getNumber(), slice.getSize(), slice.hasNext(), totalEstimate);
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.cursowendt.libraryapi.api.mapper;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.model.entity.Book;
+
+import java.util.Objects;
+
+public class BookMapper {
+
+    public BookDTO toDto(final Book book) {
+        if (Objects.isNull(book)) {
+            return null;
+        }
+        return new BookDTO(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn(), book.getVersion());
+    }
+
+    public Book toEntity(final BookDTO bookDTO) {
+        if (Objects.isNull(bookDTO)) {
+            return null;
+        }
+        final Book book = new Book();
+        book.setId(bookDTO.getId());
+        book.setTitle(bookDTO.getTitle());
+        book.setAuthor(bookDTO.getAuthor());
+        book.setIsbn(bookDTO.getIsbn());
+        return book;
+    }
+
+}
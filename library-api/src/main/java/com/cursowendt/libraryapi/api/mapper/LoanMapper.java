@@ -0,0 +1,25 @@
+package com.cursowendt.libraryapi.api.mapper;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.model.entity.Loan;
+
+import java.util.Objects;
+
+public class LoanMapper {
+
+    private final BookMapper bookMapper;
+
+    public LoanMapper(final BookMapper bookMapper) {
+        this.bookMapper = bookMapper;
+    }
+
+    public LoanDTO toDto(final Loan loan) {
+        if (Objects.isNull(loan)) {
+            return null;
+        }
+        final BookDTO bookDTO = bookMapper.toDto(loan.getBook());
+        return new LoanDTO(loan.getId(), null, loan.getCustomer(), loan.getCustomerEmail(), bookDTO);
+    }
+
+}
@@ -1,10 +1,19 @@
 package com.cursowendt.libraryapi.api.resource;
 
 import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.CursorPageDTO;
+import com.cursowendt.libraryapi.api.dto.ImportReportDTO;
+import com.cursowendt.libraryapi.api.dto.IsbnLookupDTO;
 import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.api.dto.LookupDTO;
+import com.cursowendt.libraryapi.api.dto.RequestLimits;
+import com.cursowendt.libraryapi.api.dto.SliceDTO;
+import com.cursowendt.libraryapi.api.mapper.BookMapper;
 import com.cursowendt.libraryapi.model.entity.Book;
-import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.service.BookImportService;
 import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.ExportService;
 import com.cursowendt.libraryapi.service.LoanService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -12,25 +21,34 @@ import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/books")
@@ -40,39 +58,102 @@ import java.util.stream.Collectors;
 public class BookController {
 
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final BookMapper bookMapper;
     private final LoanService loanService;
+    private final BookImportService bookImportService;
+    private final ExportService exportService;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
     @ApiOperation("Create a book")
     public BookDTO create(@RequestBody @Valid BookDTO bookDTO) {
         log.info("creating a book for isbn: {}", bookDTO.getIsbn());
-        Book entity = modelMapper.map(bookDTO, Book.class);
+        Book entity = bookMapper.toEntity(bookDTO);
         entity = bookService.save(entity);
-        return modelMapper.map(entity, BookDTO.class);
+        return bookMapper.toDto(entity);
+    }
+
+    @PostMapping(value = "/import", consumes = {DataFormat.NDJSON_VALUE, DataFormat.CSV_VALUE})
+    @ApiOperation("Imports books from an NDJSON or CSV stream")
+    public ImportReportDTO importBooks(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                       InputStream body) throws IOException {
+        log.info("Importing books from {}", contentType);
+        return bookImportService.importBooks(body, DataFormat.of(contentType),
+            contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset());
+    }
+
+    @GetMapping("/export")
+    @ApiOperation("Streams every book as NDJSON or CSV")
+    public void exportBooks(@RequestParam(defaultValue = "NDJSON") DataFormat format,
+                            @RequestParam(defaultValue = "false") boolean gzip,
+                            HttpServletResponse response) throws IOException {
+        log.info("Exporting books as {}", format);
+        Exports.write(response, "books", format, gzip, output -> exportService.exportBooks(output, format));
     }
 
     @GetMapping("/{id}")
     @ApiOperation("Obtains a book details by Id")
-    public BookDTO get(@PathVariable Long id) {
+    @ApiResponses({
+            @ApiResponse(code = 304, message = "If-None-Match lists the current ETag")
+    })
+    public ResponseEntity<BookDTO> get(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("Obtaining details for book id: {}", id);
-        return bookService.getById(id)
-            .map(book -> modelMapper.map(book, BookDTO.class))
+        if (ifNoneMatch != null) {
+            String etag = ETags.of(bookService.getVersionById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+            if (ETags.matches(ifNoneMatch, etag, true)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+        BookDTO book = bookService.getDetailsById(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        return ResponseEntity.ok().eTag(ETags.of(book.getVersion())).body(book);
     }
 
     @GetMapping
     @ApiOperation("Find books by params")
     public Page<BookDTO> find(BookDTO bookDTO, Pageable pageRequest) {
-        Book filter = modelMapper.map(bookDTO, Book.class);
-        Page<Book> result = bookService.find(filter, pageRequest);
-        List<BookDTO> list = result.getContent()
-            .stream()
-            .map(entity -> modelMapper.map(entity, BookDTO.class))
-            .collect(Collectors.toList());
-
-        return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements());
+        Book filter = bookMapper.toEntity(bookDTO);
+        return bookService.find(filter, pageRequest);
+    }
+
+    @GetMapping(params = "ids")
+    @ApiOperation("Obtains the details of several books by Id")
+    public LookupDTO<Long, BookDTO> getByIds(@RequestParam List<Long> ids) {
+        if (ids.isEmpty() || ids.size() > RequestLimits.MAX_ROWS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Between 1 and " + RequestLimits.MAX_ROWS + " ids must be informed");
+        }
+        return bookService.getDetailsByIds(ids);
+    }
+
+    @PostMapping("/lookup")
+    @ApiOperation("Obtains the details of several books by isbn")
+    public LookupDTO<String, BookDTO> lookup(@RequestBody @Valid IsbnLookupDTO isbnLookupDTO) {
+        return bookService.getDetailsByIsbns(isbnLookupDTO.getIsbns());
+    }
+
+    @GetMapping(params = {"count=false", "!after"})
+    @ApiOperation("Find books by params without counting the total")
+    public SliceDTO<BookDTO> findSlice(BookDTO bookDTO,
+                                       Pageable pageRequest,
+                                       @RequestParam(defaultValue = "false") boolean estimate) {
+        Book filter = bookMapper.toEntity(bookDTO);
+        Slice<BookDTO> result = bookService.findSlice(filter, pageRequest);
+        return SliceDTO.of(result.getContent(), result, estimate ? bookService.estimateCount(filter) : null);
+    }
+
+    @GetMapping(params = "after")
+    @ApiOperation("Find books by params, paging with a cursor")
+    public CursorPageDTO<BookDTO> findAfter(BookDTO bookDTO,
+                                            @RequestParam String after,
+                                            @RequestParam(defaultValue = Cursors.DEFAULT_SIZE) int size) {
+        Cursors.checkSize(size);
+        Book filter = bookMapper.toEntity(bookDTO);
+        Slice<BookDTO> result = bookService.findAfter(filter, Cursors.decode(after), size);
+        return Cursors.page(result.getContent(), result.hasNext(), BookDTO::getId);
     }
 
     @DeleteMapping("/{id}")
@@ -90,34 +171,77 @@ public class BookController {
 
     @PutMapping("/{id}")
     @ApiOperation("Updates a book")
-    public BookDTO update(@PathVariable Long id, BookDTO bookDTO) {
+    @ApiResponses({
+            @ApiResponse(code = 412, message = "If-Match does not list the current ETag")
+    })
+    public ResponseEntity<BookDTO> update(
+            @PathVariable Long id,
+            BookDTO bookDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("Updating book of id: {}", id);
-        return bookService.getById(id)
-            .map(book -> {
-                book.setAuthor(bookDTO.getAuthor());
-                book.setTitle(bookDTO.getTitle());
-                book = bookService.update(book);
-                return modelMapper.map(book, BookDTO.class);
-            }).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        Book book = bookService.getById(id)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (ifMatch != null && !ETags.matches(ifMatch, ETags.of(book.getVersion()), false)) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+        }
+        book.setAuthor(bookDTO.getAuthor());
+        book.setTitle(bookDTO.getTitle());
+        try {
+            book = bookService.update(book);
+        } catch (OptimisticLockingFailureException ex) {
+            if (ifMatch != null) {
+                throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+            }
+            throw ex;
+        }
+        return ResponseEntity.ok().eTag(ETags.of(book.getVersion())).body(bookMapper.toDto(book));
     }
 
     @GetMapping("/{id}/loans")
     @ApiOperation("Obtains loans book by Id")
-    public Page<LoanDTO> loansByBook(@PathVariable Long id, Pageable pageable) {
-        Book book = bookService.getById(id)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-        Page<Loan> result = loanService.getLoansByBook(book, pageable);
-        List<LoanDTO> list = result.getContent()
-            .stream()
-            .map(loan -> {
-                Book loanBook = loan.getBook();
-                BookDTO bookDTO = modelMapper.map(loanBook, BookDTO.class);
-                LoanDTO loanDTO = modelMapper.map(loan, LoanDTO.class);
-                loanDTO.setBook(bookDTO);
-                return loanDTO;
-            }).collect(Collectors.toList());
-
-        return new PageImpl<>(list, pageable, result.getTotalElements());
+    public ResponseEntity<Page<LoanDTO>> loansByBook(
+            @PathVariable Long id,
+            Pageable pageable,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return loans(id, ifNoneMatch, () -> loanService.getLoansByBook(id, pageable));
+    }
+
+    @GetMapping(value = "/{id}/loans", params = {"count=false", "!after"})
+    @ApiOperation("Obtains loans book by Id without counting the total")
+    public ResponseEntity<SliceDTO<LoanDTO>> loansByBookSlice(
+            @PathVariable Long id,
+            Pageable pageable,
+            @RequestParam(defaultValue = "false") boolean estimate,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return loans(id, ifNoneMatch, () -> {
+            Slice<LoanDTO> result = loanService.getLoansByBookSlice(id, pageable);
+            return SliceDTO.of(result.getContent(), result, estimate ? loanService.estimateCountByBook(id) : null);
+        });
+    }
+
+    @GetMapping(value = "/{id}/loans", params = "after")
+    @ApiOperation("Obtains loans book by Id, paging with a cursor")
+    public ResponseEntity<CursorPageDTO<LoanDTO>> loansByBookAfter(
+            @PathVariable Long id,
+            @RequestParam String after,
+            @RequestParam(defaultValue = Cursors.DEFAULT_SIZE) int size,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Cursors.checkSize(size);
+        Long afterId = Cursors.decode(after);
+        return loans(id, ifNoneMatch, () -> {
+            Slice<LoanDTO> result = loanService.getLoansByBookAfter(id, afterId, size);
+            return Cursors.page(result.getContent(), result.hasNext(), LoanDTO::getId);
+        });
+    }
+
+    /**
+     * Every loan written for the book bumps the book's version, as does an edit of the book rendered into each loan
+     * row, so that version alone tags the listing and doubles as its 404 check.
+     */
+    private <T> ResponseEntity<T> loans(final Long id, final String ifNoneMatch, final Supplier<T> body) {
+        String etag = ETags.of(bookService.getVersionById(id)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+        return ETags.conditional(ifNoneMatch, etag, body);
     }
 
 }
@@ -0,0 +1,63 @@
+package com.cursowendt.libraryapi.api.resource;
+
+import com.cursowendt.libraryapi.api.dto.CursorPageDTO;
+import com.cursowendt.libraryapi.api.dto.RequestLimits;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Encodes and decodes the opaque {@code after} token used by the cursor mode of the list endpoints.
+ * The token carries the id of the last row of the previous page; rows are ordered by id, so the id is
+ * both the sort key and the tie breaker and every page is a single index seek.
+ */
+final class Cursors {
+
+    static final String DEFAULT_SIZE = "20";
+
+    private static final String PREFIX = "id:";
+    private static final Long FIRST_PAGE = 0L;
+
+    private Cursors() {
+    }
+
+    static Long decode(final String token) {
+        if (token == null || token.isEmpty()) {
+            return FIRST_PAGE;
+        }
+        try {
+            final String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (!value.startsWith(PREFIX)) {
+                throw new IllegalArgumentException(value);
+            }
+            return Long.valueOf(value.substring(PREFIX.length()));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    static String encode(final Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void checkSize(final int size) {
+        if (size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page size must be greater than zero");
+        }
+        if (size > RequestLimits.MAX_ROWS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Page size must not be greater than " + RequestLimits.MAX_ROWS);
+        }
+    }
+
+    static <T> CursorPageDTO<T> page(final List<T> content, final boolean hasNext, final Function<T, Long> id) {
+        final String next = hasNext && !content.isEmpty() ? encode(id.apply(content.get(content.size() - 1))) : null;
+        return new CursorPageDTO<>(content, next);
+    }
+
+}
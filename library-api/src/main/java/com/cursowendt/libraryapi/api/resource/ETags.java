@@ -0,0 +1,52 @@
+package com.cursowendt.libraryapi.api.resource;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Strong ETags built from {@code @Version} columns, so a conditional request is answered from a version lookup
+ * before the representation is read or serialized.
+ */
+final class ETags {
+
+    private static final String ANY = "*";
+    private static final String WEAK_PREFIX = "W/";
+
+    private ETags() {
+    }
+
+    static String of(final Object... versions) {
+        return Arrays.stream(versions)
+            .map(String::valueOf)
+            .collect(Collectors.joining(".", "\"", "\""));
+    }
+
+    /**
+     * Whether a comma separated If-Match or If-None-Match header lists the tag. If-None-Match compares weakly and
+     * ignores the {@code W/} prefix; If-Match compares strongly, so a weak tag never matches.
+     */
+    static boolean matches(final String header, final String etag, final boolean weak) {
+        return Arrays.stream(header.split(","))
+            .map(String::trim)
+            .map(candidate -> weak && candidate.startsWith(WEAK_PREFIX)
+                ? candidate.substring(WEAK_PREFIX.length())
+                : candidate)
+            .anyMatch(candidate -> ANY.equals(candidate) || candidate.equals(etag));
+    }
+
+    /**
+     * 304 when If-None-Match lists the tag, otherwise the body with the tag. The tag is read before the body, so a
+     * change in between costs the client one more full response, never a stale 304.
+     */
+    static <T> ResponseEntity<T> conditional(final String ifNoneMatch, final String etag, final Supplier<T> body) {
+        if (ifNoneMatch != null && matches(ifNoneMatch, etag, true)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(body.get());
+    }
+
+}
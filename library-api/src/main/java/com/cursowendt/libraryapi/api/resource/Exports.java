@@ -0,0 +1,47 @@
+package com.cursowendt.libraryapi.api.resource;
+
+import com.cursowendt.libraryapi.service.DataFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes an export straight to the servlet response, optionally gzip-compressed, so nothing but the
+ * write buffers is held in memory.
+ */
+final class Exports {
+
+    private static final int GZIP_BUFFER = 8 * 1024;
+
+    private Exports() {
+    }
+
+    interface Body {
+
+        void writeTo(OutputStream output) throws IOException;
+
+    }
+
+    static void write(final HttpServletResponse response, final String name, final DataFormat format,
+                      final boolean gzip, final Body body) throws IOException {
+        response.setContentType(format.getMediaType().toString());
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.builder("attachment")
+            .filename(name + "." + format.getExtension())
+            .build()
+            .toString());
+        if (!gzip) {
+            body.writeTo(response.getOutputStream());
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        final GZIPOutputStream output = new GZIPOutputStream(response.getOutputStream(), GZIP_BUFFER);
+        body.writeTo(output);
+        output.finish();
+    }
+
+}
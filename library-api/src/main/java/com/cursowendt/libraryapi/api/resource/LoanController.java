@@ -1,19 +1,25 @@
 package com.cursowendt.libraryapi.api.resource;
 
-import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.CursorPageDTO;
+import com.cursowendt.libraryapi.api.dto.LoanBatchDTO;
+import com.cursowendt.libraryapi.api.dto.LoanBatchResultDTO;
 import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.api.dto.LoanFilterDTO;
+import com.cursowendt.libraryapi.api.dto.ReturnLoansDTO;
+import com.cursowendt.libraryapi.api.dto.ReturnReportDTO;
 import com.cursowendt.libraryapi.api.dto.ReturnedLoanDTO;
+import com.cursowendt.libraryapi.api.dto.SliceDTO;
 import com.cursowendt.libraryapi.model.entity.Book;
 import com.cursowendt.libraryapi.model.entity.Loan;
 import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.ExportService;
 import com.cursowendt.libraryapi.service.LoanService;
+import com.cursowendt.libraryapi.service.ReturnStatus;
 import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -21,13 +27,16 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/loans")
@@ -36,7 +45,7 @@ public class LoanController {
 
     private final LoanService loanService;
     private final BookService bookService;
-    private final ModelMapper modelMapper;
+    private final ExportService exportService;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -56,29 +65,63 @@ public class LoanController {
         return entity.getId();
     }
 
+    @PostMapping("/batch")
+    public List<LoanBatchResultDTO> createBatch(@RequestBody @Valid LoanBatchDTO loanBatchDTO) {
+        return loanService.checkout(loanBatchDTO);
+    }
+
     @PatchMapping("/{id}")
     public void returnBook(@PathVariable Long id, @RequestBody ReturnedLoanDTO returnedLoanDTO) {
+        if (Boolean.TRUE.equals(returnedLoanDTO.getReturned())) {
+            ReturnStatus status = loanService.returnLoan(id);
+            if (status == ReturnStatus.NOT_FOUND) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+            }
+            if (status == ReturnStatus.ALREADY_RETURNED) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Loan already returned");
+            }
+            return;
+        }
+
         Loan loan = loanService.getById(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+        if (Boolean.TRUE.equals(loan.getReturned())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A returned loan can't be reopened");
+        }
+    }
+
+    @PostMapping("/returns")
+    public ReturnReportDTO returnBooks(@RequestBody @Valid ReturnLoansDTO returnLoansDTO) {
+        return loanService.returnLoans(returnLoansDTO.getIds());
+    }
 
-        loan.setReturned(returnedLoanDTO.getReturned());
-        loanService.update(loan);
+    @GetMapping("/export")
+    public void exportLoans(@RequestParam(defaultValue = "NDJSON") DataFormat format,
+                            @RequestParam(defaultValue = "false") boolean gzip,
+                            HttpServletResponse response) throws IOException {
+        Exports.write(response, "loans", format, gzip, output -> exportService.exportLoans(output, format));
     }
 
     @GetMapping
     public Page<LoanDTO> find(LoanFilterDTO loanFilterDTO, Pageable pageable) {
-        Page<Loan> result = loanService.find(loanFilterDTO, pageable);
-        List<LoanDTO> loans = result.getContent()
-            .stream()
-            .map(entity -> {
-                Book book = entity.getBook();
-                BookDTO bookDTO = modelMapper.map(book, BookDTO.class);
-                LoanDTO loanDTO = modelMapper.map(entity, LoanDTO.class);
-                loanDTO.setBook(bookDTO);
-                return loanDTO;
-            })
-            .collect(Collectors.toList());
-        return new PageImpl<LoanDTO>(loans, pageable, result.getTotalElements());
+        return loanService.find(loanFilterDTO, pageable);
+    }
+
+    @GetMapping(params = {"count=false", "!after"})
+    public SliceDTO<LoanDTO> findSlice(LoanFilterDTO loanFilterDTO,
+                                       Pageable pageable,
+                                       @RequestParam(defaultValue = "false") boolean estimate) {
+        Slice<LoanDTO> result = loanService.findSlice(loanFilterDTO, pageable);
+        return SliceDTO.of(result.getContent(), result, estimate ? loanService.estimateCount(loanFilterDTO) : null);
+    }
+
+    @GetMapping(params = "after")
+    public CursorPageDTO<LoanDTO> findAfter(LoanFilterDTO loanFilterDTO,
+                                            @RequestParam String after,
+                                            @RequestParam(defaultValue = Cursors.DEFAULT_SIZE) int size) {
+        Cursors.checkSize(size);
+        Slice<LoanDTO> result = loanService.findAfter(loanFilterDTO, Cursors.decode(after), size);
+        return Cursors.page(result.getContent(), result.hasNext(), LoanDTO::getId);
     }
 
 }
@@ -0,0 +1,156 @@
+package com.cursowendt.libraryapi.config;
+
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO;
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO.CacheDTO;
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO.LatencyDTO;
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO.LateLoansDTO;
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO.PoolDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the meters the Spring Boot Admin library dashboard shows into one compact document, so the dashboard polls
+ * one endpoint per instance instead of one {@code /actuator/metrics/{name}} call per meter and tag.
+ * <p>
+ * Percentiles are read from the fixed histogram buckets ({@code management.metrics.distribution.slo}) set in
+ * application.properties. Timers that only differ by
+ * status or exception are merged by adding up their buckets, and a percentile is reported as the upper bound of the
+ * bucket it falls in.
+ */
+@Component
+@Endpoint(id = "librarystats")
+public class LibraryStatsEndpoint {
+
+    private final MeterRegistry meterRegistry;
+
+    public LibraryStatsEndpoint(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ReadOperation
+    public LibraryStatsDTO stats() {
+        return LibraryStatsDTO.builder()
+            .endpoints(latencies(meterRegistry.find("http.server.requests").timers()
+                    .stream()
+                    .filter(timer -> !timer.getId().getTag("uri").startsWith("/actuator"))
+                    .collect(Collectors.toList()),
+                timer -> timer.getId().getTag("method") + " " + timer.getId().getTag("uri"),
+                timer -> "SERVER_ERROR".equals(timer.getId().getTag("outcome"))))
+            .repositories(latencies(meterRegistry.find(MethodMetricsAspect.REPOSITORY_INVOCATIONS).timers(),
+                timer -> timer.getId().getTag("repository") + "." + timer.getId().getTag("method"),
+                timer -> !"none".equals(timer.getId().getTag("exception"))))
+            .caches(Arrays.asList(
+                cache("count-estimate", "library.count.estimates", "hit", "miss"),
+                cache("isbn-filter", "library.isbn.filter.lookups", "negative", "positive")))
+            .pool(PoolDTO.builder()
+                .active(gauges("hikaricp.connections.active"))
+                .idle(gauges("hikaricp.connections.idle"))
+                .pending(gauges("hikaricp.connections.pending"))
+                .max(gauges("hikaricp.connections.max"))
+                .acquireP99(merge("acquire", snapshots("hikaricp.connections.acquire")).getP99())
+                .usageP99(merge("usage", snapshots("hikaricp.connections.usage")).getP99())
+                .build())
+            .lateLoans(LateLoansDTO.builder()
+                .unfinishedPartitions(gauges("library.lateloans.partitions.unfinished"))
+                .remaining(gauges("library.lateloans.partition.lag"))
+                .processed(counters("library.lateloans.processed"))
+                .leaseLost(counters("library.lateloans.lease.lost"))
+                .build())
+            .build();
+    }
+
+    private List<LatencyDTO> latencies(final Collection<Timer> timers, final Function<Timer, String> name,
+                                       final Predicate<Timer> failed) {
+        final Map<String, List<Timer>> grouped = timers
+            .stream()
+            .collect(Collectors.groupingBy(name, TreeMap::new, Collectors.toList()));
+        return grouped.entrySet()
+            .stream()
+            .map(entry -> {
+                final LatencyDTO latency = merge(entry.getKey(), entry.getValue()
+                    .stream()
+                    .map(Timer::takeSnapshot)
+                    .collect(Collectors.toList()));
+                latency.setErrors(entry.getValue().stream().filter(failed).mapToLong(Timer::count).sum());
+                return latency;
+            })
+            .collect(Collectors.toList());
+    }
+
+    private LatencyDTO merge(final String name, final List<HistogramSnapshot> snapshots) {
+        final long count = snapshots.stream().mapToLong(HistogramSnapshot::count).sum();
+        final double max = snapshots.stream().mapToDouble(snapshot -> snapshot.max(TimeUnit.MILLISECONDS)).max().orElse(0);
+        final TreeMap<Double, Double> buckets = new TreeMap<>();
+        for (HistogramSnapshot snapshot : snapshots) {
+            for (CountAtBucket bucket : snapshot.histogramCounts()) {
+                buckets.merge(bucket.bucket(TimeUnit.MILLISECONDS), bucket.count(), Double::sum);
+            }
+        }
+        return LatencyDTO.builder()
+            .name(name)
+            .count(count)
+            .p50(percentile(buckets, count, max, 0.5))
+            .p99(percentile(buckets, count, max, 0.99))
+            .build();
+    }
+
+    /**
+     * Upper bound of the first bucket whose cumulative count reaches the percentile, or the max when the value lies
+     * beyond the last bucket.
+     */
+    private static double percentile(final TreeMap<Double, Double> buckets, final long count, final double max,
+                                     final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final double rank = Math.ceil(percentile * count);
+        return buckets.entrySet()
+            .stream()
+            .filter(bucket -> bucket.getValue() >= rank)
+            .mapToDouble(Map.Entry::getKey)
+            .findFirst()
+            .orElse(max);
+    }
+
+    private List<HistogramSnapshot> snapshots(final String name) {
+        return meterRegistry.find(name).timers().stream().map(Timer::takeSnapshot).collect(Collectors.toList());
+    }
+
+    private CacheDTO cache(final String name, final String meter, final String hit, final String miss) {
+        return CacheDTO.builder()
+            .name(name)
+            .hits(counters(meter, "result", hit))
+            .misses(counters(meter, "result", miss))
+            .build();
+    }
+
+    private long counters(final String name, final String... tags) {
+        return (long) meterRegistry.find(name).tags(tags).counters().stream().mapToDouble(Counter::count).sum();
+    }
+
+    private long gauges(final String name) {
+        return (long) meterRegistry.find(name).gauges()
+            .stream()
+            .mapToDouble(Gauge::value)
+            .filter(value -> !Double.isNaN(value))
+            .sum();
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.cursowendt.libraryapi.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Times every repository and service method, tagged by class, method and exception, and records how many rows
+ * each repository method returned. Histogram buckets are set per meter name in application.properties. Meters are
+ * built and registered once per class, method and exception and then looked up from a local cache.
+ */
+@Aspect
+@Component
+public class MethodMetricsAspect {
+
+    public static final String REPOSITORY_INVOCATIONS = "library.repository.invocations";
+    public static final String REPOSITORY_ROWS = "library.repository.rows";
+    public static final String SERVICE_INVOCATIONS = "library.service.invocations";
+
+    private static final String REPOSITORY_PACKAGE = "com.cursowendt.libraryapi.model.repository";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterKey, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+
+    public MethodMetricsAspect(final MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("this(org.springframework.data.repository.Repository)")
+    public Object timeRepository(final ProceedingJoinPoint joinPoint) throws Throwable {
+        final Object proxy = joinPoint.getThis();
+        final Object result = time(joinPoint, proxy.getClass(), REPOSITORY_INVOCATIONS, "repository",
+            () -> repositoryName(proxy));
+        rows(result).ifPresent(rows -> rowSummaries
+            .computeIfAbsent(new MeterKey(proxy.getClass(), method(joinPoint), null),
+                key -> DistributionSummary.builder(REPOSITORY_ROWS)
+                    .baseUnit("rows")
+                    .tags("repository", repositoryName(proxy), "method", key.getMethod().getName())
+                    .register(meterRegistry))
+            .record(rows));
+        return result;
+    }
+
+    @Around("execution(public * com.cursowendt.libraryapi.service.impl.*.*(..))")
+    public Object timeService(final ProceedingJoinPoint joinPoint) throws Throwable {
+        final Class<?> service = ClassUtils.getUserClass(joinPoint.getTarget());
+        return time(joinPoint, service, SERVICE_INVOCATIONS, "service", service::getSimpleName);
+    }
+
+    private Object time(final ProceedingJoinPoint joinPoint, final Class<?> type, final String name,
+                        final String typeTag, final Supplier<String> typeName) throws Throwable {
+        final Timer.Sample sample = Timer.start(meterRegistry);
+        Class<?> exception = null;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable ex) {
+            exception = ex.getClass();
+            throw ex;
+        } finally {
+            sample.stop(timers.computeIfAbsent(new MeterKey(type, method(joinPoint), exception),
+                key -> Timer.builder(name)
+                    .tags(typeTag, typeName.get(), "method", key.getMethod().getName(),
+                        "exception", key.getException() == null ? "none" : key.getException().getSimpleName())
+                    .register(meterRegistry)));
+        }
+    }
+
+    private static Method method(final ProceedingJoinPoint joinPoint) {
+        return ((MethodSignature) joinPoint.getSignature()).getMethod();
+    }
+
+    /**
+     * Rows held by a collection, page, slice or optional result. Counts, flags and streams are not recorded.
+     */
+    private static Optional<Integer> rows(final Object result) {
+        if (result instanceof Collection) {
+            return Optional.of(((Collection<?>) result).size());
+        }
+        if (result instanceof Slice) {
+            return Optional.of(((Slice<?>) result).getNumberOfElements());
+        }
+        if (result instanceof Optional) {
+            return Optional.of(((Optional<?>) result).isPresent() ? 1 : 0);
+        }
+        return Optional.empty();
+    }
+
+    private static String repositoryName(final Object proxy) {
+        return Arrays.stream(AopProxyUtils.proxiedUserInterfaces(proxy))
+            .filter(Repository.class::isAssignableFrom)
+            .filter(type -> type.getPackage().getName().equals(REPOSITORY_PACKAGE))
+            .findFirst()
+            .map(Class::getSimpleName)
+            .orElse("unknown");
+    }
+
+    @Value
+    private static class MeterKey {
+
+        Class<?> type;
+        Method method;
+        Class<?> exception;
+
+    }
+
+}
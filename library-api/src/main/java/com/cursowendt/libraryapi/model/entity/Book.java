@@ -3,7 +3,9 @@ package com.cursowendt.libraryapi.model.entity;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -11,7 +13,10 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
 import java.util.List;
 
 @Data
@@ -19,12 +24,15 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table
+@Table(uniqueConstraints = @UniqueConstraint(name = Book.UK_ISBN, columnNames = "isbn"))
 public class Book {
 
+    public static final String UK_ISBN = "uk_book_isbn";
+
     @Id
     @Column
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long id;
 
     @Column
@@ -36,6 +44,22 @@ public class Book {
     @Column
     private String isbn;
 
+    @Builder.Default
+    @Column(nullable = false)
+    private boolean available = true;
+
+    /**
+     * Bumped on every update, including the bulk availability updates; the book endpoints derive their ETags from it.
+     */
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    /**
+     * Whole loan history of the book. Left out of equals, hashCode and toString so they never load it.
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @OneToMany(mappedBy = "book")
     private List<Loan> loans;
 
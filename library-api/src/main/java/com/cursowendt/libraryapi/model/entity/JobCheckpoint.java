@@ -0,0 +1,45 @@
+package com.cursowendt.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A run of a partitioned job. Progress is kept per {@link JobPartition}; the run is finished once all of
+ * its partitions are.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class JobCheckpoint {
+
+    @Id
+    @Column(length = 50)
+    private String job;
+
+    @Column(nullable = false)
+    private LocalDate cutoff;
+
+    @Column(nullable = false)
+    private int partitions;
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column
+    private LocalDateTime finishedAt;
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+}
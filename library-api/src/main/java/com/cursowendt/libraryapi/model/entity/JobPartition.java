@@ -0,0 +1,68 @@
+package com.cursowendt.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * An id range {@code (lastId, upTo]} of a job run. The instance holding the lease ({@code owner} until
+ * {@code leaseUntil}) processes it and moves {@code lastId} forward; an expired lease can be claimed by
+ * any instance, which resumes after {@code lastId}. {@code attempts} counts the claims, so a partition
+ * that keeps failing is parked once it reaches the job's limit.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "ix_job_partition_job", columnList = "job"))
+public class JobPartition {
+
+    @Id
+    @Column(length = 60)
+    private String id;
+
+    @Column(nullable = false, length = 50)
+    private String job;
+
+    @Column(nullable = false)
+    private int partitionIndex;
+
+    @Column(nullable = false)
+    private LocalDate cutoff;
+
+    @Column(nullable = false)
+    private Long lastId;
+
+    @Column(nullable = false)
+    private Long upTo;
+
+    @Column(nullable = false)
+    private long processed;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(length = 100)
+    private String owner;
+
+    @Column
+    private LocalDateTime leaseUntil;
+
+    @Column
+    private LocalDateTime finishedAt;
+
+    public static String id(final String job, final int index) {
+        return job + ":" + index;
+    }
+
+}
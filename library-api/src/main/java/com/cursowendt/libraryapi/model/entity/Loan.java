@@ -3,15 +3,23 @@ package com.cursowendt.libraryapi.model.entity;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import java.time.LocalDate;
 
 @Data
@@ -19,11 +27,19 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@Table(indexes = {
+    @Index(name = "ix_loan_book", columnList = "id_book, id"),
+    @Index(name = "ix_loan_customer", columnList = "customer"),
+    @Index(name = "ix_loan_due_date", columnList = "due_date")
+})
 public class Loan {
 
+    public static final int LOAN_DAYS = 4;
+
     @Id
     @Column
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loan_seq")
+    @SequenceGenerator(name = "loan_seq", sequenceName = "loan_seq", allocationSize = 50)
     private Long id;
 
     @Column(length = 100)
@@ -32,14 +48,37 @@ public class Loan {
     @Column(name = "customer_email")
     private String customerEmail;
 
+    /**
+     * Loaded on demand; queries that render the book fetch it with the loan. Left out of equals, hashCode and
+     * toString so they never initialize the proxy.
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
     @JoinColumn(name = "id_book")
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Book book;
 
     @Column
     private LocalDate loanDate;
 
+    /**
+     * First day the loan counts as late. Defaults to {@link #LOAN_DAYS} after the loan date.
+     */
+    @Column(name = "due_date", nullable = false)
+    private LocalDate dueDate;
+
     @Column
     private Boolean returned;
 
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    @PrePersist
+    void defaultDueDate() {
+        if (dueDate == null && loanDate != null) {
+            dueDate = loanDate.plusDays(LOAN_DAYS);
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+package com.cursowendt.libraryapi.model.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import java.time.LocalDateTime;
+
+/**
+ * A mail waiting to be sent. Rows are written in the transaction that decides the mail is needed and
+ * delivered later by the outbox dispatcher; {@code dedupKey} keeps the same notification from being
+ * queued twice.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(
+    uniqueConstraints = @UniqueConstraint(name = "uk_outbox_dedup_key", columnNames = "dedup_key"),
+    indexes = {
+        @Index(name = "ix_outbox_status_next_attempt", columnList = "status, next_attempt_at"),
+        @Index(name = "ix_outbox_claim_token", columnList = "claim_token")
+    })
+public class OutboxMessage {
+
+    public enum Status {
+        PENDING, SENT, FAILED
+    }
+
+    @Id
+    @Column
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_seq")
+    @SequenceGenerator(name = "outbox_seq", sequenceName = "outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "dedup_key", nullable = false, length = 150)
+    private String dedupKey;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false, length = 4000)
+    private String text;
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column
+    private LocalDateTime claimedUntil;
+
+    @Column
+    private LocalDateTime sentAt;
+
+    @Column(length = 500)
+    private String lastError;
+
+}
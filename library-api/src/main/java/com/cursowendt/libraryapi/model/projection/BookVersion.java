@@ -0,0 +1,9 @@
+package com.cursowendt.libraryapi.model.projection;
+
+public interface BookVersion {
+
+    Long getId();
+
+    Long getVersion();
+
+}
@@ -0,0 +1,14 @@
+package com.cursowendt.libraryapi.model.projection;
+
+/**
+ * Cheap fingerprint of the book table: any insert, delete or versioned update changes at least one value.
+ */
+public interface CatalogVersion {
+
+    Long getBooks();
+
+    Long getMaxId();
+
+    Long getVersions();
+
+}
@@ -0,0 +1,14 @@
+package com.cursowendt.libraryapi.model.projection;
+
+import java.time.LocalDate;
+
+/**
+ * An open loan as the overdue tracker sees it.
+ */
+public interface DueLoan {
+
+    Long getId();
+
+    LocalDate getDueDate();
+
+}
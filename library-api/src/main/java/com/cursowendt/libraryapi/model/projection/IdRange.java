@@ -0,0 +1,12 @@
+package com.cursowendt.libraryapi.model.projection;
+
+/**
+ * Smallest and largest id matching a query; both null when nothing matches.
+ */
+public interface IdRange {
+
+    Long getMinId();
+
+    Long getMaxId();
+
+}
@@ -0,0 +1,12 @@
+package com.cursowendt.libraryapi.model.projection;
+
+/**
+ * The only columns the late-loan job reads from an overdue loan.
+ */
+public interface LateLoan {
+
+    Long getId();
+
+    String getCustomerEmail();
+
+}
@@ -0,0 +1,14 @@
+package com.cursowendt.libraryapi.model.projection;
+
+/**
+ * What a bulk checkout needs to know about each requested book before loaning it.
+ */
+public interface LoanableBook {
+
+    Long getId();
+
+    String getIsbn();
+
+    Boolean getAvailable();
+
+}
@@ -0,0 +1,14 @@
+package com.cursowendt.libraryapi.model.projection;
+
+/**
+ * What a bulk return needs to know about each requested loan before updating it.
+ */
+public interface ReturnableLoan {
+
+    Long getId();
+
+    Long getBookId();
+
+    Boolean getReturned();
+
+}
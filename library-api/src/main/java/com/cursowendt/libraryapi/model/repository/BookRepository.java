@@ -1,17 +1,146 @@
 package com.cursowendt.libraryapi.model.repository;
 
+import com.cursowendt.libraryapi.api.dto.BookDTO;
 import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.projection.BookVersion;
+import com.cursowendt.libraryapi.model.projection.CatalogVersion;
+import com.cursowendt.libraryapi.model.projection.LoanableBook;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
 
+    String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+    String HINT_READ_ONLY = "org.hibernate.readOnly";
+    String STREAM_FETCH_SIZE = "500";
+
     Boolean existsByIsbn(String isbn);
 
     Optional<Book> findByIsbn(String isbn);
 
+    @Query(value = " select b.isbn from Book b where b.isbn in :isbns ")
+    List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+    String FILTER = " ( :title is null or lower(b.title) like lower(concat('%', :title, '%')) ) " +
+        " and ( :author is null or lower(b.author) like lower(concat('%', :author, '%')) ) " +
+        " and ( :isbn is null or lower(b.isbn) like lower(concat('%', :isbn, '%')) ) ";
+
+    String COUNT_BY_FILTER = " select count(b.id) from Book b where " + FILTER;
+
+    /**
+     * Selects rows straight into BookDTO, so read endpoints neither manage nor dirty-check Book entities.
+     */
+    String BOOK_DTO = " select new com.cursowendt.libraryapi.api.dto.BookDTO(b.id, b.title, b.author, b.isbn, b.version) ";
+
+    @Query(value = BOOK_DTO + " from Book b where b.id = :id ")
+    Optional<BookDTO> findDtoById(@Param("id") Long id);
+
+    @Query(value = " select b.version from Book b where b.id = :id ")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query(value = BOOK_DTO + " from Book b where b.id in :ids ")
+    List<BookDTO> findDtosByIds(@Param("ids") Collection<Long> ids);
+
+    @Query(value = BOOK_DTO + " from Book b where b.isbn in :isbns ")
+    List<BookDTO> findDtosByIsbns(@Param("isbns") Collection<String> isbns);
+
+    @Query(value = BOOK_DTO + " from Book b where " + FILTER,
+        countQuery = COUNT_BY_FILTER)
+    Page<BookDTO> findDtoByFilter(
+        @Param("title") String title,
+        @Param("author") String author,
+        @Param("isbn") String isbn,
+        Pageable pageable);
+
+    @Query(value = COUNT_BY_FILTER)
+    long countByFilter(@Param("title") String title, @Param("author") String author, @Param("isbn") String isbn);
+
+    @Query(value = BOOK_DTO + " from Book b where " + FILTER)
+    Slice<BookDTO> findDtoSliceByFilter(
+        @Param("title") String title,
+        @Param("author") String author,
+        @Param("isbn") String isbn,
+        Pageable pageable);
+
+    @Query(value = BOOK_DTO + " from Book b where b.id > :after and " + FILTER + " order by b.id ")
+    Slice<BookDTO> findDtoByFilterAfter(
+        @Param("title") String title,
+        @Param("author") String author,
+        @Param("isbn") String isbn,
+        @Param("after") Long after,
+        Pageable pageable);
+
+    @Query(value = " select count(b.id) as books, coalesce(max(b.id), 0) as maxId, " +
+        " coalesce(sum(b.version), 0) as versions from Book b ")
+    CatalogVersion findCatalogVersion();
+
+    @Query(value = " select b.id as id, b.version as version from Book b where b.id > :after order by b.id ")
+    List<BookVersion> findVersionsAfter(@Param("after") Long after, Pageable pageable);
+
+    @Query(value = " select b from Book b where b.id > :after and " + FILTER + " order by b.id ")
+    Slice<Book> findByFilterAfter(
+        @Param("title") String title,
+        @Param("author") String author,
+        @Param("isbn") String isbn,
+        @Param("after") Long after,
+        Pageable pageable);
+
+    /**
+     * Every book in id order, read through a JDBC cursor. Must be consumed and closed inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE),
+        @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = " select b from Book b order by b.id ")
+    Stream<Book> streamAll();
+
+    /**
+     * Takes the book for a loan. Returns 0 when it is already loaned or does not exist.
+     */
+    @Modifying
+    @Query(value = " update Book b set b.available = false, b.version = b.version + 1 " +
+        " where b.id = :id and b.available = true ")
+    int markLoaned(@Param("id") Long id);
+
+    /**
+     * Locks the requested books, so the availability a bulk checkout reads is still true when it marks them loaned.
+     * Rows are locked in id order, so two overlapping batches can't deadlock each other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(value = " select b.id as id, b.isbn as isbn, b.available as available from Book b where b.isbn in :isbns " +
+        " order by b.id ")
+    List<LoanableBook> findLoanableByIsbns(@Param("isbns") Collection<String> isbns);
+
+    @Modifying
+    @Query(value = " update Book b set b.available = false, b.version = b.version + 1 " +
+        " where b.id in :ids and b.available = true ")
+    int markLoanedByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = " update Book b set b.available = true, b.version = b.version + 1 " +
+        " where b.id = ( select l.book.id from Loan l where l.id = :loanId ) ")
+    int markAvailableByLoan(@Param("loanId") Long loanId);
+
+    @Modifying
+    @Query(value = " update Book b set b.available = true, b.version = b.version + 1 where b.id in :ids ")
+    int markAvailableByIds(@Param("ids") Collection<Long> ids);
 
 }
@@ -0,0 +1,30 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import com.cursowendt.libraryapi.model.entity.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+
+    /**
+     * Starts a new run over one with an older cutoff, finished or not. Only one of several concurrent callers gets 1.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = " update JobCheckpoint c set c.cutoff = :cutoff, c.partitions = :partitions, c.startedAt = :now, " +
+        " c.finishedAt = null where c.job = :job and c.cutoff < :cutoff ")
+    int restart(@Param("job") String job, @Param("cutoff") LocalDate cutoff,
+                @Param("partitions") int partitions, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query(value = " update JobCheckpoint c set c.finishedAt = :now where c.job = :job and c.finishedAt is null ")
+    int finish(@Param("job") String job, @Param("now") LocalDateTime now);
+
+}
@@ -0,0 +1,67 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import com.cursowendt.libraryapi.model.entity.JobPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface JobPartitionRepository extends JpaRepository<JobPartition, String> {
+
+    String CLAIMABLE = " p.finishedAt is null and ( p.leaseUntil is null or p.leaseUntil < :now ) " +
+        " and p.attempts < :maxAttempts ";
+
+    @Query(value = " select p.id from JobPartition p where p.job = :job and " + CLAIMABLE + " order by p.partitionIndex ")
+    List<String> findClaimable(@Param("job") String job, @Param("now") LocalDateTime now,
+                               @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * Takes the lease of an unfinished partition nobody holds, or whose lease expired, and counts the attempt.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = " update JobPartition p set p.owner = :owner, p.leaseUntil = :until, p.attempts = p.attempts + 1 " +
+        " where p.id = :id and " + CLAIMABLE)
+    int claim(@Param("id") String id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("until") LocalDateTime until, @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * Records a processed chunk and renews the lease; 0 means the lease was lost to another instance or the
+     * run was superseded by one with a newer cutoff.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = " update JobPartition p set p.lastId = :lastId, p.processed = p.processed + :count, " +
+        " p.leaseUntil = :until where p.id = :id and p.owner = :owner and p.cutoff = :cutoff ")
+    int checkpoint(@Param("id") String id, @Param("owner") String owner, @Param("cutoff") LocalDate cutoff,
+                   @Param("lastId") Long lastId, @Param("count") long count, @Param("until") LocalDateTime until);
+
+    @Transactional
+    @Modifying
+    @Query(value = " update JobPartition p set p.finishedAt = :now, p.owner = null, p.leaseUntil = null " +
+        " where p.id = :id and p.owner = :owner and p.cutoff = :cutoff ")
+    int finish(@Param("id") String id, @Param("owner") String owner, @Param("cutoff") LocalDate cutoff,
+               @Param("now") LocalDateTime now);
+
+    long countByJobAndFinishedAtIsNull(String job);
+
+    /**
+     * Unfinished partitions out of attempts and no longer leased; they wait for the next run.
+     */
+    @Query(value = " select count(p) from JobPartition p where p.job = :job and p.finishedAt is null " +
+        " and p.attempts >= :maxAttempts and ( p.leaseUntil is null or p.leaseUntil < :now ) ")
+    long countParked(@Param("job") String job, @Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts);
+
+    @Query(value = " select coalesce(sum(p.processed), 0) from JobPartition p where p.job = :job ")
+    long sumProcessed(@Param("job") String job);
+
+    @Modifying
+    @Query(value = " delete from JobPartition p where p.job = :job ")
+    int deleteByJob(@Param("job") String job);
+
+}
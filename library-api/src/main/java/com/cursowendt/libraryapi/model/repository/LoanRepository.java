@@ -1,31 +1,127 @@
 package com.cursowendt.libraryapi.model.repository;
 
-import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.DueLoan;
+import com.cursowendt.libraryapi.model.projection.IdRange;
+import com.cursowendt.libraryapi.model.projection.LateLoan;
+import com.cursowendt.libraryapi.model.projection.ReturnableLoan;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
-    @Query(value = " select case when ( count(l.id) > 0 ) then true else false end " +
-        " from Loan l where l.book = :book and ( l.returned is null or l.returned is false ) ")
-    Boolean existsByBookAndNotReturned(@Param("book") Book book);
+    /**
+     * Selects rows straight into LoanDTO, so read endpoints neither manage nor dirty-check Loan or Book entities.
+     */
+    String LOAN_DTO = " select new com.cursowendt.libraryapi.api.dto.LoanDTO(" +
+        " l.id, l.customer, l.customerEmail, b.id, b.title, b.author, b.isbn) from Loan l join l.book b ";
+
+    String ISBN_OR_CUSTOMER = " ( b.isbn = :isbn or l.customer = :customer ) ";
+
+    @Query(value = LOAN_DTO + " where " + ISBN_OR_CUSTOMER,
+        countQuery = " select count(l.id) from Loan l join l.book b where " + ISBN_OR_CUSTOMER)
+    Page<LoanDTO> findDtoByBookIsbnOrCustomer(
+        @Param("isbn") String isbn,
+        @Param("customer") String customer,
+        Pageable pageable);
+
+    @Query(value = LOAN_DTO + " where " + ISBN_OR_CUSTOMER)
+    Slice<LoanDTO> findDtoSliceByBookIsbnOrCustomer(
+        @Param("isbn") String isbn,
+        @Param("customer") String customer,
+        Pageable pageable);
+
+    @Query(value = " select count(l.id) from Loan l join l.book b where " + ISBN_OR_CUSTOMER)
+    long countByBookIsbnOrCustomer(@Param("isbn") String isbn, @Param("customer") String customer);
 
-    @Query(value = " select l from Loan as l join l.book as b where b.isbn = :isbn or l.customer =:customer ")
-    Page<Loan> findByBookIsbnOrCustomer(
+    @Query(value = LOAN_DTO + " where " + ISBN_OR_CUSTOMER + " and l.id > :after order by l.id ")
+    Slice<LoanDTO> findDtoByBookIsbnOrCustomerAfter(
         @Param("isbn") String isbn,
         @Param("customer") String customer,
+        @Param("after") Long after,
         Pageable pageable);
 
-    Page<Loan> findByBook(Book book, Pageable pageable);
+    @Query(value = LOAN_DTO + " where l.book.id = :bookId ",
+        countQuery = " select count(l.id) from Loan l where l.book.id = :bookId ")
+    Page<LoanDTO> findDtoByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+    @Query(value = LOAN_DTO + " where l.book.id = :bookId ")
+    Slice<LoanDTO> findDtoSliceByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+    @Query(value = " select count(l.id) from Loan l where l.book.id = :bookId ")
+    long countByBookId(@Param("bookId") Long bookId);
+
+    @Query(value = LOAN_DTO + " where l.book.id = :bookId and l.id > :after order by l.id ")
+    Slice<LoanDTO> findDtoByBookIdAfter(@Param("bookId") Long bookId, @Param("after") Long after, Pageable pageable);
+
+    String OPEN = " ( l.returned is null or l.returned is false ) ";
+
+    String LATE = " l.dueDate <= :cutoff and " + OPEN;
+
+    @Query(value = " select l.id as id, l.customerEmail as customerEmail from Loan l " +
+        " where " + LATE + " and l.id > :after and l.id <= :upTo order by l.id ")
+    List<LateLoan> findLateLoansBetween(@Param("cutoff") LocalDate cutoff, @Param("after") Long after,
+                                        @Param("upTo") Long upTo, Pageable pageable);
+
+    @Query(value = " select min(l.id) as minId, max(l.id) as maxId from Loan l where " + LATE)
+    IdRange findLateLoanIdRange(@Param("cutoff") LocalDate cutoff);
+
+    @Query(value = " select l.id as id, l.customerEmail as customerEmail from Loan l " +
+        " where " + LATE + " and l.id in :ids order by l.id ")
+    List<LateLoan> findLateLoansByIds(@Param("cutoff") LocalDate cutoff, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Returns the loan unless it is already returned; 0 means it is missing or was returned before.
+     */
+    @Modifying
+    @Query(value = " update Loan l set l.returned = true, l.version = l.version + 1 where l.id = :id and " + OPEN)
+    int markReturned(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = " update Loan l set l.returned = true, l.version = l.version + 1 where l.id in :ids and " + OPEN)
+    int markReturnedByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Locks the requested loans, so the returned/open split a bulk return reports is the one its update applies.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query(value = " select l.id as id, l.book.id as bookId, l.returned as returned from Loan l where l.id in :ids ")
+    List<ReturnableLoan> findReturnableByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Open loans due on {@code from} or later, read through a JDBC cursor. Must be consumed and closed inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = BookRepository.HINT_FETCH_SIZE, value = BookRepository.STREAM_FETCH_SIZE),
+        @QueryHint(name = BookRepository.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = " select l.id as id, l.dueDate as dueDate from Loan l where l.dueDate >= :from and " + OPEN)
+    Stream<DueLoan> streamOpenDueFrom(@Param("from") LocalDate from);
 
-    @Query(value = " select l from Loan l where l.loanDate <= :threeDaysAgo and ( l.returned is null or l.returned is false ) ")
-    List<Loan> findByLoanDateLessThanAndNotReturned(@Param("threeDaysAgo") LocalDate threeDaysAgo);
+    /**
+     * Every loan with its book in id order, read through a JDBC cursor. Must be consumed and closed inside a transaction.
+     */
+    @QueryHints({
+        @QueryHint(name = BookRepository.HINT_FETCH_SIZE, value = BookRepository.STREAM_FETCH_SIZE),
+        @QueryHint(name = BookRepository.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = " select l from Loan l join fetch l.book order by l.id ")
+    Stream<Loan> streamAll();
 
 }
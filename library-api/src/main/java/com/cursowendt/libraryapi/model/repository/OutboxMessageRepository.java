@@ -0,0 +1,74 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    String CLAIMABLE = " m.status = com.cursowendt.libraryapi.model.entity.OutboxMessage$Status.PENDING " +
+        " and m.nextAttemptAt <= :now and ( m.claimedUntil is null or m.claimedUntil < :now ) ";
+
+    @Query(value = " select m.dedupKey from OutboxMessage m where m.dedupKey in :keys ")
+    List<String> findExistingDedupKeys(@Param("keys") Collection<String> keys);
+
+    @Query(value = " select m.id from OutboxMessage m where " + CLAIMABLE + " order by m.id ")
+    List<Long> findClaimable(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Claims the rows still claimable; rows another dispatcher claimed in the meantime are skipped.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = " update OutboxMessage m set m.claimToken = :token, m.claimedUntil = :until " +
+        " where m.id in :ids and " + CLAIMABLE)
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token,
+              @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    List<OutboxMessage> findByClaimToken(String claimToken);
+
+    @Transactional
+    @Modifying
+    @Query(value = " update OutboxMessage m set m.status = com.cursowendt.libraryapi.model.entity.OutboxMessage$Status.SENT, " +
+        " m.sentAt = :sentAt, m.attempts = m.attempts + 1, m.claimToken = null, m.claimedUntil = null, m.lastError = null " +
+        " where m.id = :id and m.claimToken = :token ")
+    int markSent(@Param("id") Long id, @Param("token") String token, @Param("sentAt") LocalDateTime sentAt);
+
+    @Transactional
+    @Modifying
+    @Query(value = " update OutboxMessage m set m.status = :status, m.nextAttemptAt = :nextAttemptAt, " +
+        " m.attempts = m.attempts + 1, m.claimToken = null, m.claimedUntil = null, m.lastError = :error " +
+        " where m.id = :id and m.claimToken = :token ")
+    int markFailedAttempt(@Param("id") Long id, @Param("token") String token,
+                          @Param("status") OutboxMessage.Status status,
+                          @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                          @Param("error") String error);
+
+    /**
+     * Hands claimed rows back without counting an attempt, for messages that never reached the mail queue.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = " update OutboxMessage m set m.claimToken = null, m.claimedUntil = null " +
+        " where m.id in :ids and m.claimToken = :token ")
+    int release(@Param("ids") Collection<Long> ids, @Param("token") String token);
+
+    @Query(value = " select m.id from OutboxMessage m " +
+        " where m.status = com.cursowendt.libraryapi.model.entity.OutboxMessage$Status.SENT and m.sentAt < :before " +
+        " order by m.id ")
+    List<Long> findSentBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query(value = " delete from OutboxMessage m where m.id in :ids ")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+}
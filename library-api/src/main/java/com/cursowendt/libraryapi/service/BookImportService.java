@@ -0,0 +1,13 @@
+package com.cursowendt.libraryapi.service;
+
+import com.cursowendt.libraryapi.api.dto.ImportReportDTO;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+public interface BookImportService {
+
+    ImportReportDTO importBooks(InputStream input, DataFormat format, Charset charset) throws IOException;
+
+}
@@ -0,0 +1,455 @@
+package com.cursowendt.libraryapi.service;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory trigram index over book title, author and isbn. Answers the case-insensitive
+ * "contains" filters of GET /api/books with book ids, so the database is only hit with a
+ * primary-key lookup for the requested page.
+ * <p>
+ * Each instance holds its own copy. Local writes update it right away; writes made on other instances are picked
+ * up by the periodic refresh in BookServiceImpl, which compares the stored versions with the database.
+ */
+@Component
+public class BookSearchIndex {
+
+    public static final String RELEVANCE = "relevance";
+
+    private static final int GRAM = 3;
+    private static final Set<String> SORTABLE = new HashSet<>(List.of("id", "title", "author", "isbn", RELEVANCE));
+
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final Map<String, Set<Long>> titles = new HashMap<>();
+    private final Map<String, Set<Long>> authors = new HashMap<>();
+    private final Map<String, Set<Long>> isbns = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private long versionSum;
+
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            versionSum = 0;
+            documents.clear();
+            titles.clear();
+            authors.clear();
+            isbns.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public void put(final Book book) {
+        if (Objects.isNull(book) || Objects.isNull(book.getId())) {
+            return;
+        }
+        final Document document = new Document(book);
+        lock.writeLock().lock();
+        try {
+            final Document previous = documents.put(book.getId(), document);
+            if (previous != null) {
+                unindex(previous);
+            }
+            versionSum += document.version;
+            index(titles, document.title, document.id);
+            index(authors, document.author, document.id);
+            index(isbns, document.isbn, document.id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(final Long id) {
+        lock.writeLock().lock();
+        try {
+            final Document previous = documents.remove(id);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the requested page and the exact number of matches, or empty when the
+     * index is not built yet or the sort cannot be answered from it.
+     */
+    public Optional<SearchResult> search(final String title, final String author, final String isbn,
+                                         final Pageable pageable) {
+        if (!ready || !isSortable(pageable.getSort())) {
+            return Optional.empty();
+        }
+        final List<Criterion> criteria = criteria(title, author, isbn);
+        lock.readLock().lock();
+        try {
+            final List<Document> matches = match(criteria);
+            final Comparator<Document> order = comparator(pageable.getSort(), criteria);
+            final List<Long> ids;
+            if (pageable.isUnpaged()) {
+                matches.sort(order);
+                ids = ids(matches);
+            } else {
+                ids = ids(page(matches, order, pageable.getOffset(), pageable.getPageSize()));
+            }
+            return Optional.of(new SearchResult(ids, matches.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Optional<Long> count(final String title, final String author, final String isbn) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        final List<Criterion> criteria = criteria(title, author, isbn);
+        lock.readLock().lock();
+        try {
+            return Optional.of((long) match(criteria).size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * True when the index holds as many books, the same highest id and the same sum of versions as the database.
+     */
+    public boolean isInSync(final long books, final long maxId, final long versions) {
+        lock.readLock().lock();
+        try {
+            return documents.size() == books && versionSum == versions
+                && documents.keySet().stream().mapToLong(Long::longValue).max().orElse(0) == maxId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids among {@code databaseVersions} (id to version) that are missing from the index or hold another version.
+     */
+    public List<Long> staleIds(final Map<Long, Long> databaseVersions) {
+        lock.readLock().lock();
+        try {
+            return databaseVersions.entrySet()
+                .stream()
+                .filter(entry -> {
+                    final Document document = documents.get(entry.getKey());
+                    return document == null || document.version != entry.getValue();
+                })
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every book up to {@code upTo} whose id is not in {@code ids}, i.e. books deleted since they were indexed.
+     * Books above {@code upTo} were added after the caller read {@code ids} and are kept.
+     */
+    public void retainAll(final Set<Long> ids, final long upTo) {
+        lock.writeLock().lock();
+        try {
+            final List<Long> removed = documents.keySet()
+                .stream()
+                .filter(id -> id <= upTo && !ids.contains(id))
+                .collect(Collectors.toList());
+            removed.forEach(id -> unindex(documents.remove(id)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public static boolean isSortable(final Sort sort) {
+        return sort.stream().allMatch(order -> SORTABLE.contains(order.getProperty()));
+    }
+
+    private List<Document> match(final List<Criterion> criteria) {
+        Set<Long> candidates = null;
+        for (final Criterion criterion : criteria) {
+            final Set<Long> ids = criterion.candidates();
+            if (ids != null && (candidates == null || ids.size() < candidates.size())) {
+                candidates = ids;
+            }
+        }
+
+        final List<Document> matches = new ArrayList<>();
+        for (final Long id : candidates == null ? documents.keySet() : candidates) {
+            final Document document = documents.get(id);
+            if (document != null && criteria.stream().allMatch(criterion -> criterion.matches(document))) {
+                matches.add(document);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Keeps only the best {@code offset + size} matches in a bounded heap, so a page costs O(n log k) instead of
+     * sorting every match.
+     */
+    private static List<Document> page(final List<Document> matches, final Comparator<Document> order,
+                                       final long offset, final int size) {
+        final int limit = (int) Math.min(offset + size, matches.size());
+        if (offset >= limit) {
+            return Collections.emptyList();
+        }
+        final PriorityQueue<Document> best = new PriorityQueue<>(limit, order.reversed());
+        for (final Document document : matches) {
+            if (best.size() < limit) {
+                best.add(document);
+            } else if (order.compare(document, best.peek()) < 0) {
+                best.poll();
+                best.add(document);
+            }
+        }
+        final List<Document> top = new ArrayList<>(best);
+        top.sort(order);
+        return top.subList((int) offset, limit);
+    }
+
+    private List<Criterion> criteria(final String title, final String author, final String isbn) {
+        final List<Criterion> criteria = new ArrayList<>(3);
+        addCriterion(criteria, titles, Document::getTitle, title);
+        addCriterion(criteria, authors, Document::getAuthor, author);
+        addCriterion(criteria, isbns, Document::getIsbn, isbn);
+        return criteria;
+    }
+
+    private void addCriterion(final List<Criterion> criteria, final Map<String, Set<Long>> postings,
+                              final Function<Document, String> field, final String value) {
+        if (Objects.isNull(value)) {
+            return;
+        }
+        final String term = normalize(value);
+        criteria.add(new Criterion(term, field, term.length() >= GRAM ? postings : null));
+    }
+
+    private Comparator<Document> comparator(final Sort sort, final List<Criterion> criteria) {
+        Comparator<Document> comparator = null;
+        for (final Sort.Order order : sort) {
+            Comparator<Document> next = order.getProperty().equals(RELEVANCE)
+                ? Comparator.comparingInt((Document document) -> score(document, criteria)).reversed()
+                : byProperty(order.getProperty());
+            if (order.isDescending() && !order.getProperty().equals(RELEVANCE)) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        final Comparator<Document> byId = Comparator.comparing(Document::getId);
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    private static Comparator<Document> byProperty(final String property) {
+        final Function<Document, String> key;
+        switch (property) {
+            case "title":
+                key = document -> document.originalTitle;
+                break;
+            case "author":
+                key = document -> document.originalAuthor;
+                break;
+            case "isbn":
+                key = document -> document.originalIsbn;
+                break;
+            default:
+                return Comparator.comparing(Document::getId);
+        }
+        return Comparator.comparing(key, Comparator.nullsLast(Comparator.naturalOrder()));
+    }
+
+    /**
+     * Exact field matches rank above prefix matches, which rank above plain "contains" matches.
+     */
+    private static int score(final Document document, final List<Criterion> criteria) {
+        int score = 0;
+        for (final Criterion criterion : criteria) {
+            final String value = criterion.field.apply(document);
+            if (value.equals(criterion.term)) {
+                score += 3;
+            } else if (value.startsWith(criterion.term)) {
+                score += 2;
+            } else {
+                score += 1;
+            }
+        }
+        return score;
+    }
+
+    private void index(final Map<String, Set<Long>> postings, final String value, final Long id) {
+        for (final String gram : grams(value)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void unindex(final Document document) {
+        versionSum -= document.version;
+        unindex(titles, document.title, document.id);
+        unindex(authors, document.author, document.id);
+        unindex(isbns, document.isbn, document.id);
+    }
+
+    private void unindex(final Map<String, Set<Long>> postings, final String value, final Long id) {
+        for (final String gram : grams(value)) {
+            final Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(final String value) {
+        if (value.length() < GRAM) {
+            return Collections.emptySet();
+        }
+        final Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private static String normalize(final String value) {
+        return Objects.isNull(value) ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static List<Long> ids(final List<Document> documents) {
+        return documents.stream().map(Document::getId).collect(Collectors.toList());
+    }
+
+    public static final class SearchResult {
+
+        private final List<Long> ids;
+        private final long total;
+
+        public SearchResult(final List<Long> ids, final long total) {
+            this.ids = ids;
+            this.total = total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+    }
+
+    private static final class Document {
+
+        private final Long id;
+        private final long version;
+        private final String originalTitle;
+        private final String originalAuthor;
+        private final String originalIsbn;
+        private final String title;
+        private final String author;
+        private final String isbn;
+
+        private Document(final Book book) {
+            this.id = book.getId();
+            this.version = book.getVersion();
+            this.originalTitle = book.getTitle();
+            this.originalAuthor = book.getAuthor();
+            this.originalIsbn = book.getIsbn();
+            this.title = normalize(book.getTitle());
+            this.author = normalize(book.getAuthor());
+            this.isbn = normalize(book.getIsbn());
+        }
+
+        private Long getId() {
+            return id;
+        }
+
+        private String getTitle() {
+            return title;
+        }
+
+        private String getAuthor() {
+            return author;
+        }
+
+        private String getIsbn() {
+            return isbn;
+        }
+
+    }
+
+    private static final class Criterion {
+
+        private final String term;
+        private final Function<Document, String> field;
+        private final Map<String, Set<Long>> postings;
+
+        private Criterion(final String term, final Function<Document, String> field,
+                          final Map<String, Set<Long>> postings) {
+            this.term = term;
+            this.field = field;
+            this.postings = postings;
+        }
+
+        /**
+         * Ids holding every trigram of the term, or null when the term is too short to use the index.
+         */
+        private Set<Long> candidates() {
+            if (postings == null) {
+                return null;
+            }
+            Set<Long> result = null;
+            for (final String gram : grams(term)) {
+                final Set<Long> ids = postings.getOrDefault(gram, Collections.emptySet());
+                if (result == null) {
+                    result = new HashSet<>(ids);
+                } else {
+                    result.retainAll(ids);
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        private boolean matches(final Document document) {
+            return field.apply(document).contains(term);
+        }
+
+    }
+
+}
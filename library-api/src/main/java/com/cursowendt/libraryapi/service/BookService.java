@@ -1,9 +1,13 @@
 package com.cursowendt.libraryapi.service;
 
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LookupDTO;
 import com.cursowendt.libraryapi.model.entity.Book;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface BookService {
@@ -12,11 +16,37 @@ public interface BookService {
 
     Optional<Book> getById(Long id);
 
+    /**
+     * The book read straight into a DTO, for endpoints that only render it.
+     */
+    Optional<BookDTO> getDetailsById(Long id);
+
+    /**
+     * Books for every id with one IN query, in request order.
+     */
+    LookupDTO<Long, BookDTO> getDetailsByIds(Collection<Long> ids);
+
+    /**
+     * Books for every isbn with one IN query, in request order.
+     */
+    LookupDTO<String, BookDTO> getDetailsByIsbns(Collection<String> isbns);
+
+    /**
+     * Only the version column, enough to answer a conditional GET without reading the book.
+     */
+    Optional<Long> getVersionById(Long id);
+
     void delete(Book book);
 
     Book update(Book book);
 
-    Page<Book> find(Book filter, Pageable pageRequest);
+    Page<BookDTO> find(Book filter, Pageable pageRequest);
+
+    Slice<BookDTO> findSlice(Book filter, Pageable pageRequest);
+
+    long estimateCount(Book filter);
+
+    Slice<BookDTO> findAfter(Book filter, Long after, int size);
 
     Optional<Book> getBookByIsbn(String isbn);
 
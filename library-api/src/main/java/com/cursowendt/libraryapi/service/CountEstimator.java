@@ -0,0 +1,76 @@
+package com.cursowendt.libraryapi.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the result of COUNT queries for a short time so list endpoints that only need an
+ * approximate total do not pay for a count on every request.
+ */
+@Component
+public class CountEstimator {
+
+    static final int MAX_ENTRIES = 10_000;
+
+    private final Map<String, Entry> counts = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public CountEstimator(@Value("${application.pagination.count-estimate-ttl:60s}") final Duration ttl,
+                          final MeterRegistry meterRegistry) {
+        this(ttl, Clock.systemUTC(), meterRegistry);
+    }
+
+    public CountEstimator(final Duration ttl, final Clock clock, final MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.clock = clock;
+        this.hits = Counter.builder("library.count.estimates").tag("result", "hit")
+            .description("Totals answered from the cache").register(meterRegistry);
+        this.misses = Counter.builder("library.count.estimates").tag("result", "miss")
+            .description("Totals that needed a COUNT query").register(meterRegistry);
+    }
+
+    public long estimate(final String key, final LongSupplier counter) {
+        final long now = clock.millis();
+        final Entry cached = counts.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            hits.increment();
+            return cached.count;
+        }
+        if (counts.size() >= MAX_ENTRIES) {
+            counts.values().removeIf(entry -> entry.expiresAt <= now);
+            if (counts.size() >= MAX_ENTRIES) {
+                counts.clear();
+            }
+        }
+        misses.increment();
+        final long count = counter.getAsLong();
+        counts.put(key, new Entry(count, now + ttl.toMillis()));
+        return count;
+    }
+
+    private static final class Entry {
+
+        private final long count;
+        private final long expiresAt;
+
+        private Entry(final long count, final long expiresAt) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+}
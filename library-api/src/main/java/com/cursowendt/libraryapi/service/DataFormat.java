@@ -0,0 +1,41 @@
+package com.cursowendt.libraryapi.service;
+
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+/**
+ * Line-oriented formats accepted by the bulk book endpoints.
+ */
+public enum DataFormat {
+
+    NDJSON(DataFormat.NDJSON_VALUE),
+    CSV(DataFormat.CSV_VALUE);
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    DataFormat(final String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static DataFormat of(final MediaType mediaType) {
+        for (final DataFormat format : values()) {
+            if (format.mediaType.isCompatibleWith(mediaType)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported format: " + mediaType);
+    }
+
+}
@@ -1,7 +1,24 @@
 package com.cursowendt.libraryapi.service;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface EmailService {
-    void sendMails(String message, List<String> mailsList);
+
+    String LATE_LOANS_SUBJECT = "Livro com empréstimo atrasado.";
+
+    /**
+     * Queues one message per recipient. The future completes once every message was sent, or
+     * exceptionally if any of them failed.
+     */
+    CompletableFuture<Void> sendMails(String message, List<String> mailsList);
+
+    CompletableFuture<Void> sendMail(String to, String subject, String text);
+
+    /**
+     * Like {@link #sendMail} but never waits for room: when the queue is full the returned future has
+     * already failed with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    CompletableFuture<Void> offerMail(String to, String subject, String text);
+
 }
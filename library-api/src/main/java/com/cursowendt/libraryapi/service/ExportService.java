@@ -0,0 +1,12 @@
+package com.cursowendt.libraryapi.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ExportService {
+
+    void exportBooks(OutputStream output, DataFormat format) throws IOException;
+
+    void exportLoans(OutputStream output, DataFormat format) throws IOException;
+
+}
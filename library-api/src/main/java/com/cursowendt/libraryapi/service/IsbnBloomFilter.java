@@ -0,0 +1,227 @@
+package com.cursowendt.libraryapi.service;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of the ISBNs stored in the book table. A negative answer is definite, so
+ * BookService.save can skip the existence query for new ISBNs. Deleted ISBNs cannot be removed
+ * from a Bloom filter, so the filter is rebuilt from the database in the background when it
+ * outgrows its capacity or too many of its entries are stale.
+ */
+@Slf4j
+@Component
+public class IsbnBloomFilter {
+
+    private static final int LOAD_CHUNK = 1_000;
+    private static final double MAX_STALE_RATIO = 0.25;
+
+    private final BookRepository bookRepository;
+    private final double falsePositiveRate;
+    private final long minimumCapacity;
+
+    private final Counter negatives;
+    private final Counter positives;
+    private final Counter falsePositives;
+    private final AtomicLong staleEntries = new AtomicLong();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "isbn-filter-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Bits current;
+    private volatile Bits building;
+    private volatile boolean ready;
+
+    public IsbnBloomFilter(final BookRepository bookRepository,
+                           final MeterRegistry meterRegistry,
+                           @Value("${application.isbn-filter.expected-insertions:100000}") final long expectedInsertions,
+                           @Value("${application.isbn-filter.false-positive-rate:0.01}") final double falsePositiveRate) {
+        this.bookRepository = bookRepository;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minimumCapacity = expectedInsertions;
+        this.current = new Bits(expectedInsertions, falsePositiveRate);
+
+        this.negatives = Counter.builder("library.isbn.filter.lookups").tag("result", "negative")
+            .description("ISBN lookups answered by the filter without a query").register(meterRegistry);
+        this.positives = Counter.builder("library.isbn.filter.lookups").tag("result", "positive")
+            .description("ISBN lookups that needed an existence query").register(meterRegistry);
+        this.falsePositives = Counter.builder("library.isbn.filter.false.positives")
+            .description("Positive lookups for ISBNs that were not in the database").register(meterRegistry);
+        Gauge.builder("library.isbn.filter.insertions", this, filter -> filter.current.insertions.get())
+            .register(meterRegistry);
+        Gauge.builder("library.isbn.filter.capacity", this, filter -> filter.current.capacity)
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * False means the ISBN is certainly not stored. True means it may be, and the caller must check.
+     */
+    public boolean mightContain(final String isbn) {
+        if (!ready || isbn == null) {
+            return true;
+        }
+        if (current.mightContain(isbn)) {
+            positives.increment();
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    public void put(final String isbn) {
+        if (isbn == null) {
+            return;
+        }
+        current.put(isbn);
+        final Bits next = building;
+        if (next != null) {
+            next.put(isbn);
+        }
+        if (ready && current.insertions.get() > current.capacity) {
+            scheduleRebuild();
+        }
+    }
+
+    public void remove(final String isbn) {
+        if (isbn != null && staleEntries.incrementAndGet() > current.insertions.get() * MAX_STALE_RATIO) {
+            scheduleRebuild();
+        }
+    }
+
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void scheduleRebuild() {
+        if (rebuilding.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        }
+    }
+
+    private void rebuild() {
+        final long stored = bookRepository.count();
+        final Bits next = new Bits(Math.max(minimumCapacity, stored * 2), falsePositiveRate);
+        building = next;
+        staleEntries.set(0);
+
+        Long after = 0L;
+        Slice<Book> chunk;
+        do {
+            chunk = bookRepository.findByFilterAfter(null, null, null, after, PageRequest.of(0, LOAD_CHUNK));
+            for (final Book book : chunk) {
+                next.put(book.getIsbn());
+                after = book.getId();
+            }
+        } while (chunk.hasNext());
+
+        current = next;
+        building = null;
+        ready = true;
+        log.info("ISBN filter built with {} entries, capacity {}", next.insertions.get(), next.capacity);
+    }
+
+    private static final class Bits {
+
+        private final long capacity;
+        private final long size;
+        private final int hashes;
+        private final AtomicLongArray words;
+        private final AtomicLong insertions = new AtomicLong();
+
+        private Bits(final long capacity, final double falsePositiveRate) {
+            this.capacity = Math.max(1, capacity);
+            this.size = Math.max(64, (long) (-this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+            this.hashes = Math.max(1, (int) Math.round((double) size / this.capacity * Math.log(2)));
+            this.words = new AtomicLongArray((int) ((size + 63) / 64));
+        }
+
+        private void put(final String isbn) {
+            final long hash = hash(isbn);
+            final int first = (int) hash;
+            final int second = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                final long bit = Math.floorMod(first + (long) i * second, size);
+                final int word = (int) (bit >>> 6);
+                final long mask = 1L << bit;
+                long value;
+                do {
+                    value = words.get(word);
+                } while ((value & mask) == 0 && !words.compareAndSet(word, value, value | mask));
+            }
+            insertions.incrementAndGet();
+        }
+
+        private boolean mightContain(final String isbn) {
+            final long hash = hash(isbn);
+            final int first = (int) hash;
+            final int second = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                final long bit = Math.floorMod(first + (long) i * second, size);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 avalanche step.
+         */
+        private static long hash(final String isbn) {
+            long hash = 0xcbf29ce484222325L;
+            for (final byte b : isbn.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+
+    }
+
+}
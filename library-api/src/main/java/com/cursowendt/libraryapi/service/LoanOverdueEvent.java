@@ -0,0 +1,18 @@
+package com.cursowendt.libraryapi.service;
+
+import lombok.Value;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Loans that became late on {@code date}.
+ */
+@Value
+public class LoanOverdueEvent {
+
+    LocalDate date;
+
+    List<Long> loanIds;
+
+}
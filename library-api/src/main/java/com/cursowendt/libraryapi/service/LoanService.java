@@ -1,25 +1,67 @@
 package com.cursowendt.libraryapi.service;
 
+import com.cursowendt.libraryapi.api.dto.LoanBatchDTO;
+import com.cursowendt.libraryapi.api.dto.LoanBatchResultDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.api.dto.LoanFilterDTO;
-import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.api.dto.ReturnReportDTO;
 import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.IdRange;
+import com.cursowendt.libraryapi.model.projection.LateLoan;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface LoanService {
 
+    int LOAN_DAYS = Loan.LOAN_DAYS;
+
     Loan save(Loan loan);
 
+    /**
+     * Loans every available book among the batch ISBNs to one customer and reports each ISBN in request order.
+     */
+    List<LoanBatchResultDTO> checkout(LoanBatchDTO batch);
+
     Optional<Loan> getById(Long id);
 
-    Loan update(Loan loan);
+    /**
+     * Marks the loan returned and its book available without loading either.
+     */
+    ReturnStatus returnLoan(Long id);
+
+    /**
+     * Returns every open loan among {@code ids} with one loan update and one book update.
+     */
+    ReturnReportDTO returnLoans(Collection<Long> ids);
+
+    Page<LoanDTO> find(LoanFilterDTO filterDTO, Pageable pageable);
+
+    Slice<LoanDTO> findSlice(LoanFilterDTO filterDTO, Pageable pageable);
+
+    long estimateCount(LoanFilterDTO filterDTO);
+
+    Slice<LoanDTO> findAfter(LoanFilterDTO filterDTO, Long after, int size);
+
+    Page<LoanDTO> getLoansByBook(Long bookId, Pageable pageable);
+
+    Slice<LoanDTO> getLoansByBookSlice(Long bookId, Pageable pageable);
+
+    long estimateCountByBook(Long bookId);
+
+    Slice<LoanDTO> getLoansByBookAfter(Long bookId, Long after, int size);
 
-    Page<Loan> find(LoanFilterDTO filterDTO, Pageable pageable);
+    List<LateLoan> getLateLoansBetween(LocalDate cutoff, Long after, Long upTo, int size);
 
-    Page<Loan> getLoansByBook(Book book, Pageable pageable);
+    IdRange getLateLoanIdRange(LocalDate cutoff);
 
-    List<Loan> getAllLateLoans();
+    /**
+     * The loans among {@code ids} that are still open and late at {@code cutoff}.
+     */
+    List<LateLoan> getLateLoans(LocalDate cutoff, Collection<Long> ids);
 }
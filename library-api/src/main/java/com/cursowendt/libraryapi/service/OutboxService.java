@@ -0,0 +1,27 @@
+package com.cursowendt.libraryapi.service;
+
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+
+import java.util.List;
+
+public interface OutboxService {
+
+    /**
+     * Writes the messages to the outbox in the caller's transaction, skipping dedup keys already
+     * queued. Returns how many were written.
+     */
+    int enqueue(List<OutboxMessage> messages);
+
+    /**
+     * Claims a batch of due messages and hands them to the mail queue without waiting for delivery or
+     * for room in the queue. Messages the queue had no room for are released for a later poll.
+     * Returns how many were handed over.
+     */
+    int dispatch();
+
+    /**
+     * Deletes messages sent longer ago than the retention. Returns how many were deleted.
+     */
+    int purgeSent();
+
+}
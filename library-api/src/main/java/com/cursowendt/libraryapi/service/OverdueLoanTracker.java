@@ -0,0 +1,153 @@
+package com.cursowendt.libraryapi.service;
+
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.DueLoan;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Publishes a {@link LoanOverdueEvent} when open loans reach their due date. Loans not yet due wait in a
+ * {@link TimingWheel} ticking every {@code application.overdue.tick} milliseconds, loaded from the database
+ * when the application is ready and kept current as loans are made and returned, so a tick only costs as
+ * much as the loans falling due in it. Changes are applied once the loan's transaction commits, so a rolled
+ * back checkout or return leaves the wheel as it was. An instance loads every open loan when it starts but
+ * afterwards only hears of the loans made and returned through it; a loan made on another instance reaches
+ * this one at its next restart, and the daily late-loans run covers it in the meantime. The outbox dedup key
+ * keeps the mail from going out more than once.
+ */
+@Slf4j
+@Component
+public class OverdueLoanTracker {
+
+    private final LoanRepository loanRepository;
+    private final ApplicationEventPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final TimingWheel<Long> wheel;
+
+    @Autowired
+    public OverdueLoanTracker(final LoanRepository loanRepository,
+                              final ApplicationEventPublisher publisher,
+                              final PlatformTransactionManager transactionManager,
+                              final MeterRegistry meterRegistry,
+                              @Value("${application.overdue.tick:60000}") final long tickMillis,
+                              @Value("${application.overdue.wheel-size:60}") final int wheelSize) {
+        this(loanRepository, publisher, transactionManager, meterRegistry, tickMillis, wheelSize, Clock.systemDefaultZone());
+    }
+
+    public OverdueLoanTracker(final LoanRepository loanRepository,
+                              final ApplicationEventPublisher publisher,
+                              final PlatformTransactionManager transactionManager,
+                              final MeterRegistry meterRegistry,
+                              final long tickMillis,
+                              final int wheelSize,
+                              final Clock clock) {
+        this.loanRepository = loanRepository;
+        this.publisher = publisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(tickMillis, wheelSize, clock.millis());
+        Gauge.builder("library.overdue.tracked", this, OverdueLoanTracker::size)
+            .description("Open loans waiting for their due date").register(meterRegistry);
+    }
+
+    public synchronized int size() {
+        return wheel.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        final LocalDate today = LocalDate.now(clock);
+        final List<Long> dueToday = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<DueLoan> loans = loanRepository.streamOpenDueFrom(today)) {
+                loans.forEach(loan -> {
+                    if (!schedule(loan.getId(), loan.getDueDate())) {
+                        dueToday.add(loan.getId());
+                    }
+                });
+            }
+        });
+        log.info("Tracking {} open loans for their due date", size());
+        publish(today, dueToday);
+    }
+
+    public void track(final Loan loan) {
+        if (loan.getId() == null || loan.getDueDate() == null || Boolean.TRUE.equals(loan.getReturned())) {
+            return;
+        }
+        final Long loanId = loan.getId();
+        final LocalDate dueDate = loan.getDueDate();
+        afterCommit(() -> {
+            if (!schedule(loanId, dueDate)) {
+                publish(LocalDate.now(clock), Collections.singletonList(loanId));
+            }
+        });
+    }
+
+    public void untrack(final Long loanId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                wheel.cancel(loanId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${application.overdue.tick:60000}")
+    public void advance() {
+        final List<Long> due;
+        synchronized (this) {
+            due = wheel.advance(clock.millis());
+        }
+        publish(LocalDate.now(clock), due);
+    }
+
+    private synchronized boolean schedule(final Long loanId, final LocalDate dueDate) {
+        return wheel.schedule(loanId, dueDate.atStartOfDay(clock.getZone()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Runs the change after the current transaction commits, or right away when there is none.
+     */
+    private void afterCommit(final Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    private void publish(final LocalDate date, final List<Long> loanIds) {
+        if (!loanIds.isEmpty()) {
+            log.debug("{} loans became late on {}", loanIds.size(), date);
+            publisher.publishEvent(new LoanOverdueEvent(date, loanIds));
+        }
+    }
+
+}
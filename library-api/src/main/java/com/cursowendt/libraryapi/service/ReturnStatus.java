@@ -0,0 +1,12 @@
+package com.cursowendt.libraryapi.service;
+
+/**
+ * Outcome of returning a single loan.
+ */
+public enum ReturnStatus {
+
+    RETURNED,
+    ALREADY_RETURNED,
+    NOT_FOUND
+
+}
@@ -1,35 +1,349 @@
 package com.cursowendt.libraryapi.service;
 
-import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.entity.JobCheckpoint;
+import com.cursowendt.libraryapi.model.entity.JobPartition;
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+import com.cursowendt.libraryapi.model.projection.IdRange;
+import com.cursowendt.libraryapi.model.projection.LateLoan;
+import com.cursowendt.libraryapi.model.repository.JobCheckpointRepository;
+import com.cursowendt.libraryapi.model.repository.JobPartitionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.validation.Valid;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * The late-loan job fires on every instance. The first one to start the day's run splits the ids of the
+ * overdue loans into {@code application.lateloans.partitions} {@link JobPartition}s; every instance then
+ * claims partitions through a lease kept in the database and works them on up to
+ * {@code application.lateloans.workers} threads of its own. A partition is walked in id order, one chunk of
+ * {@code application.lateloans.chunk-size} rows at a time, and each chunk's mails are written to the outbox
+ * in the same transaction that advances the partition and renews its lease. A lease not renewed within
+ * {@code application.lateloans.lease} is taken over by the next instance that polls, which resumes after the
+ * last committed chunk, so each late loan is queued exactly once per run. A partition claimed
+ * {@code application.lateloans.max-attempts} times without finishing is parked, and the next day's run
+ * replaces a run left unfinished, parked partitions included.
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ScheduleService {
 
+    static final String LATE_LOANS_JOB = "late-loans";
+
     private static final String CRON_LATE_LOANS = "0 0 0 1/1 * ?";
 
     @Value("${application.mail.lateloans.message}")
     private String message;
 
+    @Value("${application.lateloans.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${application.lateloans.partitions:8}")
+    private int partitions;
+
+    @Value("${application.lateloans.workers:4}")
+    private int workers;
+
+    @Value("${application.lateloans.lease:5m}")
+    private Duration lease;
+
+    @Value("${application.lateloans.max-attempts:3}")
+    private int maxAttempts;
+
     private final LoanService loanService;
-    private final EmailService emailService ;
+    private final OutboxService outboxService;
+    private final PlatformTransactionManager transactionManager;
+    private final JobCheckpointRepository checkpointRepository;
+    private final JobPartitionRepository partitionRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final String node = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<Integer, AtomicLong> lag = new ConcurrentHashMap<>();
+
+    private Executor executor;
+    private volatile boolean stopping;
+
+    @PostConstruct
+    public void start() {
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "late-loans-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("library.lateloans.partitions.unfinished", partitionRepository,
+            repository -> repository.countByJobAndFinishedAtIsNull(LATE_LOANS_JOB)).register(meterRegistry);
+        Gauge.builder("library.lateloans.partitions.parked", partitionRepository,
+            repository -> repository.countParked(LATE_LOANS_JOB, LocalDateTime.now(), maxAttempts)).register(meterRegistry);
+    }
+
+    /**
+     * Stops claiming partitions. A chunk cut short rolls back and its partition is resumed elsewhere once the lease expires.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+            ((ExecutorService) executor).awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
 
     @Scheduled(cron = CRON_LATE_LOANS)
     public void sendMailToLateLoans() {
-        List<Loan> allLateLoans = loanService.getAllLateLoans();
-        List<String> mailsList = allLateLoans
-            .stream()
-            .map(loan -> loan.getCustomerEmail())
-            .collect(Collectors.toList());
+        startRun(LocalDate.now());
+        claimPartitions();
+    }
+
+    /**
+     * Queues the mail of loans the {@link OverdueLoanTracker} saw go late, under the dedup key the daily run uses
+     * for the same day, so a loan falling due at midnight is mailed once.
+     */
+    @EventListener
+    public void onLoanOverdue(final LoanOverdueEvent event) {
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        final List<Long> ids = event.getLoanIds();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            final List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            try {
+                transactionTemplate.executeWithoutResult(status -> outboxService.enqueue(loanService
+                    .getLateLoans(event.getDate(), chunk)
+                    .stream()
+                    .filter(loan -> loan.getCustomerEmail() != null)
+                    .map(loan -> toMessage(loan, event.getDate()))
+                    .collect(Collectors.toList())));
+            } catch (DataIntegrityViolationException ex) {
+                log.debug("Overdue mails of {} already queued by another instance", event.getDate());
+            }
+        }
+    }
+
+    /**
+     * Picks up partitions of an unfinished run: the ones still unclaimed and the ones whose owner stopped renewing the lease.
+     */
+    @Scheduled(fixedDelayString = "${application.lateloans.poll-interval:30000}")
+    public void claimPartitions() {
+        while (!stopping) {
+            final int current = active.get();
+            if (current >= workers) {
+                return;
+            }
+            if (!active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final Optional<JobPartition> partition = claimNext();
+            if (partition.isEmpty()) {
+                active.decrementAndGet();
+                return;
+            }
+            executor.execute(() -> work(partition.get()));
+        }
+    }
 
-        emailService.sendMails(message, mailsList);
+    private void startRun(final LocalDate cutoff) {
+        final Optional<JobCheckpoint> current = checkpointRepository.findById(LATE_LOANS_JOB);
+        if (current.isPresent() && !current.get().getCutoff().isBefore(cutoff)) {
+            return;
+        }
+        final List<JobPartition> plan = plan(cutoff);
+        final LocalDateTime now = LocalDateTime.now();
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                if (current.isPresent()) {
+                    if (checkpointRepository.restart(LATE_LOANS_JOB, cutoff, plan.size(), now) == 0) {
+                        return;
+                    }
+                    if (!current.get().isFinished()) {
+                        log.warn("Late loans run for {} superseded unfinished by the run for {}",
+                            current.get().getCutoff(), cutoff);
+                    }
+                    partitionRepository.deleteByJob(LATE_LOANS_JOB);
+                } else {
+                    checkpointRepository.save(JobCheckpoint.builder()
+                        .job(LATE_LOANS_JOB)
+                        .cutoff(cutoff)
+                        .partitions(plan.size())
+                        .startedAt(now)
+                        .build());
+                }
+                partitionRepository.saveAll(plan);
+                if (plan.isEmpty()) {
+                    checkpointRepository.finish(LATE_LOANS_JOB, now);
+                }
+                partitionRepository.flush();
+                log.info("Late loans run for {} started with {} partitions", cutoff, plan.size());
+            });
+        } catch (DataIntegrityViolationException ex) {
+            log.info("Late loans run for {} already started by another instance", cutoff);
+        }
     }
+
+    /**
+     * Splits the ids of the loans late at {@code cutoff} into contiguous ranges of about the same width. The width
+     * is rounded up, so fewer ranges than {@code partitions} may cover the ids; none reaches past the last one.
+     */
+    private List<JobPartition> plan(final LocalDate cutoff) {
+        final IdRange range = loanService.getLateLoanIdRange(cutoff);
+        final List<JobPartition> plan = new ArrayList<>();
+        if (range == null || range.getMinId() == null) {
+            return plan;
+        }
+        final long span = range.getMaxId() - range.getMinId() + 1;
+        final int count = (int) Math.min(partitions, span);
+        final long width = (span + count - 1) / count;
+        for (long after = range.getMinId() - 1; after < range.getMaxId(); after += width) {
+            final int index = plan.size();
+            plan.add(JobPartition.builder()
+                .id(JobPartition.id(LATE_LOANS_JOB, index))
+                .job(LATE_LOANS_JOB)
+                .partitionIndex(index)
+                .cutoff(cutoff)
+                .lastId(after)
+                .upTo(Math.min(after + width, range.getMaxId()))
+                .build());
+        }
+        return plan;
+    }
+
+    private Optional<JobPartition> claimNext() {
+        final LocalDateTime now = LocalDateTime.now();
+        for (final String id : partitionRepository.findClaimable(LATE_LOANS_JOB, now, maxAttempts)) {
+            if (partitionRepository.claim(id, node, now, now.plus(lease), maxAttempts) == 1) {
+                return partitionRepository.findById(id);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void work(final JobPartition first) {
+        try {
+            Optional<JobPartition> partition = Optional.of(first);
+            while (partition.isPresent() && !stopping) {
+                process(partition.get());
+                partition = claimNext();
+            }
+        } catch (RuntimeException ex) {
+            log.error("Late loans worker failed, its partition is resumed when the lease expires " +
+                "unless it ran out of attempts", ex);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private void process(final JobPartition partition) {
+        final AtomicLong remaining = lag(partition.getPartitionIndex());
+        final Timer chunkTimer = meterRegistry.timer("library.lateloans.chunk");
+        final TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<LateLoan> chunk;
+        do {
+            remaining.set(partition.getUpTo() - partition.getLastId());
+            final Timer.Sample sample = Timer.start(meterRegistry);
+            chunk = loanService.getLateLoansBetween(partition.getCutoff(), partition.getLastId(), partition.getUpTo(), chunkSize);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            final List<LateLoan> loans = chunk;
+            final Long lastId = loans.get(loans.size() - 1).getId();
+            final boolean renewed = commitChunk(transactionTemplate, partition, loans, lastId);
+            if (!renewed) {
+                log.warn("Lost the lease of late loans partition {}", partition.getId());
+                meterRegistry.counter("library.lateloans.lease.lost").increment();
+                remaining.set(0);
+                return;
+            }
+            partition.setLastId(lastId);
+            partition.setProcessed(partition.getProcessed() + loans.size());
+            sample.stop(chunkTimer);
+            meterRegistry.counter("library.lateloans.processed").increment(loans.size());
+        } while (chunk.size() == chunkSize);
+
+        remaining.set(0);
+        final LocalDateTime now = LocalDateTime.now();
+        if (partitionRepository.finish(partition.getId(), node, partition.getCutoff(), now) == 1
+            && partitionRepository.countByJobAndFinishedAtIsNull(LATE_LOANS_JOB) == 0
+            && checkpointRepository.finish(LATE_LOANS_JOB, now) == 1) {
+            log.info("Late loans job finished, {} loans processed", partitionRepository.sumProcessed(LATE_LOANS_JOB));
+        }
+    }
+
+    /**
+     * Queues the chunk's mails and advances the partition; false when the lease was lost. A chunk that collides
+     * with mails the {@link OverdueLoanTracker} queued at the same moment is retried once, skipping those.
+     */
+    private boolean commitChunk(final TransactionTemplate transactionTemplate, final JobPartition partition,
+                                final List<LateLoan> loans, final Long lastId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    if (partitionRepository.checkpoint(partition.getId(), node, partition.getCutoff(), lastId,
+                        loans.size(), LocalDateTime.now().plus(lease)) == 0) {
+                        return false;
+                    }
+                    outboxService.enqueue(loans
+                        .stream()
+                        .filter(loan -> loan.getCustomerEmail() != null)
+                        .map(loan -> toMessage(loan, partition.getCutoff()))
+                        .collect(Collectors.toList()));
+                    return true;
+                }));
+            } catch (DataIntegrityViolationException ex) {
+                if (attempt > 1) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Ids left in a partition this instance is working on, published as {@code library.lateloans.partition.lag}.
+     */
+    private AtomicLong lag(final int index) {
+        return lag.computeIfAbsent(index, key -> {
+            final AtomicLong value = new AtomicLong();
+            Gauge.builder("library.lateloans.partition.lag", value, AtomicLong::get)
+                .tag("partition", String.valueOf(key))
+                .register(meterRegistry);
+            return value;
+        });
+    }
+
+    private OutboxMessage toMessage(final LateLoan loan, final LocalDate cutoff) {
+        return OutboxMessage.builder()
+            .dedupKey(LATE_LOANS_JOB + ":" + cutoff + ":" + loan.getId())
+            .recipient(loan.getCustomerEmail())
+            .subject(EmailService.LATE_LOANS_SUBJECT)
+            .text(message)
+            .build();
+    }
+
 }
@@ -0,0 +1,151 @@
+package com.cursowendt.libraryapi.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel. The lowest wheel has {@code wheelSize} slots of {@code tickMillis} each, and every
+ * overflow wheel has slots as wide as the whole wheel below it; an entry sits in the lowest wheel whose span
+ * covers its deadline and moves down a level each time its slot comes up. Scheduling and cancelling are O(1)
+ * and advancing one tick only touches the entries that expire or move down in it, however many are pending.
+ * Entries expire at the start of the tick their deadline falls in. Not thread-safe.
+ */
+public class TimingWheel<K> {
+
+    private final int wheelSize;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+
+    private Wheel root;
+
+    public TimingWheel(final long tickMillis, final int wheelSize, final long startMillis) {
+        this.wheelSize = wheelSize;
+        this.root = new Wheel(tickMillis, startMillis);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Schedules {@code key} at {@code deadlineMillis}, replacing an earlier schedule of the same key. Returns
+     * false and schedules nothing when the deadline falls in the current tick or before it.
+     */
+    public boolean schedule(final K key, final long deadlineMillis) {
+        cancel(key);
+        if (deadlineMillis < root.current + root.tick) {
+            return false;
+        }
+        final Entry<K> entry = new Entry<>(key, deadlineMillis);
+        entries.put(key, entry);
+        root.add(entry);
+        return true;
+    }
+
+    public boolean cancel(final K key) {
+        final Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.slot.remove(entry);
+        return true;
+    }
+
+    /**
+     * Moves the wheel to {@code nowMillis} and returns the keys that expired on the way, tick by tick.
+     */
+    public List<K> advance(final long nowMillis) {
+        final List<K> expired = new ArrayList<>();
+        if (entries.isEmpty()) {
+            root = new Wheel(root.tick, Math.max(nowMillis, root.current));
+            return expired;
+        }
+        while (root.current + root.tick <= nowMillis) {
+            root.current += root.tick;
+            cascade(root.overflow);
+            final Set<Entry<K>> slot = root.slot(root.current);
+            for (final Entry<K> entry : slot) {
+                entries.remove(entry.key);
+                expired.add(entry.key);
+            }
+            slot.clear();
+        }
+        return expired;
+    }
+
+    /**
+     * Brings overflow wheels up to the root's time, top level first, and re-adds the entries of each slot that
+     * came up so they land in a lower wheel.
+     */
+    private void cascade(final Wheel wheel) {
+        if (wheel == null) {
+            return;
+        }
+        final long start = wheel.truncate(root.current);
+        if (start == wheel.current) {
+            return;
+        }
+        wheel.current = start;
+        cascade(wheel.overflow);
+        final Set<Entry<K>> slot = wheel.slot(start);
+        final List<Entry<K>> moving = new ArrayList<>(slot);
+        slot.clear();
+        moving.forEach(root::add);
+    }
+
+    private final class Wheel {
+
+        private final long tick;
+        private final List<Set<Entry<K>>> slots;
+        private long current;
+        private Wheel overflow;
+
+        private Wheel(final long tick, final long startMillis) {
+            this.tick = tick;
+            this.current = truncate(startMillis);
+            this.slots = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) {
+                slots.add(new LinkedHashSet<>());
+            }
+        }
+
+        private long truncate(final long millis) {
+            return millis - Math.floorMod(millis, tick);
+        }
+
+        private Set<Entry<K>> slot(final long millis) {
+            return slots.get((int) Math.floorMod(Math.floorDiv(millis, tick), (long) wheelSize));
+        }
+
+        private void add(final Entry<K> entry) {
+            if (Math.floorDiv(entry.deadline, tick) - Math.floorDiv(current, tick) < wheelSize) {
+                final Set<Entry<K>> slot = slot(entry.deadline);
+                slot.add(entry);
+                entry.slot = slot;
+            } else {
+                if (overflow == null) {
+                    overflow = new Wheel(tick * wheelSize, current);
+                }
+                overflow.add(entry);
+            }
+        }
+
+    }
+
+    private static final class Entry<K> {
+
+        private final K key;
+        private final long deadline;
+        private Set<Entry<K>> slot;
+
+        private Entry(final K key, final long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+    }
+
+}
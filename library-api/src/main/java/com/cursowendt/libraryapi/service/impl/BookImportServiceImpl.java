@@ -0,0 +1,216 @@
+package com.cursowendt.libraryapi.service.impl;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.ImportErrorDTO;
+import com.cursowendt.libraryapi.api.dto.ImportReportDTO;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.service.BookImportService;
+import com.cursowendt.libraryapi.service.BookSearchIndex;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.IsbnBloomFilter;
+import com.cursowendt.libraryapi.service.impl.BookRecordReader.BookRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Imports books from a stream in chunks of {@code application.import.chunk-size} lines. Each chunk
+ * is checked against the database with one IN query and inserted in its own transaction, so only
+ * one chunk is held in memory and a failure never rolls back earlier chunks.
+ */
+@Service
+@Slf4j
+public class BookImportServiceImpl implements BookImportService {
+
+    static final String DUPLICATED_IN_FILE = "Isbn duplicado no arquivo.";
+    static final String ALREADY_EXISTS = "Isbn já cadastrado.";
+
+    private final BookRepository bookRepository;
+    private final BookSearchIndex searchIndex;
+    private final IsbnBloomFilter isbnFilter;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+
+    public BookImportServiceImpl(final BookRepository bookRepository,
+                                 final BookSearchIndex searchIndex,
+                                 final IsbnBloomFilter isbnFilter,
+                                 final Validator validator,
+                                 final ObjectMapper objectMapper,
+                                 final EntityManager entityManager,
+                                 final PlatformTransactionManager transactionManager,
+                                 @Value("${application.import.chunk-size:500}") final int chunkSize,
+                                 @Value("${application.import.max-reported-errors:1000}") final int maxReportedErrors) {
+        this.bookRepository = bookRepository;
+        this.searchIndex = searchIndex;
+        this.isbnFilter = isbnFilter;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    @Override
+    public ImportReportDTO importBooks(final InputStream input, final DataFormat format, final Charset charset)
+        throws IOException {
+        final ImportReportDTO report = new ImportReportDTO();
+        final List<BookRecord> chunk = new ArrayList<>(chunkSize);
+        try (BookRecordReader reader = new BookRecordReader(input, format, charset, objectMapper)) {
+            BookRecord record;
+            while ((record = reader.next()) != null) {
+                if (isValid(record, report)) {
+                    chunk.add(record);
+                }
+                if (chunk.size() == chunkSize) {
+                    write(chunk, report);
+                    chunk.clear();
+                }
+            }
+        }
+        write(chunk, report);
+        log.info("Book import finished: {} imported, {} rejected", report.getImported(), report.getRejected());
+        return report;
+    }
+
+    private boolean isValid(final BookRecord record, final ImportReportDTO report) {
+        if (record.getError() != null) {
+            reject(report, record, Collections.singletonList(record.getError()));
+            return false;
+        }
+        final Set<ConstraintViolation<BookDTO>> violations = validator.validate(record.getBook());
+        if (!violations.isEmpty()) {
+            reject(report, record, violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.toList()));
+            return false;
+        }
+        return true;
+    }
+
+    private void write(final List<BookRecord> chunk, final ImportReportDTO report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        final Map<String, BookRecord> unique = new LinkedHashMap<>();
+        for (final BookRecord record : chunk) {
+            if (unique.putIfAbsent(record.getIsbn(), record) != null) {
+                reject(report, record, Collections.singletonList(DUPLICATED_IN_FILE));
+            }
+        }
+        for (final String isbn : existingIsbns(unique.keySet())) {
+            reject(report, unique.remove(isbn), Collections.singletonList(ALREADY_EXISTS));
+        }
+        if (unique.isEmpty()) {
+            return;
+        }
+
+        List<Book> saved;
+        try {
+            saved = insert(unique.values());
+        } catch (DataIntegrityViolationException ex) {
+            log.warn("Import chunk violated a constraint, retrying line by line", ex);
+            saved = insertOneByOne(unique.values(), report);
+        }
+        for (final Book book : saved) {
+            isbnFilter.put(book.getIsbn());
+            searchIndex.put(book);
+        }
+        report.setImported(report.getImported() + saved.size());
+    }
+
+    /**
+     * Only the ISBNs the filter cannot rule out are sent to the database.
+     */
+    private Set<String> existingIsbns(final Collection<String> isbns) {
+        final List<String> candidates = isbns.stream()
+            .filter(isbnFilter::mightContain)
+            .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> existing = new HashSet<>(bookRepository.findExistingIsbns(candidates));
+        if (isbnFilter.isReady()) {
+            for (int i = existing.size(); i < candidates.size(); i++) {
+                isbnFilter.recordFalsePositive();
+            }
+        }
+        return existing;
+    }
+
+    private List<Book> insert(final Collection<BookRecord> records) {
+        return transactionTemplate.execute(status -> {
+            final List<Book> books = bookRepository.saveAll(records.stream()
+                .map(record -> toEntity(record.getBook()))
+                .collect(Collectors.toList()));
+            bookRepository.flush();
+            entityManager.clear();
+            return books;
+        });
+    }
+
+    private List<Book> insertOneByOne(final Collection<BookRecord> records, final ImportReportDTO report) {
+        final List<Book> saved = new ArrayList<>();
+        for (final BookRecord record : records) {
+            try {
+                saved.add(transactionTemplate.execute(status -> bookRepository.saveAndFlush(toEntity(record.getBook()))));
+            } catch (DataIntegrityViolationException ex) {
+                reject(report, record, Collections.singletonList(
+                    BookServiceImpl.isIsbnConflict(ex) ? ALREADY_EXISTS : cause(ex)));
+            }
+        }
+        entityManager.clear();
+        return saved;
+    }
+
+    private void reject(final ImportReportDTO report, final BookRecord record, final List<String> errors) {
+        report.setRejected(report.getRejected() + 1);
+        if (report.getErrors().size() < maxReportedErrors) {
+            report.getErrors().add(new ImportErrorDTO(record.getLine(), record.getIsbn(), errors));
+        }
+    }
+
+    /**
+     * The database message without the failed statement, e.g. a title longer than its column.
+     */
+    private static String cause(final DataIntegrityViolationException ex) {
+        final Throwable cause = ex.getMostSpecificCause();
+        return Objects.toString(cause.getMessage(), cause.toString()).split("\\R|; SQL statement", 2)[0];
+    }
+
+    private static Book toEntity(final BookDTO dto) {
+        return Book.builder()
+            .title(dto.getTitle())
+            .author(dto.getAuthor())
+            .isbn(dto.getIsbn())
+            .build();
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.cursowendt.libraryapi.service.impl;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.exception.BusinessException;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads books one line at a time from an NDJSON or CSV stream. CSV input needs a header naming
+ * the title, author and isbn columns; quoted fields may not span lines.
+ */
+final class BookRecordReader implements Closeable {
+
+    private static final String[] CSV_COLUMNS = {"title", "author", "isbn"};
+
+    private final BufferedReader reader;
+    private final DataFormat format;
+    private final ObjectReader json;
+    private Map<String, Integer> columns;
+    private long line;
+
+    BookRecordReader(final InputStream input, final DataFormat format, final Charset charset,
+                     final ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(input, charset));
+        this.format = format;
+        this.json = objectMapper.readerFor(BookDTO.class);
+    }
+
+    /**
+     * Returns the next non-blank line as a record, or null at the end of the stream.
+     */
+    BookRecord next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            if (++line == 1 && !text.isEmpty() && text.charAt(0) == '\uFEFF') {
+                text = text.substring(1);
+            }
+        } while (text.trim().isEmpty() || (format == DataFormat.CSV && columns == null && readHeader(text)));
+
+        return format == DataFormat.CSV ? parseCsv(text) : parseJson(text);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private BookRecord parseJson(final String text) {
+        try {
+            final BookDTO book = json.readValue(text);
+            return book == null
+                ? new BookRecord(line, null, "Expected a JSON object")
+                : new BookRecord(line, book, null);
+        } catch (JsonProcessingException ex) {
+            return new BookRecord(line, null, "Invalid JSON: " + ex.getOriginalMessage());
+        }
+    }
+
+    private BookRecord parseCsv(final String text) {
+        final List<String> fields = Csv.split(text);
+        if (fields == null) {
+            return new BookRecord(line, null, "Unterminated quoted field");
+        }
+        if (fields.size() != columns.size()) {
+            return new BookRecord(line, null,
+                "Expected " + columns.size() + " fields but found " + fields.size());
+        }
+        final BookDTO book = BookDTO.builder()
+            .title(fields.get(columns.get("title")))
+            .author(fields.get(columns.get("author")))
+            .isbn(fields.get(columns.get("isbn")))
+            .build();
+        return new BookRecord(line, book, null);
+    }
+
+    private boolean readHeader(final String text) {
+        final List<String> names = Csv.split(text);
+        columns = new HashMap<>();
+        for (int i = 0; names != null && i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (final String column : CSV_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new BusinessException("CSV header must contain the columns title, author and isbn");
+            }
+        }
+        columns = Map.copyOf(columns);
+        return true;
+    }
+
+    static final class BookRecord {
+
+        private final long line;
+        private final BookDTO book;
+        private final String error;
+
+        BookRecord(final long line, final BookDTO book, final String error) {
+            this.line = line;
+            this.book = book;
+            this.error = error;
+        }
+
+        long getLine() {
+            return line;
+        }
+
+        BookDTO getBook() {
+            return book;
+        }
+
+        String getError() {
+            return error;
+        }
+
+        String getIsbn() {
+            return book == null ? null : book.getIsbn();
+        }
+
+    }
+
+}
@@ -1,35 +1,145 @@
 package com.cursowendt.libraryapi.service.impl;
 
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LookupDTO;
 import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.projection.BookVersion;
+import com.cursowendt.libraryapi.model.projection.CatalogVersion;
 import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.service.BookSearchIndex;
 import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.CountEstimator;
+import com.cursowendt.libraryapi.service.IsbnBloomFilter;
 import com.cursowendt.libraryapi.exception.BusinessException;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
+@Slf4j
 public class BookServiceImpl implements BookService {
 
+    private static final int INDEX_CHUNK = 1_000;
+
     @Autowired
     private BookRepository bookRepository;
 
-    public BookServiceImpl(final BookRepository bookRepository) {
+    @Autowired
+    private CountEstimator countEstimator;
+
+    @Value("${application.search.index.enabled:true}")
+    private boolean searchIndexEnabled;
+
+    private final BookSearchIndex searchIndex;
+    private final IsbnBloomFilter isbnFilter;
+
+    public BookServiceImpl(final BookRepository bookRepository,
+                           final BookSearchIndex searchIndex,
+                           final IsbnBloomFilter isbnFilter) {
         this.bookRepository = bookRepository;
+        this.searchIndex = searchIndex;
+        this.isbnFilter = isbnFilter;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildSearchIndex() {
+        if (!searchIndexEnabled) {
+            return;
+        }
+        searchIndex.clear();
+        Long after = 0L;
+        Slice<Book> chunk;
+        do {
+            chunk = bookRepository.findByFilterAfter(null, null, null, after, PageRequest.of(0, INDEX_CHUNK));
+            chunk.forEach(searchIndex::put);
+            if (chunk.hasContent()) {
+                after = chunk.getContent().get(chunk.getNumberOfElements() - 1).getId();
+            }
+        } while (chunk.hasNext());
+        searchIndex.markReady();
+        log.info("Book search index built, last id: {}", after);
+    }
+
+    /**
+     * Brings the index up to date with writes made by other instances. A single aggregate query tells whether
+     * anything changed; only then are ids and versions walked in chunks, and only the stale books are read again.
+     */
+    @Scheduled(fixedDelayString = "${application.search.index.refresh-interval:30000}")
+    public void refreshSearchIndex() {
+        if (!searchIndexEnabled || !searchIndex.isReady()) {
+            return;
+        }
+        final CatalogVersion catalog = bookRepository.findCatalogVersion();
+        if (searchIndex.isInSync(catalog.getBooks(), catalog.getMaxId(), catalog.getVersions())) {
+            return;
+        }
+        final Set<Long> ids = new HashSet<>();
+        int refreshed = 0;
+        Long after = 0L;
+        List<BookVersion> chunk;
+        do {
+            chunk = bookRepository.findVersionsAfter(after, PageRequest.of(0, INDEX_CHUNK));
+            final Map<Long, Long> versions = new HashMap<>();
+            chunk.forEach(book -> versions.put(book.getId(), book.getVersion()));
+            ids.addAll(versions.keySet());
+            final List<Long> stale = searchIndex.staleIds(versions);
+            if (!stale.isEmpty()) {
+                bookRepository.findAllById(stale).forEach(searchIndex::put);
+                refreshed += stale.size();
+            }
+            if (!chunk.isEmpty()) {
+                after = chunk.get(chunk.size() - 1).getId();
+            }
+        } while (chunk.size() == INDEX_CHUNK);
+        searchIndex.retainAll(ids, catalog.getMaxId() > after ? catalog.getMaxId() : after);
+        log.debug("Book search index refreshed, {} books read again", refreshed);
     }
 
     @Override
     public Book save(final Book book) {
-        if (bookRepository.existsByIsbn(book.getIsbn())) {
-            throw new BusinessException("Isbn já cadastrado.");
+        if (isbnFilter.mightContain(book.getIsbn())) {
+            if (bookRepository.existsByIsbn(book.getIsbn())) {
+                throw new BusinessException("Isbn já cadastrado.");
+            }
+            if (isbnFilter.isReady()) {
+                isbnFilter.recordFalsePositive();
+            }
+        }
+        final Book saved;
+        try {
+            saved = bookRepository.saveAndFlush(book);
+        } catch (DataIntegrityViolationException ex) {
+            if (isIsbnConflict(ex)) {
+                throw new BusinessException("Isbn já cadastrado.");
+            }
+            throw ex;
         }
-        return bookRepository.save(book);
+        isbnFilter.put(saved.getIsbn());
+        searchIndex.put(saved);
+        return saved;
     }
 
     @Override
@@ -37,12 +147,34 @@ public class BookServiceImpl implements BookService {
         return this.bookRepository.findById(id);
     }
 
+    @Override
+    public Optional<BookDTO> getDetailsById(final Long id) {
+        return bookRepository.findDtoById(id);
+    }
+
+    @Override
+    public LookupDTO<Long, BookDTO> getDetailsByIds(final Collection<Long> ids) {
+        return LookupDTO.of(ids, bookRepository.findDtosByIds(ids), BookDTO::getId);
+    }
+
+    @Override
+    public LookupDTO<String, BookDTO> getDetailsByIsbns(final Collection<String> isbns) {
+        return LookupDTO.of(isbns, bookRepository.findDtosByIsbns(isbns), BookDTO::getIsbn);
+    }
+
+    @Override
+    public Optional<Long> getVersionById(final Long id) {
+        return bookRepository.findVersionById(id);
+    }
+
     @Override
     public void delete(final Book book) {
         if (Objects.isNull(book) || Objects.isNull(book.getId())) {
             throw new IllegalArgumentException("Book id can't be null.");
         }
         this.bookRepository.delete(book);
+        isbnFilter.remove(book.getIsbn());
+        searchIndex.remove(book.getId());
     }
 
     @Override
@@ -50,18 +182,41 @@ public class BookServiceImpl implements BookService {
         if (Objects.isNull(book) || Objects.isNull(book.getId())) {
             throw new IllegalArgumentException("Book id can't be null.");
         }
-        return this.bookRepository.save(book);
+        final Book updated = this.bookRepository.save(book);
+        searchIndex.put(updated);
+        return updated;
     }
 
     @Override
-    public Page<Book> find(final Book filter, final Pageable pageRequest) {
-        final Example<Book> example = Example.of(filter,
-            ExampleMatcher
-                .matching()
-                .withIgnoreCase()
-                .withIgnoreNullValues()
-                .withStringMatcher(ExampleMatcher.StringMatcher.CONTAINING));
-        return bookRepository.findAll(example, pageRequest);
+    public Page<BookDTO> find(final Book filter, final Pageable pageRequest) {
+        return searchIndex.search(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), pageRequest)
+            .<Page<BookDTO>>map(result -> new PageImpl<>(findAllInOrder(result.getIds()), pageRequest, result.getTotal()))
+            .orElseGet(() -> bookRepository.findDtoByFilter(
+                filter.getTitle(), filter.getAuthor(), filter.getIsbn(), withoutRelevance(pageRequest)));
+    }
+
+    @Override
+    public Slice<BookDTO> findSlice(final Book filter, final Pageable pageRequest) {
+        return searchIndex.search(filter.getTitle(), filter.getAuthor(), filter.getIsbn(), pageRequest)
+            .<Slice<BookDTO>>map(result -> new SliceImpl<>(findAllInOrder(result.getIds()), pageRequest,
+                pageRequest.getOffset() + pageRequest.getPageSize() < result.getTotal()))
+            .orElseGet(() -> bookRepository.findDtoSliceByFilter(
+                filter.getTitle(), filter.getAuthor(), filter.getIsbn(), withoutRelevance(pageRequest)));
+    }
+
+    @Override
+    public long estimateCount(final Book filter) {
+        final String key = String.join("|", "book",
+            String.valueOf(filter.getTitle()), String.valueOf(filter.getAuthor()), String.valueOf(filter.getIsbn()))
+            .toLowerCase();
+        return countEstimator.estimate(key, () -> searchIndex.count(filter.getTitle(), filter.getAuthor(), filter.getIsbn())
+            .orElseGet(() -> bookRepository.countByFilter(filter.getTitle(), filter.getAuthor(), filter.getIsbn())));
+    }
+
+    @Override
+    public Slice<BookDTO> findAfter(final Book filter, final Long after, final int size) {
+        return bookRepository.findDtoByFilterAfter(
+            filter.getTitle(), filter.getAuthor(), filter.getIsbn(), after, PageRequest.of(0, size));
     }
 
     @Override
@@ -69,4 +224,26 @@ public class BookServiceImpl implements BookService {
         return bookRepository.findByIsbn(isbn);
     }
 
+    static boolean isIsbnConflict(final DataIntegrityViolationException ex) {
+        if (ex.getCause() instanceof ConstraintViolationException) {
+            final String constraint = ((ConstraintViolationException) ex.getCause()).getConstraintName();
+            return Objects.nonNull(constraint) && constraint.toLowerCase(Locale.ROOT).contains(Book.UK_ISBN);
+        }
+        return false;
+    }
+
+    private List<BookDTO> findAllInOrder(final List<Long> ids) {
+        return getDetailsByIds(ids).getContent();
+    }
+
+    private Pageable withoutRelevance(final Pageable pageable) {
+        if (pageable.getSort().getOrderFor(BookSearchIndex.RELEVANCE) == null) {
+            return pageable;
+        }
+        final Sort sort = Sort.by(pageable.getSort()
+            .filter(order -> !BookSearchIndex.RELEVANCE.equals(order.getProperty()))
+            .toList());
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
+    }
+
 }
@@ -1,36 +1,243 @@
 package com.cursowendt.libraryapi.service.impl;
 
 import com.cursowendt.libraryapi.service.EmailService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Sends mail from a bounded queue drained by {@code application.mail.workers} threads. Each worker
+ * takes up to {@code application.mail.batch-size} messages and hands them to the sender in one call,
+ * which delivers them over a single SMTP connection. {@link #sendMail} blocks for up to
+ * {@code application.mail.enqueue-timeout} while the queue is full, then the message is rejected;
+ * {@link #offerMail} rejects it at once.
+ */
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class EmailServiceImpl implements EmailService {
 
-    @Value("${application.mail.default-remetent}")
-    private String remetent;
+    private static final long POLL_MILLIS = 500;
 
     private final JavaMailSender javaMailSender;
+    private final String remetent;
+    private final int workers;
+    private final int batchSize;
+    private final Duration enqueueTimeout;
+    private final BlockingQueue<Envelope> queue;
+    private final ExecutorService executor;
+
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter rejected;
+    private final Timer batchTimer;
+    private final Timer deliveryTimer;
+
+    private volatile boolean stopping;
+
+    public EmailServiceImpl(final JavaMailSender javaMailSender,
+                            final MeterRegistry meterRegistry,
+                            @Value("${application.mail.default-remetent}") final String remetent,
+                            @Value("${application.mail.queue-capacity:1000}") final int queueCapacity,
+                            @Value("${application.mail.workers:2}") final int workers,
+                            @Value("${application.mail.batch-size:50}") final int batchSize,
+                            @Value("${application.mail.enqueue-timeout:30s}") final Duration enqueueTimeout) {
+        this.javaMailSender = javaMailSender;
+        this.remetent = remetent;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.enqueueTimeout = enqueueTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        final AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            final Thread thread = new Thread(runnable, "mail-sender-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sent = Counter.builder("library.mail.sent").register(meterRegistry);
+        this.failed = Counter.builder("library.mail.failed").register(meterRegistry);
+        this.rejected = Counter.builder("library.mail.rejected")
+            .description("Messages refused because the queue stayed full").register(meterRegistry);
+        this.batchTimer = Timer.builder("library.mail.batch")
+            .description("Time to send one batch over a single SMTP connection").register(meterRegistry);
+        this.deliveryTimer = Timer.builder("library.mail.delivery")
+            .description("Time from queueing a message to handing it to the SMTP server").register(meterRegistry);
+        Gauge.builder("library.mail.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Stops taking new messages and gives the workers a few seconds to send what is queued.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        stopping = true;
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Mail queue closed with {} messages unsent", queue.size());
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendMails(final String message, final List<String> mailsList) {
+        final CompletableFuture<?>[] futures = mailsList.stream()
+            .map(mail -> sendMail(mail, LATE_LOANS_SUBJECT, message))
+            .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(futures);
+    }
 
     @Override
-    public void sendMails(final String message, final List<String> mailsList) {
+    public CompletableFuture<Void> sendMail(final String to, final String subject, final String text) {
+        return enqueue(to, subject, text, enqueueTimeout);
+    }
 
-        String[] mails = mailsList.toArray(new String[mailsList.size()]);
+    @Override
+    public CompletableFuture<Void> offerMail(final String to, final String subject, final String text) {
+        return enqueue(to, subject, text, Duration.ZERO);
+    }
 
-        SimpleMailMessage mailMessage = new SimpleMailMessage();
+    private CompletableFuture<Void> enqueue(final String to, final String subject, final String text,
+                                            final Duration timeout) {
+        final SimpleMailMessage mailMessage = new QueuedMessage();
         mailMessage.setFrom(remetent);
-        mailMessage.setSubject("Livro com empréstimo atrasado.");
-        mailMessage.setText(message);
+        mailMessage.setSubject(subject);
+        mailMessage.setText(text);
+        mailMessage.setTo(to);
+
+        final Envelope envelope = new Envelope(mailMessage, System.nanoTime());
+        try {
+            if (stopping || !queue.offer(envelope, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                envelope.future.completeExceptionally(new RejectedExecutionException("Mail queue is full"));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            envelope.future.completeExceptionally(ex);
+        }
+        return envelope.future;
+    }
+
+    private void drain() {
+        final List<Envelope> batch = new ArrayList<>(batchSize);
+        while (!(stopping && queue.isEmpty())) {
+            try {
+                final Envelope first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                send(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(final List<Envelope> batch) {
+        final SimpleMailMessage[] messages = batch.stream().map(envelope -> envelope.message)
+            .toArray(SimpleMailMessage[]::new);
+        Map<Object, Exception> failures = Map.of();
+        final Timer.Sample sample = Timer.start();
+        try {
+            javaMailSender.send(messages);
+        } catch (MailSendException ex) {
+            failures = new IdentityHashMap<>(ex.getFailedMessages());
+            if (failures.isEmpty()) {
+                fail(batch, ex);
+                return;
+            }
+        } catch (MailException ex) {
+            fail(batch, ex);
+            return;
+        } finally {
+            sample.stop(batchTimer);
+        }
+
+        final long now = System.nanoTime();
+        for (final Envelope envelope : batch) {
+            final Exception failure = failures.get(envelope.message);
+            if (failure == null) {
+                sent.increment();
+                deliveryTimer.record(now - envelope.queuedAt, TimeUnit.NANOSECONDS);
+                envelope.future.complete(null);
+            } else {
+                failed.increment();
+                envelope.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void fail(final List<Envelope> batch, final MailException ex) {
+        log.error("Could not send {} mails", batch.size(), ex);
+        failed.increment(batch.size());
+        batch.forEach(envelope -> envelope.future.completeExceptionally(ex));
+    }
+
+    /**
+     * Equal by identity, so two queued messages with the same content stay separate keys in
+     * {@link MailSendException#getFailedMessages()} and one failing doesn't fail the other.
+     */
+    private static final class QueuedMessage extends SimpleMailMessage {
+
+        @Override
+        public boolean equals(final Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+    }
+
+    private static final class Envelope {
+
+        private final SimpleMailMessage message;
+        private final long queuedAt;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
 
-        mailMessage.setTo(mails);
+        private Envelope(final SimpleMailMessage message, final long queuedAt) {
+            this.message = message;
+            this.queuedAt = queuedAt;
+        }
 
-        javaMailSender.send(mailMessage);
     }
 
 }
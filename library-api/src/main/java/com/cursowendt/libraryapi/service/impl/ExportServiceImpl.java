@@ -0,0 +1,118 @@
+package com.cursowendt.libraryapi.service.impl;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.mapper.BookMapper;
+import com.cursowendt.libraryapi.api.mapper.LoanMapper;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.ExportService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes whole tables row by row from a JDBC cursor. The persistence context is cleared every
+ * {@code application.export.clear-every} rows, so memory stays flat whatever the table size.
+ */
+@Service
+@Slf4j
+public class ExportServiceImpl implements ExportService {
+
+    static final String BOOK_HEADER = Csv.join("id", "title", "author", "isbn");
+    static final String LOAN_HEADER = Csv.join("id", "customer", "email", "bookId", "isbn", "title", "author");
+
+    private final BookRepository bookRepository;
+    private final LoanRepository loanRepository;
+    private final BookMapper bookMapper;
+    private final LoanMapper loanMapper;
+    private final EntityManager entityManager;
+    private final ObjectWriter json;
+    private final int clearEvery;
+
+    public ExportServiceImpl(final BookRepository bookRepository,
+                             final LoanRepository loanRepository,
+                             final BookMapper bookMapper,
+                             final LoanMapper loanMapper,
+                             final EntityManager entityManager,
+                             final ObjectMapper objectMapper,
+                             @Value("${application.export.clear-every:500}") final int clearEvery) {
+        this.bookRepository = bookRepository;
+        this.loanRepository = loanRepository;
+        this.bookMapper = bookMapper;
+        this.loanMapper = loanMapper;
+        this.entityManager = entityManager;
+        this.json = objectMapper.writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.clearEvery = clearEvery;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportBooks(final OutputStream output, final DataFormat format) throws IOException {
+        try (Stream<Book> books = bookRepository.streamAll()) {
+            final long rows = write(books.iterator(), output, format, BOOK_HEADER, bookMapper::toDto,
+                book -> Csv.join(book.getId(), book.getTitle(), book.getAuthor(), book.getIsbn()));
+            log.info("Exported {} books as {}", rows, format);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportLoans(final OutputStream output, final DataFormat format) throws IOException {
+        try (Stream<Loan> loans = loanRepository.streamAll()) {
+            final long rows = write(loans.iterator(), output, format, LOAN_HEADER, loanMapper::toDto,
+                loan -> {
+                    final BookDTO book = loan.getBook();
+                    return Csv.join(loan.getId(), loan.getCustomer(), loan.getEmail(),
+                        book.getId(), book.getIsbn(), book.getTitle(), book.getAuthor());
+                });
+            log.info("Exported {} loans as {}", rows, format);
+        }
+    }
+
+    private <E, D> long write(final Iterator<E> rows, final OutputStream output, final DataFormat format,
+                              final String header, final Function<E, D> toDto,
+                              final Function<D, String> toCsv) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (format == DataFormat.CSV) {
+            writer.write(header);
+            writer.write('\n');
+        }
+        long count = 0;
+        while (rows.hasNext()) {
+            final D dto = toDto.apply(rows.next());
+            if (format == DataFormat.CSV) {
+                writer.write(toCsv.apply(dto));
+            } else {
+                json.writeValue(writer, dto);
+            }
+            writer.write('\n');
+            if (++count % clearEvery == 0) {
+                entityManager.clear();
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+}
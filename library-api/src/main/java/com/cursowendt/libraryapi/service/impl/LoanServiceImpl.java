@@ -1,21 +1,47 @@
 package com.cursowendt.libraryapi.service.impl;
 
+import com.cursowendt.libraryapi.api.dto.LoanBatchDTO;
+import com.cursowendt.libraryapi.api.dto.LoanBatchResultDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.api.dto.LoanFilterDTO;
+import com.cursowendt.libraryapi.api.dto.ReturnReportDTO;
 import com.cursowendt.libraryapi.exception.BusinessException;
-import com.cursowendt.libraryapi.model.entity.Book;
 import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.IdRange;
+import com.cursowendt.libraryapi.model.projection.LateLoan;
+import com.cursowendt.libraryapi.model.projection.LoanableBook;
+import com.cursowendt.libraryapi.model.projection.ReturnableLoan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
 import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import com.cursowendt.libraryapi.service.CountEstimator;
 import com.cursowendt.libraryapi.service.LoanService;
+import com.cursowendt.libraryapi.service.OverdueLoanTracker;
+import com.cursowendt.libraryapi.service.ReturnStatus;
 import lombok.RequiredArgsConstructor;
 import net.bytebuddy.asm.Advice;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class LoanServiceImpl implements LoanService {
@@ -23,16 +49,80 @@ public class LoanServiceImpl implements LoanService {
     @Autowired
     private LoanRepository loanRepository;
 
-    public LoanServiceImpl(final LoanRepository loanRepositoty) {
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private CountEstimator countEstimator;
+
+    @Autowired
+    private OverdueLoanTracker overdueTracker;
+
+    public LoanServiceImpl(final LoanRepository loanRepositoty, final BookRepository bookRepository,
+                           final OverdueLoanTracker overdueTracker) {
         this.loanRepository = loanRepositoty;
+        this.bookRepository = bookRepository;
+        this.overdueTracker = overdueTracker;
     }
 
     @Override
+    @Transactional
     public Loan save(final Loan loan) {
-        if(loanRepository.existsByBookAndNotReturned(loan.getBook())){
+        if (bookRepository.markLoaned(loan.getBook().getId()) == 0) {
             throw new BusinessException("Book already loaned");
         }
-        return loanRepository.save(loan);
+        final Loan saved = loanRepository.save(loan);
+        overdueTracker.track(saved);
+        return saved;
+    }
+
+    @Override
+    @Transactional
+    public List<LoanBatchResultDTO> checkout(final LoanBatchDTO batch) {
+        final Map<String, LoanableBook> books = bookRepository.findLoanableByIsbns(new TreeSet<>(batch.getIsbns()))
+            .stream()
+            .collect(Collectors.toMap(LoanableBook::getIsbn, Function.identity()));
+
+        final List<LoanBatchResultDTO> results = new ArrayList<>();
+        final Map<Long, LoanBatchResultDTO> loaning = new LinkedHashMap<>();
+        final Set<String> requested = new HashSet<>();
+        for (final String isbn : batch.getIsbns()) {
+            final LoanableBook book = books.get(isbn);
+            final LoanBatchResultDTO result = LoanBatchResultDTO.builder().isbn(isbn).build();
+            results.add(result);
+            if (!requested.add(isbn)) {
+                result.setError("Duplicated isbn in request");
+            } else if (book == null) {
+                result.setError("Book not found for passed isbn");
+            } else if (!Boolean.TRUE.equals(book.getAvailable())) {
+                result.setError("Book already loaned");
+            } else {
+                loaning.put(book.getId(), result);
+            }
+        }
+        if (loaning.isEmpty()) {
+            return results;
+        }
+
+        if (bookRepository.markLoanedByIds(loaning.keySet()) != loaning.size()) {
+            throw new OptimisticLockingFailureException("Books of the batch were loaned by another request");
+        }
+        final LocalDate today = LocalDate.now();
+        final List<Loan> loans = new ArrayList<>();
+        loaning.keySet().forEach(bookId -> loans.add(Loan.builder()
+            .book(bookRepository.getOne(bookId))
+            .customer(batch.getCustomer())
+            .customerEmail(batch.getEmail())
+            .loanDate(today)
+            .build()));
+        loanRepository.saveAll(loans);
+
+        final Iterator<LoanBatchResultDTO> loaned = loaning.values().iterator();
+        for (final Loan loan : loans) {
+            loaned.next().setLoanId(loan.getId());
+            overdueTracker.track(loan);
+        }
+        return results;
     }
 
     @Override
@@ -41,25 +131,101 @@ public class LoanServiceImpl implements LoanService {
     }
 
     @Override
-    public Loan update(final Loan loan) {
-        return loanRepository.save(loan);
+    @Transactional
+    public ReturnStatus returnLoan(final Long id) {
+        if (loanRepository.markReturned(id) == 0) {
+            return loanRepository.existsById(id) ? ReturnStatus.ALREADY_RETURNED : ReturnStatus.NOT_FOUND;
+        }
+        bookRepository.markAvailableByLoan(id);
+        overdueTracker.untrack(id);
+        return ReturnStatus.RETURNED;
+    }
+
+    @Override
+    @Transactional
+    public ReturnReportDTO returnLoans(final Collection<Long> ids) {
+        final Map<Long, ReturnableLoan> loans = loanRepository.findReturnableByIds(ids)
+            .stream()
+            .collect(Collectors.toMap(ReturnableLoan::getId, Function.identity()));
+
+        final ReturnReportDTO report = new ReturnReportDTO();
+        final Set<Long> books = new HashSet<>();
+        for (final Long id : new LinkedHashSet<>(ids)) {
+            final ReturnableLoan loan = loans.get(id);
+            if (loan == null) {
+                report.getNotFound().add(id);
+            } else if (Boolean.TRUE.equals(loan.getReturned())) {
+                report.getAlreadyReturned().add(id);
+            } else {
+                report.getReturned().add(id);
+                books.add(loan.getBookId());
+            }
+        }
+
+        if (!report.getReturned().isEmpty()) {
+            loanRepository.markReturnedByIds(report.getReturned());
+            bookRepository.markAvailableByIds(books);
+            report.getReturned().forEach(overdueTracker::untrack);
+        }
+        return report;
+    }
+
+    @Override
+    public Page<LoanDTO> find(final LoanFilterDTO filterDTO, final Pageable pageable) {
+        return loanRepository.findDtoByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
+    }
+
+    @Override
+    public Slice<LoanDTO> findSlice(final LoanFilterDTO filterDTO, final Pageable pageable) {
+        return loanRepository.findDtoSliceByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
+    }
+
+    @Override
+    public long estimateCount(final LoanFilterDTO filterDTO) {
+        final String key = String.join("|", "loan", String.valueOf(filterDTO.getIsbn()), String.valueOf(filterDTO.getCustomer()));
+        return countEstimator.estimate(key,
+            () -> loanRepository.countByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer()));
+    }
+
+    @Override
+    public Slice<LoanDTO> findAfter(final LoanFilterDTO filterDTO, final Long after, final int size) {
+        return loanRepository.findDtoByBookIsbnOrCustomerAfter(
+            filterDTO.getIsbn(), filterDTO.getCustomer(), after, PageRequest.of(0, size));
+    }
+
+    @Override
+    public Page<LoanDTO> getLoansByBook(final Long bookId, final Pageable pageable) {
+        return loanRepository.findDtoByBookId(bookId, pageable);
+    }
+
+    @Override
+    public Slice<LoanDTO> getLoansByBookSlice(final Long bookId, final Pageable pageable) {
+        return loanRepository.findDtoSliceByBookId(bookId, pageable);
+    }
+
+    @Override
+    public long estimateCountByBook(final Long bookId) {
+        return countEstimator.estimate("loan-book|" + bookId, () -> loanRepository.countByBookId(bookId));
+    }
+
+    @Override
+    public Slice<LoanDTO> getLoansByBookAfter(final Long bookId, final Long after, final int size) {
+        return loanRepository.findDtoByBookIdAfter(bookId, after, PageRequest.of(0, size));
     }
 
     @Override
-    public Page<Loan> find(final LoanFilterDTO filterDTO, final Pageable pageable) {
-        return loanRepository.findByBookIsbnOrCustomer(filterDTO.getIsbn(), filterDTO.getCustomer(), pageable);
+    public List<LateLoan> getLateLoansBetween(final LocalDate cutoff, final Long after, final Long upTo, final int size) {
+        return loanRepository.findLateLoansBetween(cutoff, after, upTo, PageRequest.of(0, size));
     }
 
     @Override
-    public Page<Loan> getLoansByBook(final Book book, final Pageable pageable) {
-        return loanRepository.findByBook(book, pageable);
+    public IdRange getLateLoanIdRange(final LocalDate cutoff) {
+        return loanRepository.findLateLoanIdRange(cutoff);
     }
 
     @Override
-    public List<Loan> getAllLateLoans() {
-        final Integer loansDays = 4;
-        LocalDate threeDaysAgo = LocalDate.now().minusDays(loansDays);
-        return loanRepository.findByLoanDateLessThanAndNotReturned(threeDaysAgo);
+    public List<LateLoan> getLateLoans(final LocalDate cutoff, final Collection<Long> ids) {
+        return loanRepository.findLateLoansByIds(cutoff, ids);
     }
 
 }
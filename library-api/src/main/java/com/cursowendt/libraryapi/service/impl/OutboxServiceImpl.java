@@ -0,0 +1,196 @@
+package com.cursowendt.libraryapi.service.impl;
+
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+import com.cursowendt.libraryapi.model.repository.OutboxMessageRepository;
+import com.cursowendt.libraryapi.service.EmailService;
+import com.cursowendt.libraryapi.service.OutboxService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers the outbox every {@code application.outbox.poll-interval}. A dispatcher claims up to
+ * {@code application.outbox.batch-size} due rows by stamping them with its own token in a conditional
+ * update, so rows claimed by another instance are skipped rather than waited on. A claim expires after
+ * {@code application.outbox.claim-timeout}, which lets another dispatcher pick up rows left behind by a
+ * crash. Failed sends are retried with exponential backoff until {@code application.outbox.max-attempts}.
+ * Dispatch never waits on the mail queue: when it is full the rest of the batch is released untouched,
+ * without spending an attempt. Sent rows are deleted after {@code application.outbox.sent-retention}, which
+ * must outlast the window in which a notification could be enqueued again under the same dedup key.
+ */
+@Slf4j
+@Service
+public class OutboxServiceImpl implements OutboxService {
+
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final int PURGE_CHUNK = 1_000;
+
+    private final OutboxMessageRepository repository;
+    private final EmailService emailService;
+    private final int batchSize;
+    private final Duration claimTimeout;
+    private final int maxAttempts;
+    private final Duration backoffInitial;
+    private final Duration backoffMax;
+    private final Duration sentRetention;
+
+    private final Counter sent;
+    private final Counter retried;
+    private final Counter failed;
+    private final Counter deferred;
+    private final Counter purged;
+
+    public OutboxServiceImpl(final OutboxMessageRepository repository,
+                             final EmailService emailService,
+                             final MeterRegistry meterRegistry,
+                             @Value("${application.outbox.batch-size:200}") final int batchSize,
+                             @Value("${application.outbox.claim-timeout:5m}") final Duration claimTimeout,
+                             @Value("${application.outbox.max-attempts:10}") final int maxAttempts,
+                             @Value("${application.outbox.backoff-initial:30s}") final Duration backoffInitial,
+                             @Value("${application.outbox.backoff-max:6h}") final Duration backoffMax,
+                             @Value("${application.outbox.sent-retention:7d}") final Duration sentRetention) {
+        this.repository = repository;
+        this.emailService = emailService;
+        this.batchSize = batchSize;
+        this.claimTimeout = claimTimeout;
+        this.maxAttempts = maxAttempts;
+        this.backoffInitial = backoffInitial;
+        this.backoffMax = backoffMax;
+        this.sentRetention = sentRetention;
+        this.sent = Counter.builder("library.outbox.sent").register(meterRegistry);
+        this.retried = Counter.builder("library.outbox.retried").register(meterRegistry);
+        this.failed = Counter.builder("library.outbox.failed")
+            .description("Messages given up on after the last attempt").register(meterRegistry);
+        this.deferred = Counter.builder("library.outbox.deferred")
+            .description("Claimed messages released because the mail queue was full").register(meterRegistry);
+        this.purged = Counter.builder("library.outbox.purged").register(meterRegistry);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int enqueue(final List<OutboxMessage> messages) {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        final Set<String> keys = messages.stream().map(OutboxMessage::getDedupKey).collect(Collectors.toSet());
+        final Set<String> seen = new HashSet<>(repository.findExistingDedupKeys(keys));
+        final LocalDateTime now = LocalDateTime.now();
+        final List<OutboxMessage> fresh = messages.stream()
+            .filter(message -> seen.add(message.getDedupKey()))
+            .peek(message -> {
+                if (message.getNextAttemptAt() == null) {
+                    message.setNextAttemptAt(now);
+                }
+            })
+            .collect(Collectors.toList());
+        repository.saveAll(fresh);
+        return fresh.size();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${application.outbox.poll-interval:2000}")
+    public int dispatch() {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<Long> ids = repository.findClaimable(now, PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        final String token = UUID.randomUUID().toString();
+        if (repository.claim(ids, token, now, now.plus(claimTimeout)) == 0) {
+            return 0;
+        }
+        final List<OutboxMessage> claimed = repository.findByClaimToken(token);
+        for (int i = 0; i < claimed.size(); i++) {
+            final OutboxMessage message = claimed.get(i);
+            final CompletableFuture<Void> delivery =
+                emailService.offerMail(message.getRecipient(), message.getSubject(), message.getText());
+            if (rejected(delivery)) {
+                final List<Long> rest = claimed.subList(i, claimed.size()).stream()
+                    .map(OutboxMessage::getId)
+                    .collect(Collectors.toList());
+                repository.release(rest, token);
+                deferred.increment(rest.size());
+                return i;
+            }
+            delivery.whenComplete((result, ex) -> {
+                if (ex == null) {
+                    repository.markSent(message.getId(), token, LocalDateTime.now());
+                    sent.increment();
+                } else {
+                    retryLater(message, token, ex);
+                }
+            });
+        }
+        return claimed.size();
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${application.outbox.purge-interval:3600000}")
+    public int purgeSent() {
+        final LocalDateTime before = LocalDateTime.now().minus(sentRetention);
+        int total = 0;
+        List<Long> ids;
+        while (!(ids = repository.findSentBefore(before, PageRequest.of(0, PURGE_CHUNK))).isEmpty()) {
+            total += repository.deleteByIds(ids);
+        }
+        purged.increment(total);
+        return total;
+    }
+
+    /**
+     * Whether the mail queue refused the message outright, as opposed to a send that failed.
+     */
+    private static boolean rejected(final CompletableFuture<Void> delivery) {
+        if (!delivery.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            delivery.join();
+            return false;
+        } catch (CompletionException ex) {
+            return ex.getCause() instanceof RejectedExecutionException;
+        }
+    }
+
+    private void retryLater(final OutboxMessage message, final String token, final Throwable ex) {
+        final int attempts = message.getAttempts() + 1;
+        final String error = String.valueOf(ex.getMessage());
+        final String lastError = error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+        if (attempts >= maxAttempts) {
+            log.error("Giving up on outbox message {} after {} attempts: {}", message.getId(), attempts, lastError);
+            repository.markFailedAttempt(message.getId(), token, OutboxMessage.Status.FAILED, LocalDateTime.now(), lastError);
+            failed.increment();
+        } else {
+            repository.markFailedAttempt(message.getId(), token, OutboxMessage.Status.PENDING,
+                LocalDateTime.now().plus(backoff(attempts)), lastError);
+            retried.increment();
+        }
+    }
+
+    /**
+     * {@code backoff-initial * 2^(attempts - 1)}, capped at {@code backoff-max}.
+     */
+    private Duration backoff(final int attempts) {
+        final int exponent = Math.min(attempts - 1, 30);
+        final Duration delay = backoffInitial.multipliedBy(1L << exponent);
+        return delay.compareTo(backoffMax) > 0 ? backoffMax : delay;
+    }
+
+}
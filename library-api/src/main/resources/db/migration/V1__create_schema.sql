@@ -0,0 +1,77 @@
+create sequence book_seq start with 1 increment by 50;
+create sequence loan_seq start with 1 increment by 50;
+create sequence outbox_seq start with 1 increment by 50;
+
+create table book (
+    id bigint not null,
+    title varchar(255),
+    author varchar(255),
+    isbn varchar(255),
+    available boolean not null,
+    constraint pk_book primary key (id),
+    constraint uk_book_isbn unique (isbn)
+);
+
+create table loan (
+    id bigint not null,
+    customer varchar(100),
+    customer_email varchar(255),
+    id_book bigint,
+    loan_date date,
+    due_date date not null,
+    returned boolean,
+    constraint pk_loan primary key (id),
+    constraint fk_loan_book foreign key (id_book) references book (id)
+);
+
+-- findByBook / findByBookAfter / countByBook / existsByBookAndNotReturned
+create index ix_loan_book on loan (id_book, id);
+-- isbn-or-customer filters
+create index ix_loan_customer on loan (customer);
+-- late loans and the overdue tracker rebuild
+create index ix_loan_due_date on loan (due_date);
+
+create table job_checkpoint (
+    job varchar(50) not null,
+    cutoff date not null,
+    partitions integer not null,
+    started_at timestamp not null,
+    finished_at timestamp,
+    constraint pk_job_checkpoint primary key (job)
+);
+
+create table job_partition (
+    id varchar(60) not null,
+    job varchar(50) not null,
+    partition_index integer not null,
+    cutoff date not null,
+    last_id bigint not null,
+    up_to bigint not null,
+    processed bigint not null,
+    owner varchar(100),
+    lease_until timestamp,
+    finished_at timestamp,
+    constraint pk_job_partition primary key (id)
+);
+
+create index ix_job_partition_job on job_partition (job);
+
+create table outbox_message (
+    id bigint not null,
+    dedup_key varchar(150) not null,
+    recipient varchar(255) not null,
+    subject varchar(255) not null,
+    text varchar(4000) not null,
+    status varchar(10) not null,
+    attempts integer not null,
+    next_attempt_at timestamp not null,
+    claim_token varchar(36),
+    claimed_until timestamp,
+    sent_at timestamp,
+    last_error varchar(500),
+    constraint pk_outbox_message primary key (id),
+    constraint uk_outbox_dedup_key unique (dedup_key)
+);
+
+create index ix_outbox_status_next_attempt on outbox_message (status, next_attempt_at);
+create index ix_outbox_claim_token on outbox_message (claim_token);
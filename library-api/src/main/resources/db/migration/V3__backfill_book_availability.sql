@@ -0,0 +1,4 @@
+-- books with an open loan were left available before checkout started to flip the flag
+update book set available = false, version = version + 1
+where available = true
+  and exists (select 1 from loan l where l.id_book = book.id and (l.returned is null or l.returned = false));
@@ -0,0 +1,2 @@
+-- claims per late-loans partition, so one that keeps failing is parked instead of retried forever
+alter table job_partition add column attempts integer default 0 not null;
@@ -0,0 +1,60 @@
+package com.cursowendt.libraryapi.api.mapper;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.model.entity.Book;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookMapperTest {
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final BookMapper bookMapper = new BookMapper();
+
+    @Test
+    @DisplayName("Deve mapear um livro para DTO igual ao ModelMapper")
+    public void bookToDtoEquivalenceTest() {
+        // cenario
+        Book book = Book.builder().id(1L).title("As aventuras").author("Fulano").isbn("123").build();
+
+        // execucao
+        BookDTO expected = modelMapper.map(book, BookDTO.class);
+        BookDTO result = bookMapper.toDto(book);
+
+        // verificacao
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Deve mapear um DTO para livro igual ao ModelMapper")
+    public void dtoToBookEquivalenceTest() {
+        // cenario
+        BookDTO bookDTO = BookDTO.builder().id(1L).title("As aventuras").author("Fulano").isbn("123").build();
+
+        // execucao
+        Book expected = modelMapper.map(bookDTO, Book.class);
+        Book result = bookMapper.toEntity(bookDTO);
+
+        // verificacao
+        assertThat(result).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Deve manter nulos os campos de filtro não informados")
+    public void partialFilterEquivalenceTest() {
+        // cenario
+        BookDTO filter = BookDTO.builder().title("aventuras").build();
+
+        // execucao
+        Book expected = modelMapper.map(filter, Book.class);
+        Book result = bookMapper.toEntity(filter);
+
+        // verificacao
+        assertThat(result).isEqualTo(expected);
+        assertThat(result.getAuthor()).isNull();
+        assertThat(result.getIsbn()).isNull();
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.cursowendt.libraryapi.api.mapper;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoanMapperTest {
+
+    private final ModelMapper modelMapper = new ModelMapper();
+    private final LoanMapper loanMapper = new LoanMapper(new BookMapper());
+
+    @Test
+    @DisplayName("Deve mapear um empréstimo para DTO igual ao ModelMapper")
+    public void loanToDtoEquivalenceTest() {
+        // cenario
+        Book book = Book.builder().id(1L).title("As aventuras").author("Fulano").isbn("123").build();
+        Loan loan = Loan.builder()
+            .id(10L)
+            .customer("Fulano")
+            .customerEmail("fulano@email.com")
+            .book(book)
+            .loanDate(LocalDate.now())
+            .returned(false)
+            .build();
+
+        // execucao
+        LoanDTO expected = modelMapper.map(loan, LoanDTO.class);
+        expected.setBook(modelMapper.map(book, BookDTO.class));
+        LoanDTO result = loanMapper.toDto(loan);
+
+        // verificacao
+        assertThat(result).isEqualTo(expected);
+    }
+
+}
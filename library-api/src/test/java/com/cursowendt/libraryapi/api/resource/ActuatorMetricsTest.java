@@ -0,0 +1,86 @@
+package com.cursowendt.libraryapi.api.resource;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ActuatorMetricsTest {
+
+    static String METRICS = "/actuator/metrics/";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    @DisplayName("Deve publicar no actuator o tempo dos métodos de repositório e serviço sem percentis calculados na aplicação")
+    public void repositoryAndServiceMetricsTest() throws Exception {
+        // cenario
+        mvc.perform(MockMvcRequestBuilders.get("/api/loans?customer=Fulano&isbn=123"))
+            .andExpect(status().isOk());
+
+        // execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "library.repository.invocations")
+                .param("tag", "repository:LoanRepository", "method:findDtoByBookIsbnOrCustomer"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("measurements[?(@.statistic == 'COUNT')].value").value(1.0));
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "library.repository.invocations.percentile"))
+            .andExpect(status().isNotFound());
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "library.repository.rows")
+                .param("tag", "method:findDtoByBookIsbnOrCustomer"))
+            .andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "library.service.invocations")
+                .param("tag", "service:LoanServiceImpl", "method:find"))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Deve publicar no actuator as métricas do pool de conexões, com as estatísticas do Hibernate desligadas por padrão")
+    public void hibernateAndPoolMetricsTest() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "hibernate.statements"))
+            .andExpect(status().isNotFound());
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "hikaricp.connections.usage"))
+            .andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "hikaricp.connections.acquire"))
+            .andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.get(METRICS + "hikaricp.connections.usage.percentile"))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Deve resumir em um único documento a latência, os caches, o pool e o job de atrasos")
+    public void libraryStatsTest() throws Exception {
+        // cenario
+        mvc.perform(MockMvcRequestBuilders.get("/api/books/999999"))
+            .andExpect(status().isNotFound());
+
+        // execucao e verificacao
+        mvc.perform(MockMvcRequestBuilders.get("/actuator/librarystats"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("endpoints[*].name").value(hasItem("GET /api/books/{id}")))
+            .andExpect(jsonPath("endpoints[?(@.name == 'GET /api/books/{id}')].p99").isNotEmpty())
+            .andExpect(jsonPath("endpoints[*].name").value(not(hasItem("GET /actuator/librarystats"))))
+            .andExpect(jsonPath("repositories[*].name").value(hasItem("BookRepository.findDtoById")))
+            .andExpect(jsonPath("caches", hasSize(2)))
+            .andExpect(jsonPath("pool.max").value(greaterThan(0)))
+            .andExpect(jsonPath("lateLoans.processed").isNumber());
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.cursowendt.libraryapi.api.resource;
+
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class BookControllerConcurrencyTest {
+
+    static String BOOK_API = "/api/books";
+    static int REQUESTS = 16;
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Test
+    @DisplayName("Deve criar apenas um livro quando o mesmo isbn é enviado em paralelo")
+    public void createSameIsbnConcurrentlyTest() throws Exception {
+        // cenario
+        BookDTO book = BookDTO.builder().isbn("concurrent-001").author("Artur").title("As aventuras").build();
+        ExecutorService executor = Executors.newFixedThreadPool(REQUESTS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+
+        // execucao
+        try {
+            for (int i = 0; i < REQUESTS; i++) {
+                Callable<ResponseEntity<String>> post = () -> {
+                    start.await();
+                    return restTemplate.postForEntity(BOOK_API, book, String.class);
+                };
+                responses.add(executor.submit(post));
+            }
+            start.countDown();
+
+            // verificacao
+            int created = 0;
+            for (Future<ResponseEntity<String>> response : responses) {
+                ResponseEntity<String> entity = response.get();
+                if (entity.getStatusCode() == HttpStatus.CREATED) {
+                    created++;
+                } else {
+                    assertThat(entity.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+                    assertThat(entity.getBody()).contains("Isbn já cadastrado.");
+                }
+            }
+            assertThat(created).isEqualTo(1);
+            assertThat(bookRepository.existsByIsbn("concurrent-001")).isTrue();
+            assertThat(bookRepository.count()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
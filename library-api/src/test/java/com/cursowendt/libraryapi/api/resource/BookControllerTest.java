@@ -1,11 +1,20 @@
 package com.cursowendt.libraryapi.api.resource;
 
 import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.ImportErrorDTO;
+import com.cursowendt.libraryapi.api.dto.ImportReportDTO;
+import com.cursowendt.libraryapi.api.dto.IsbnLookupDTO;
+import com.cursowendt.libraryapi.api.dto.LookupDTO;
+import com.cursowendt.libraryapi.api.dto.RequestLimits;
 import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.service.BookImportService;
 import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.ExportService;
 import com.cursowendt.libraryapi.exception.BusinessException;
 import com.cursowendt.libraryapi.service.LoanService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.assertj.core.api.Assertions;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,6 +28,9 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -26,10 +38,19 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -49,6 +70,12 @@ public class BookControllerTest {
     @MockBean
     LoanService loanService;
 
+    @MockBean
+    BookImportService bookImportService;
+
+    @MockBean
+    ExportService exportService;
+
     @Test
     @DisplayName("Deve criar um livro com sucesso.")
     public void createBookTest() throws Exception {
@@ -118,13 +145,14 @@ public class BookControllerTest {
         // cenario (given)
         Long id = 1L;
 
-        Book book = Book.builder()
+        BookDTO book = BookDTO.builder()
             .id(id)
             .title(createNewBook().getTitle())
             .author(createNewBook().getAuthor())
             .isbn(createNewBook().getIsbn())
+            .version(3L)
             .build();
-        BDDMockito.given(bookService.getById(id)).willReturn(Optional.of(book));
+        BDDMockito.given(bookService.getDetailsById(id)).willReturn(Optional.of(book));
 
         // execucao (when)
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -138,7 +166,145 @@ public class BookControllerTest {
             .andExpect(jsonPath("id").value(id))
             .andExpect(jsonPath("title").value(createNewBook().getTitle()))
             .andExpect(jsonPath("author").value(createNewBook().getAuthor()))
-            .andExpect(jsonPath("isbn").value(createNewBook().getIsbn()));
+            .andExpect(jsonPath("isbn").value(createNewBook().getIsbn()))
+            .andExpect(jsonPath("version").doesNotExist())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    @DisplayName("Deve obter vários livros pelos ids na ordem pedida informando os ids inexistentes")
+    public void getBooksByIdsTest() throws Exception {
+        // cenario
+        LookupDTO<Long, BookDTO> lookup = LookupDTO.<Long, BookDTO>builder()
+            .content(Arrays.asList(BookDTO.builder().id(3L).isbn("333").build(), BookDTO.builder().id(1L).isbn("111").build()))
+            .missing(Arrays.asList(2L))
+            .build();
+        BDDMockito.given(bookService.getDetailsByIds(Arrays.asList(3L, 1L, 2L))).willReturn(lookup);
+
+        // execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat("?ids=3,1,2"))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content[*].id", Matchers.contains(3, 1)))
+            .andExpect(jsonPath("content[0].isbn").value("333"))
+            .andExpect(jsonPath("missing", Matchers.contains(2)));
+        Mockito.verify(bookService, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve recusar a busca por ids acima do limite")
+    public void getBooksByTooManyIdsTest() throws Exception {
+        // cenario
+        StringBuilder ids = new StringBuilder("0");
+        for (int id = 1; id <= RequestLimits.MAX_ROWS; id++) {
+            ids.append(',').append(id);
+        }
+
+        // execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat("?ids=" + ids))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("errors[0]").value("Between 1 and " + RequestLimits.MAX_ROWS + " ids must be informed"));
+        Mockito.verify(bookService, Mockito.never()).getDetailsByIds(Mockito.anyCollection());
+    }
+
+    @Test
+    @DisplayName("Deve obter vários livros pelos isbns")
+    public void lookupBooksByIsbnsTest() throws Exception {
+        // cenario
+        LookupDTO<String, BookDTO> lookup = LookupDTO.<String, BookDTO>builder()
+            .content(Arrays.asList(BookDTO.builder().id(1L).isbn("111").build()))
+            .missing(Arrays.asList("999"))
+            .build();
+        BDDMockito.given(bookService.getDetailsByIsbns(Arrays.asList("111", "999"))).willReturn(lookup);
+        String json = new ObjectMapper().writeValueAsString(IsbnLookupDTO.builder().isbns(Arrays.asList("111", "999")).build());
+
+        // execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .post(BOOK_API.concat("/lookup"))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(json);
+
+        // verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content[0].isbn").value("111"))
+            .andExpect(jsonPath("missing", Matchers.contains("999")));
+    }
+
+    @Test
+    @DisplayName("Deve recusar a busca por isbns sem isbns")
+    public void lookupBooksWithoutIsbnsTest() throws Exception {
+        // cenario
+        String json = new ObjectMapper().writeValueAsString(IsbnLookupDTO.builder().isbns(Collections.emptyList()).build());
+
+        // execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .post(BOOK_API.concat("/lookup"))
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(json);
+
+        // verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isBadRequest());
+        Mockito.verify(bookService, Mockito.never()).getDetailsByIsbns(Mockito.anyCollection());
+    }
+
+    @Test
+    @DisplayName("Deve responder 304 pela versão do livro sem ler os detalhes quando o ETag não mudou")
+    public void getBookNotModifiedTest() throws Exception {
+        // cenario
+        BDDMockito.given(bookService.getVersionById(1L)).willReturn(Optional.of(3L));
+
+        // execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat("/" + 1))
+            .header(HttpHeaders.IF_NONE_MATCH, "\"2\", W/\"3\"")
+            .accept(MediaType.APPLICATION_JSON);
+
+        // verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+            .andExpect(content().string(""));
+        Mockito.verify(bookService, Mockito.never()).getDetailsById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve retornar os detalhes quando o ETag informado estiver desatualizado")
+    public void getBookModifiedTest() throws Exception {
+        // cenario
+        BDDMockito.given(bookService.getVersionById(1L)).willReturn(Optional.of(4L));
+        BDDMockito.given(bookService.getDetailsById(1L))
+            .willReturn(Optional.of(BookDTO.builder().id(1L).isbn("123").version(4L).build()));
+
+        // execucao
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat("/" + 1))
+            .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+            .accept(MediaType.APPLICATION_JSON);
+
+        // verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+            .andExpect(jsonPath("isbn").value("123"));
     }
 
     @Test
@@ -146,7 +312,7 @@ public class BookControllerTest {
     public void bookNotFoundTest() throws Exception {
 
         // cenario
-        BDDMockito.given(bookService.getById(Mockito.anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(bookService.getDetailsById(Mockito.anyLong())).willReturn(Optional.empty());
 
         // execucao (when)
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -219,6 +385,65 @@ public class BookControllerTest {
             .andExpect(jsonPath("isbn").value("321"));
     }
 
+    @Test
+    @DisplayName("Deve retornar 412 ao atualizar um livro com If-Match desatualizado")
+    public void updateBookPreconditionFailedTest() throws Exception {
+        // given
+        Book book = Book.builder().id(1L).title("some title").author("some author").isbn("321").version(2L).build();
+        BDDMockito.given(bookService.getById(1L)).willReturn(Optional.of(book));
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .put(BOOK_API.concat("/" + 1))
+            .header(HttpHeaders.IF_MATCH, "\"1\"")
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc.perform(request)
+            .andExpect(status().isPreconditionFailed());
+        Mockito.verify(bookService, Mockito.never()).update(Mockito.any(Book.class));
+    }
+
+    @Test
+    @DisplayName("Deve atualizar um livro com If-Match atual e devolver o novo ETag")
+    public void updateBookIfMatchTest() throws Exception {
+        // given
+        Book book = Book.builder().id(1L).title("some title").author("some author").isbn("321").version(2L).build();
+        BDDMockito.given(bookService.getById(1L)).willReturn(Optional.of(book));
+        BDDMockito.given(bookService.update(book))
+            .willReturn(Book.builder().id(1L).title("As aventuras").author("Artur").isbn("321").version(3L).build());
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .put(BOOK_API.concat("/" + 1))
+            .header(HttpHeaders.IF_MATCH, "\"2\"")
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc.perform(request)
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+    }
+
+    @Test
+    @DisplayName("Deve retornar 412 quando o livro mudar entre a leitura e a gravação com If-Match")
+    public void updateBookConcurrentChangeTest() throws Exception {
+        // given
+        Book book = Book.builder().id(1L).isbn("321").version(2L).build();
+        BDDMockito.given(bookService.getById(1L)).willReturn(Optional.of(book));
+        BDDMockito.given(bookService.update(book)).willThrow(new ObjectOptimisticLockingFailureException(Book.class, 1L));
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .put(BOOK_API.concat("/" + 1))
+            .header(HttpHeaders.IF_MATCH, "\"2\"")
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc.perform(request)
+            .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     @DisplayName("Deve retornar um 404 ao tentar atualizar um livro inexistente")
     public void updateInexistentBookTest() throws Exception {
@@ -243,14 +468,14 @@ public class BookControllerTest {
     public void findBooksTest() throws Exception {
         // given
         Long id  = 1L;
-        Book book = Book.builder().id(id)
+        BookDTO book = BookDTO.builder().id(id)
             .author(createNewBook().getAuthor())
             .title(createNewBook().getTitle())
             .isbn(createNewBook().getIsbn())
             .build();
 
         BDDMockito.given(bookService.find(Mockito.any(Book.class), Mockito.any(Pageable.class)))
-            .willReturn(new PageImpl<Book>(Arrays.asList(book), PageRequest.of(0, 100), 1));
+            .willReturn(new PageImpl<BookDTO>(Arrays.asList(book), PageRequest.of(0, 100), 1));
 
         String queryString = String.format("?title=%s&author=%s&page=0&size=100", book.getTitle(), book.getAuthor());
 
@@ -271,6 +496,173 @@ public class BookControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros sem contar o total.")
+    public void findBooksSliceTest() throws Exception {
+        // given
+        BookDTO book = BookDTO.builder().id(1L)
+            .author(createNewBook().getAuthor())
+            .title(createNewBook().getTitle())
+            .isbn(createNewBook().getIsbn())
+            .build();
+
+        BDDMockito.given(bookService.findSlice(Mockito.any(Book.class), Mockito.any(Pageable.class)))
+            .willReturn(new SliceImpl<>(Arrays.asList(book), PageRequest.of(0, 10), true));
+        BDDMockito.given(bookService.estimateCount(Mockito.any(Book.class))).willReturn(42L);
+
+        String queryString = String.format("?title=%s&page=0&size=10&count=false&estimate=true", book.getTitle());
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat(queryString))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content", Matchers.hasSize(1)))
+            .andExpect(jsonPath("hasNext").value(true))
+            .andExpect(jsonPath("size").value(10))
+            .andExpect(jsonPath("totalEstimate").value(42))
+            .andExpect(jsonPath("totalElements").doesNotExist());
+
+        Mockito.verify(bookService, Mockito.never()).find(Mockito.any(Book.class), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar livros a partir de um cursor.")
+    public void findBooksAfterCursorTest() throws Exception {
+        // given
+        BookDTO book = BookDTO.builder().id(7L)
+            .author(createNewBook().getAuthor())
+            .title(createNewBook().getTitle())
+            .isbn(createNewBook().getIsbn())
+            .build();
+        String after = Base64.getUrlEncoder().withoutPadding().encodeToString("id:5".getBytes());
+
+        BDDMockito.given(bookService.findAfter(Mockito.any(Book.class), Mockito.eq(5L), Mockito.eq(1)))
+            .willReturn(new SliceImpl<>(Arrays.asList(book), PageRequest.of(0, 1), true));
+
+        String queryString = String.format("?title=%s&after=%s&size=1", book.getTitle(), after);
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat(queryString))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        String next = Base64.getUrlEncoder().withoutPadding().encodeToString("id:7".getBytes());
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content", Matchers.hasSize(1)))
+            .andExpect(jsonPath("content[0].id").value(7))
+            .andExpect(jsonPath("next").value(next));
+    }
+
+    @Test
+    @DisplayName("Deve retornar bad request quando o cursor for inválido.")
+    public void findBooksInvalidCursorTest() throws Exception {
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(BOOK_API.concat("?after=invalido"))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc
+            .perform(request)
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("errors[0]").value("Invalid cursor"));
+    }
+
+    @Test
+    @DisplayName("Deve importar livros a partir de um arquivo CSV.")
+    public void importBooksTest() throws Exception {
+        // cenario
+        String csv = "title,author,isbn\nAs aventuras,Artur,001\n,Artur,002\n";
+        ImportReportDTO report = ImportReportDTO.builder()
+            .imported(1)
+            .rejected(1)
+            .errors(Arrays.asList(new ImportErrorDTO(3, "002", Collections.singletonList("title: must not be empty"))))
+            .build();
+        BDDMockito.given(bookImportService.importBooks(Mockito.any(InputStream.class), Mockito.eq(DataFormat.CSV),
+            Mockito.eq(StandardCharsets.UTF_8))).willReturn(report);
+
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .post(BOOK_API.concat("/import"))
+            .contentType(DataFormat.CSV_VALUE)
+            .accept(MediaType.APPLICATION_JSON)
+            .content(csv);
+
+        // execucao e verificacao
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("imported").value(1))
+            .andExpect(jsonPath("rejected").value(1))
+            .andExpect(jsonPath("errors[0].line").value(3))
+            .andExpect(jsonPath("errors[0].isbn").value("002"));
+    }
+
+    @Test
+    @DisplayName("Deve recusar a importação de livros em um formato não suportado.")
+    public void importBooksUnsupportedFormatTest() throws Exception {
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .post(BOOK_API.concat("/import"))
+            .contentType(MediaType.APPLICATION_XML)
+            .content("<books/>");
+
+        mockMvc
+            .perform(request)
+            .andExpect(status().isUnsupportedMediaType());
+
+        Mockito.verifyNoInteractions(bookImportService);
+    }
+
+    @Test
+    @DisplayName("Deve exportar todos os livros em CSV.")
+    public void exportBooksTest() throws Exception {
+        // cenario
+        BDDMockito.willAnswer(invocation -> {
+            OutputStream output = invocation.getArgument(0);
+            output.write("id,title,author,isbn\n1,As aventuras,Artur,001\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).given(exportService).exportBooks(Mockito.any(OutputStream.class), Mockito.eq(DataFormat.CSV));
+
+        // execucao e verificacao
+        mockMvc
+            .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=CSV")))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, Matchers.startsWith(DataFormat.CSV_VALUE)))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"books.csv\""))
+            .andExpect(content().string("id,title,author,isbn\n1,As aventuras,Artur,001\n"));
+    }
+
+    @Test
+    @DisplayName("Deve exportar todos os livros em NDJSON compactado com gzip.")
+    public void exportBooksGzipTest() throws Exception {
+        // cenario
+        String line = "{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n";
+        BDDMockito.willAnswer(invocation -> {
+            OutputStream output = invocation.getArgument(0);
+            output.write(line.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).given(exportService).exportBooks(Mockito.any(OutputStream.class), Mockito.eq(DataFormat.NDJSON));
+
+        // execucao
+        byte[] body = mockMvc
+            .perform(MockMvcRequestBuilders.get(BOOK_API.concat("/export?gzip=true")))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        // verificacao
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            Assertions.assertThat(new String(input.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(line);
+        }
+    }
+
     private BookDTO createNewBook() {
         return BookDTO.builder().author("Artur").title("As aventuras").isbn("001").build();
     }
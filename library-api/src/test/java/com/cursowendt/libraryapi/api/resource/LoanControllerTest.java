@@ -1,14 +1,20 @@
 package com.cursowendt.libraryapi.api.resource;
 
+import com.cursowendt.libraryapi.api.dto.LoanBatchDTO;
+import com.cursowendt.libraryapi.api.dto.LoanBatchResultDTO;
 import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.api.dto.LoanFilterDTO;
+import com.cursowendt.libraryapi.api.dto.ReturnLoansDTO;
+import com.cursowendt.libraryapi.api.dto.ReturnReportDTO;
 import com.cursowendt.libraryapi.api.dto.ReturnedLoanDTO;
-import com.cursowendt.libraryapi.api.service.LoanServiceTest;
 import com.cursowendt.libraryapi.exception.BusinessException;
 import com.cursowendt.libraryapi.model.entity.Book;
 import com.cursowendt.libraryapi.model.entity.Loan;
 import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.ExportService;
 import com.cursowendt.libraryapi.service.LoanService;
+import com.cursowendt.libraryapi.service.ReturnStatus;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
@@ -23,6 +29,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -30,11 +37,14 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Optional;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -55,6 +65,9 @@ public class LoanControllerTest {
     @MockBean
     private LoanService loanService;
 
+    @MockBean
+    private ExportService exportService;
+
 
     @Test
     @DisplayName("Deve realizar um emprestimo.")
@@ -133,13 +146,58 @@ public class LoanControllerTest {
             .andExpect(jsonPath("errors[0]").value("Book already loaned"));
     }
 
+    @Test
+    @DisplayName("Deve emprestar vários livros de uma vez informando o resultado de cada isbn")
+    public void createBatchLoanTest() throws Exception {
+        // cenario
+        LoanBatchDTO batch = LoanBatchDTO.builder()
+            .customer("Fulano")
+            .email("fulano@email.com")
+            .isbns(Arrays.asList("123", "456"))
+            .build();
+        BDDMockito.given(loanService.checkout(batch)).willReturn(Arrays.asList(
+            LoanBatchResultDTO.builder().isbn("123").loanId(1L).build(),
+            LoanBatchResultDTO.builder().isbn("456").error("Book already loaned").build()));
+
+        // execucao / verificacao
+        mockMvc.perform(
+            MockMvcRequestBuilders.post(LOAN_API.concat("/batch"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(batch))
+                       )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("[0].isbn").value("123"))
+            .andExpect(jsonPath("[0].loanId").value(1))
+            .andExpect(jsonPath("[1].isbn").value("456"))
+            .andExpect(jsonPath("[1].error").value("Book already loaned"));
+    }
+
+    @Test
+    @DisplayName("Deve recusar o empréstimo em lote sem cliente e sem isbns")
+    public void invalidBatchLoanTest() throws Exception {
+        // cenario
+        String json = new ObjectMapper().writeValueAsString(new LoanBatchDTO());
+
+        // execucao / verificacao
+        mockMvc.perform(
+            MockMvcRequestBuilders.post(LOAN_API.concat("/batch"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                       )
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("errors", Matchers.hasSize(3)));
+
+        Mockito.verify(loanService, Mockito.never()).checkout(Mockito.any(LoanBatchDTO.class));
+    }
+
     @Test
     @DisplayName("Deve retornar um livro")
     public void returnBookTest() throws Exception {
         // cenario ( returned: true )
         final ReturnedLoanDTO returnedLoanDTO = ReturnedLoanDTO.builder().returned(true).build();
-        Loan loan = Loan.builder().id(1L).build();
-        BDDMockito.given(loanService.getById(Mockito.anyLong())).willReturn(Optional.of(loan));
+        BDDMockito.given(loanService.returnLoan(1L)).willReturn(ReturnStatus.RETURNED);
 
         final String json = new ObjectMapper().writeValueAsString(returnedLoanDTO);
 
@@ -150,7 +208,8 @@ public class LoanControllerTest {
                 .content(json)
                        ).andExpect(status().isOk());
 
-        Mockito.verify(loanService, Mockito.times(1)).update(loan);
+        Mockito.verify(loanService, Mockito.times(1)).returnLoan(1L);
+        Mockito.verify(loanService, Mockito.never()).getById(Mockito.anyLong());
     }
 
     @Test
@@ -160,7 +219,7 @@ public class LoanControllerTest {
         final ReturnedLoanDTO returnedLoanDTO = ReturnedLoanDTO.builder().returned(true).build();
         final String json = new ObjectMapper().writeValueAsString(returnedLoanDTO);
 
-        BDDMockito.given(loanService.getById(Mockito.anyLong())).willReturn(Optional.empty());
+        BDDMockito.given(loanService.returnLoan(Mockito.anyLong())).willReturn(ReturnStatus.NOT_FOUND);
 
 
         mockMvc.perform(
@@ -172,21 +231,98 @@ public class LoanControllerTest {
 
     }
 
+    @Test
+    @DisplayName("Deve retornar 409 quando o empréstimo já tiver sido devolvido")
+    public void returnAlreadyReturnedBookTest() throws Exception {
+        // cenario
+        final String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(true).build());
+        BDDMockito.given(loanService.returnLoan(1L)).willReturn(ReturnStatus.ALREADY_RETURNED);
+
+        // execucao / verificacao
+        mockMvc.perform(
+            patch(LOAN_API.concat("/1"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                       )
+            .andExpect(status().isConflict())
+            .andExpect(jsonPath("errors[0]").value("Loan already returned"));
+    }
+
+    @Test
+    @DisplayName("Deve recusar reabrir um empréstimo já devolvido")
+    public void reopenReturnedLoanTest() throws Exception {
+        // cenario
+        final String json = new ObjectMapper().writeValueAsString(ReturnedLoanDTO.builder().returned(false).build());
+        BDDMockito.given(loanService.getById(1L)).willReturn(Optional.of(Loan.builder().id(1L).returned(true).build()));
+
+        // execucao / verificacao
+        mockMvc.perform(
+            patch(LOAN_API.concat("/1"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                       )
+            .andExpect(status().isConflict())
+            .andExpect(jsonPath("errors[0]").value("A returned loan can't be reopened"));
+    }
+
+    @Test
+    @DisplayName("Deve devolver vários empréstimos de uma vez")
+    public void returnBooksTest() throws Exception {
+        // cenario
+        final ReturnReportDTO report = ReturnReportDTO.builder()
+            .returned(Arrays.asList(3L, 1L))
+            .alreadyReturned(Arrays.asList(2L))
+            .notFound(Arrays.asList(4L))
+            .build();
+        BDDMockito.given(loanService.returnLoans(Arrays.asList(3L, 1L, 2L, 4L))).willReturn(report);
+        final String json = new ObjectMapper()
+            .writeValueAsString(ReturnLoansDTO.builder().ids(Arrays.asList(3L, 1L, 2L, 4L)).build());
+
+        // execucao / verificacao
+        mockMvc.perform(
+            post(LOAN_API.concat("/returns"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                       )
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("returned", Matchers.contains(3, 1)))
+            .andExpect(jsonPath("alreadyReturned", Matchers.contains(2)))
+            .andExpect(jsonPath("notFound", Matchers.contains(4)));
+    }
+
+    @Test
+    @DisplayName("Deve recusar a devolução em lote sem ids")
+    public void returnBooksWithoutIdsTest() throws Exception {
+        // cenario
+        final String json = new ObjectMapper().writeValueAsString(ReturnLoansDTO.builder().ids(Arrays.asList()).build());
+
+        // execucao / verificacao
+        mockMvc.perform(
+            post(LOAN_API.concat("/returns"))
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json)
+                       ).andExpect(status().isBadRequest());
+
+        Mockito.verify(loanService, Mockito.never()).returnLoans(Mockito.anyCollection());
+    }
+
     @Test
     @DisplayName("Deve filtrar empréstimos")
     public void findLoansTest() throws Exception {
         // given
         Long id  = 1L;
 
-        Loan loan = LoanServiceTest.createLoan();
-        loan.setId(id);
-        Book book = Book.builder().id(1L).isbn("321").build();
-        loan.setBook(book);
+        LoanDTO loan = createLoanDTO(id);
 
         BDDMockito.given(loanService.find(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
-            .willReturn(new PageImpl<Loan>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
+            .willReturn(new PageImpl<LoanDTO>(Arrays.asList(loan), PageRequest.of(0, 10), 1));
 
-        String queryString = String.format("?isbn=%s&customer=%s&page=0&size=10", book.getIsbn(), loan.getCustomer());
+        String queryString = String.format("?isbn=%s&customer=%s&page=0&size=10",
+            loan.getBook().getIsbn(), loan.getCustomer());
 
         // when
         MockHttpServletRequestBuilder request = MockMvcRequestBuilders
@@ -198,9 +334,97 @@ public class LoanControllerTest {
             .perform(request)
             .andExpect(status().isOk())
             .andExpect(jsonPath("content", Matchers.hasSize(1)))
+            .andExpect(jsonPath("content[0].book.isbn").value("321"))
             .andExpect(jsonPath("totalElements").value(1))
             .andExpect(jsonPath("pageable.pageSize").value(10))
             .andExpect(jsonPath("pageable.pageNumber").value(0));
     }
 
+    @Test
+    @DisplayName("Deve filtrar empréstimos sem contar o total")
+    public void findLoansSliceTest() throws Exception {
+        // given
+        LoanDTO loan = createLoanDTO(1L);
+
+        BDDMockito.given(loanService.findSlice(Mockito.any(LoanFilterDTO.class), Mockito.any(Pageable.class)))
+            .willReturn(new SliceImpl<LoanDTO>(Arrays.asList(loan), PageRequest.of(0, 10), false));
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(LOAN_API.concat("?customer=Fulano&page=0&size=10&count=false"))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content", Matchers.hasSize(1)))
+            .andExpect(jsonPath("hasNext").value(false))
+            .andExpect(jsonPath("totalEstimate").isEmpty());
+
+        Mockito.verify(loanService, Mockito.never()).estimateCount(Mockito.any(LoanFilterDTO.class));
+    }
+
+    @Test
+    @DisplayName("Deve filtrar empréstimos a partir do primeiro cursor")
+    public void findLoansFirstCursorTest() throws Exception {
+        // given
+        LoanDTO loan = createLoanDTO(1L);
+
+        BDDMockito.given(loanService.findAfter(Mockito.any(LoanFilterDTO.class), Mockito.eq(0L), Mockito.eq(20)))
+            .willReturn(new SliceImpl<LoanDTO>(Arrays.asList(loan), PageRequest.of(0, 20), false));
+
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(LOAN_API.concat("?customer=Fulano&after="))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc
+            .perform(request)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content", Matchers.hasSize(1)))
+            .andExpect(jsonPath("next").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Deve recusar páginas por cursor maiores que o limite")
+    public void findLoansCursorTooLargeTest() throws Exception {
+        // when
+        MockHttpServletRequestBuilder request = MockMvcRequestBuilders
+            .get(LOAN_API.concat("?customer=Fulano&after=&size=1000000"))
+            .accept(MediaType.APPLICATION_JSON);
+
+        // then
+        mockMvc
+            .perform(request)
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("errors[0]").value("Page size must not be greater than 100"));
+        Mockito.verify(loanService, Mockito.never())
+            .findAfter(Mockito.any(LoanFilterDTO.class), Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    @Test
+    @DisplayName("Deve exportar todos os empréstimos em NDJSON")
+    public void exportLoansTest() throws Exception {
+        // cenario
+        String line = "{\"id\":1,\"customer\":\"Fulano\"}\n";
+        BDDMockito.willAnswer(invocation -> {
+            OutputStream output = invocation.getArgument(0);
+            output.write(line.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).given(exportService).exportLoans(Mockito.any(OutputStream.class), Mockito.eq(DataFormat.NDJSON));
+
+        // execucao e verificacao
+        mockMvc
+            .perform(MockMvcRequestBuilders.get(LOAN_API.concat("/export")))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(DataFormat.NDJSON_VALUE))
+            .andExpect(content().string(line));
+    }
+
+    private LoanDTO createLoanDTO(final Long id) {
+        return new LoanDTO(id, "Fulano", "fulano@email.com", 1L, "As aventuras", "Artur", "321");
+    }
+
 }
@@ -0,0 +1,172 @@
+package com.cursowendt.libraryapi.api.resource;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import org.hibernate.SessionFactory;
+import org.hamcrest.Matchers;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Counts the statements Hibernate prepares while serving the loan listings, so a lazy association read per row
+ * shows up as a failing count instead of a slow page. The listings read DTO projections, so no entity is loaded
+ * either. The scheduled jobs are slowed down to keep their queries out of the shared statistics.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "application.outbox.poll-interval=3600000",
+    "application.lateloans.poll-interval=3600000",
+    "application.overdue.tick=3600000"
+})
+@AutoConfigureMockMvc
+@Transactional
+public class LoanListingStatementsTest {
+
+    static String LOAN_API = "/api/loans";
+    static String BOOK_API = "/api/books";
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    Statistics statistics;
+
+    Book first;
+
+    @BeforeEach
+    public void setUp() {
+        first = persistBook("statements-001");
+        Book second = persistBook("statements-002");
+        Book third = persistBook("statements-003");
+        persistLoan(first, "Fulano");
+        persistLoan(first, "Fulano");
+        persistLoan(second, "Fulano");
+        persistLoan(third, "Fulano");
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("Deve filtrar empréstimos de livros distintos com uma consulta e uma contagem")
+    public void findLoansInFixedStatementsTest() throws Exception {
+        // execucao
+        mvc.perform(MockMvcRequestBuilders.get(LOAN_API + "?customer=Fulano&isbn=none&page=0&size=3"))
+            // verificacao
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content.length()").value(3))
+            .andExpect(jsonPath("content[*].book.isbn").isNotEmpty())
+            .andExpect(jsonPath("totalElements").value(4));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve listar os empréstimos de um livro verificando o livro, buscando a página e a contagem")
+    public void loansByBookInFixedStatementsTest() throws Exception {
+        // execucao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + first.getId() + "/loans?page=0&size=1"))
+            // verificacao
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("content.length()").value(1))
+            .andExpect(jsonPath("content[0].book.isbn").value("statements-001"))
+            .andExpect(jsonPath("totalElements").value(2))
+            .andExpect(header().exists(HttpHeaders.ETAG));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getCollectionFetchCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve retornar 404 aos empréstimos de um livro inexistente sem requisição condicional")
+    public void loansByMissingBookTest() throws Exception {
+        // execucao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + (first.getId() + 1000) + "/loans"))
+            // verificacao
+            .andExpect(status().isNotFound());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve responder 304 aos empréstimos de um livro com uma única consulta de versão")
+    public void loansByBookNotModifiedTest() throws Exception {
+        // cenario
+        String etag = mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + first.getId() + "/loans"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        statistics.clear();
+
+        // execucao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + first.getId() + "/loans")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            // verificacao
+            .andExpect(status().isNotModified());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve mudar o ETag dos empréstimos de um livro após um novo empréstimo")
+    public void loansByBookETagChangesTest() throws Exception {
+        // cenario
+        String etag = mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + first.getId() + "/loans"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mvc.perform(MockMvcRequestBuilders.post(LOAN_API)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"isbn\": \"statements-001\", \"customer\": \"Ciclano\"}"))
+            .andExpect(status().isCreated());
+
+        // execucao
+        mvc.perform(MockMvcRequestBuilders.get(BOOK_API + "/" + first.getId() + "/loans")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            // verificacao
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, Matchers.not(etag)))
+            .andExpect(jsonPath("totalElements").value(3));
+    }
+
+    private Book persistBook(final String isbn) {
+        Book book = Book.builder().isbn(isbn).title("titulo").author("autor").build();
+        entityManager.persist(book);
+        return book;
+    }
+
+    private void persistLoan(final Book book, final String customer) {
+        entityManager.persist(Loan.builder().book(book).customer(customer).loanDate(LocalDate.now()).build());
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.api.dto.ImportReportDTO;
+import com.cursowendt.libraryapi.exception.BusinessException;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.service.BookImportService;
+import com.cursowendt.libraryapi.service.BookSearchIndex;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.IsbnBloomFilter;
+import com.cursowendt.libraryapi.service.impl.BookImportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import javax.persistence.EntityManager;
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class BookImportServiceTest {
+
+    BookImportService bookImportService;
+
+    BookSearchIndex searchIndex;
+
+    @MockBean
+    BookRepository bookRepository;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @MockBean
+    EntityManager entityManager;
+
+    AtomicLong ids = new AtomicLong();
+
+    @BeforeEach
+    public void setUp() {
+        searchIndex = new BookSearchIndex();
+        searchIndex.markReady();
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(bookRepository.findExistingIsbns(anyCollection())).thenReturn(Collections.emptyList());
+        when(bookRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Book> books = invocation.getArgument(0);
+            books.forEach(book -> book.setId(ids.incrementAndGet()));
+            return books;
+        });
+        bookImportService = createService(2);
+    }
+
+    private BookImportService createService(final int chunkSize) {
+        IsbnBloomFilter isbnFilter = new IsbnBloomFilter(bookRepository, new SimpleMeterRegistry(), 1_000, 0.01);
+        return new BookImportServiceImpl(bookRepository, searchIndex, isbnFilter,
+            Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper(), entityManager,
+            transactionManager, chunkSize, 1_000);
+    }
+
+    @Test
+    @DisplayName("Deve importar livros de um arquivo NDJSON em lotes")
+    public void importNdjsonTest() throws Exception {
+        // cenario
+        String ndjson = "{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"001\"}\n"
+            + "\n"
+            + "{\"title\":\"B\",\"author\":\"Fulano\",\"isbn\":\"002\"}\n"
+            + "{\"title\":\"C\",\"author\":\"Fulano\",\"isbn\":\"003\"}\n";
+
+        // execucao
+        ImportReportDTO report = bookImportService.importBooks(stream(ndjson), DataFormat.NDJSON, StandardCharsets.UTF_8);
+
+        // verificacao
+        assertThat(report.getImported()).isEqualTo(3);
+        assertThat(report.getRejected()).isZero();
+        verify(bookRepository, times(2)).saveAll(anyList());
+        verify(entityManager, times(2)).clear();
+        assertThat(searchIndex.count(null, null, "00")).contains(3L);
+    }
+
+    @Test
+    @DisplayName("Deve relatar as linhas inválidas, duplicadas e já cadastradas de um arquivo CSV")
+    public void importCsvWithErrorsTest() throws Exception {
+        // cenario
+        String csv = "isbn,title,author\n"
+            + "001,\"Aventuras, volume 1\",Fulano\n"
+            + "002,,Fulano\n"
+            + "001,Repetido,Fulano\n"
+            + "\"003,Aberto,Fulano\n"
+            + "004,Existente,Fulano\n";
+        when(bookRepository.findExistingIsbns(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> isbns = invocation.getArgument(0);
+            return isbns.stream().filter("004"::equals).collect(Collectors.toList());
+        });
+
+        // execucao
+        ImportReportDTO report = createService(10).importBooks(stream(csv), DataFormat.CSV, StandardCharsets.UTF_8);
+
+        // verificacao
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getRejected()).isEqualTo(4);
+        assertThat(report.getErrors())
+            .extracting(error -> error.getLine() + " " + error.getIsbn())
+            .containsExactly("3 002", "5 null", "4 001", "6 004");
+        assertThat(report.getErrors().get(0).getErrors()).allMatch(message -> message.startsWith("title: "));
+        assertThat(report.getErrors().get(3).getErrors()).containsExactly("Isbn já cadastrado.");
+        assertThat(searchIndex.search("aventuras, volume", null, null,
+            Pageable.unpaged()).get().getTotal()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve importar linha a linha quando o lote violar a constraint de isbn único")
+    public void importConflictingChunkTest() throws Exception {
+        // cenario
+        String ndjson = "{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"001\"}\n"
+            + "{\"title\":\"B\",\"author\":\"Fulano\",\"isbn\":\"002\"}\n";
+        when(bookRepository.saveAll(anyList())).thenThrow(isbnConflict());
+        when(bookRepository.saveAndFlush(any(Book.class))).thenAnswer(invocation -> {
+            Book book = invocation.getArgument(0);
+            if (book.getIsbn().equals("001")) {
+                throw isbnConflict();
+            }
+            book.setId(ids.incrementAndGet());
+            return book;
+        });
+
+        // execucao
+        ImportReportDTO report = bookImportService.importBooks(stream(ndjson), DataFormat.NDJSON, StandardCharsets.UTF_8);
+
+        // verificacao
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getRejected()).isEqualTo(1);
+        assertThat(report.getErrors().get(0).getIsbn()).isEqualTo("001");
+        assertThat(report.getErrors().get(0).getErrors()).containsExactly("Isbn já cadastrado.");
+    }
+
+    @Test
+    @DisplayName("Deve relatar a causa real quando uma linha violar outra constraint que não a de isbn")
+    public void importOtherViolationTest() throws Exception {
+        // cenario
+        String ndjson = "{\"title\":\"A\",\"author\":\"Fulano\",\"isbn\":\"001\"}\n"
+            + "{\"title\":\"B\",\"author\":\"Fulano\",\"isbn\":\"002\"}\n";
+        DataIntegrityViolationException tooLong = new DataIntegrityViolationException("could not execute statement",
+            new SQLException("Value too long for column \"TITLE VARCHAR(255)\"; SQL statement:\ninsert into book"));
+        when(bookRepository.saveAll(anyList())).thenThrow(tooLong);
+        when(bookRepository.saveAndFlush(any(Book.class))).thenAnswer(invocation -> {
+            Book book = invocation.getArgument(0);
+            if (book.getIsbn().equals("001")) {
+                throw tooLong;
+            }
+            book.setId(ids.incrementAndGet());
+            return book;
+        });
+
+        // execucao
+        ImportReportDTO report = bookImportService.importBooks(stream(ndjson), DataFormat.NDJSON, StandardCharsets.UTF_8);
+
+        // verificacao
+        assertThat(report.getImported()).isEqualTo(1);
+        assertThat(report.getErrors().get(0).getIsbn()).isEqualTo("001");
+        assertThat(report.getErrors().get(0).getErrors())
+            .containsExactly("Value too long for column \"TITLE VARCHAR(255)\"");
+    }
+
+    @Test
+    @DisplayName("Deve recusar um arquivo CSV sem as colunas obrigatórias")
+    public void importCsvWithoutHeaderTest() {
+        // execucao
+        Throwable exception = catchThrowable(() ->
+            bookImportService.importBooks(stream("001,A,Fulano\n"), DataFormat.CSV, StandardCharsets.UTF_8));
+
+        // verificacao
+        assertThat(exception).isInstanceOf(BusinessException.class);
+        Mockito.verifyNoInteractions(transactionManager);
+    }
+
+    private DataIntegrityViolationException isbnConflict() {
+        return new DataIntegrityViolationException("could not execute statement",
+            new ConstraintViolationException("duplicate", new SQLException(), "PUBLIC.UK_BOOK_ISBN_INDEX_1"));
+    }
+
+    private InputStream stream(final String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
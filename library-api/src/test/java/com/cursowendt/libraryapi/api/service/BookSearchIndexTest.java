@@ -0,0 +1,135 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.service.BookSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BookSearchIndexTest {
+
+    BookSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new BookSearchIndex();
+        index.put(book(1L, "As Aventuras de Tom Sawyer", "Mark Twain", "111"));
+        index.put(book(2L, "Aventuras", "Fulano", "222"));
+        index.put(book(3L, "O Hobbit", "Tolkien", "333"));
+        index.markReady();
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros cujo título contém o termo, ignorando maiúsculas")
+    public void searchByTitleTest() {
+        // execucao
+        Optional<BookSearchIndex.SearchResult> result = index.search("AVENTURA", null, null, PageRequest.of(0, 10));
+
+        // verificacao
+        assertThat(result).isPresent();
+        assertThat(result.get().getIds()).containsExactly(1L, 2L);
+        assertThat(result.get().getTotal()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve combinar os filtros e aceitar termos menores que um trigrama")
+    public void searchByTitleAndShortAuthorTest() {
+        // execucao
+        Optional<BookSearchIndex.SearchResult> result = index.search("ventura", "fu", null, PageRequest.of(0, 10));
+
+        // verificacao
+        assertThat(result.get().getIds()).containsExactly(2L);
+    }
+
+    @Test
+    @DisplayName("Deve ordenar por relevância e paginar")
+    public void searchByRelevanceTest() {
+        // execucao
+        Optional<BookSearchIndex.SearchResult> result =
+            index.search("aventuras", null, null, PageRequest.of(0, 1, Sort.by(BookSearchIndex.RELEVANCE)));
+
+        // verificacao
+        assertThat(result.get().getIds()).containsExactly(2L);
+        assertThat(result.get().getTotal()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve refletir atualizações e remoções")
+    public void updateAndRemoveTest() {
+        // execucao
+        index.put(book(3L, "O Hobbit: Aventura Inesperada", "Tolkien", "333"));
+        index.remove(1L);
+
+        // verificacao
+        assertThat(index.search("aventura", null, null, PageRequest.of(0, 10)).get().getIds())
+            .containsExactly(2L, 3L);
+        assertThat(index.search("hobbit", "twain", null, PageRequest.of(0, 10)).get().getIds()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Não deve responder antes de estar pronto ou com ordenação não suportada")
+    public void notReadyOrUnsupportedSortTest() {
+        // cenario
+        BookSearchIndex empty = new BookSearchIndex();
+
+        // verificacao
+        assertThat(empty.search("aventura", null, null, PageRequest.of(0, 10))).isEmpty();
+        assertThat(index.search("aventura", null, null, PageRequest.of(0, 10, Sort.by("loans")))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve paginar pelo topo da ordenação com o mesmo resultado de ordenar tudo")
+    public void pageTest() {
+        // cenario
+        for (long id = 10; id < 60; id++) {
+            index.put(book(id, "Livro " + (id * 7 % 50), "Autor", String.valueOf(id)));
+        }
+        Sort byTitle = Sort.by(Sort.Order.desc("title"));
+        List<Long> all = index.search("livro", null, null, PageRequest.of(0, 100, byTitle)).get().getIds();
+
+        // execucao
+        BookSearchIndex.SearchResult third = index.search("livro", null, null, PageRequest.of(2, 7, byTitle)).get();
+        BookSearchIndex.SearchResult beyond = index.search("livro", null, null, PageRequest.of(10, 7, byTitle)).get();
+
+        // verificacao
+        assertThat(all).hasSize(50);
+        assertThat(third.getIds()).containsExactlyElementsOf(all.subList(14, 21));
+        assertThat(third.getTotal()).isEqualTo(50);
+        assertThat(beyond.getIds()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Deve comparar versões com o banco e descartar livros removidos")
+    public void syncTest() {
+        // cenario
+        Map<Long, Long> versions = new HashMap<>();
+        versions.put(1L, 0L);
+        versions.put(2L, 1L);
+        versions.put(4L, 0L);
+
+        // execucao
+        List<Long> stale = index.staleIds(versions);
+        boolean inSyncBefore = index.isInSync(3, 3, 0);
+        index.retainAll(versions.keySet(), 3);
+
+        // verificacao
+        assertThat(stale).containsExactlyInAnyOrder(2L, 4L);
+        assertThat(inSyncBefore).isTrue();
+        assertThat(index.isInSync(2, 2, 0)).isTrue();
+        assertThat(index.search("hobbit", null, null, PageRequest.of(0, 10)).get().getIds()).isEmpty();
+    }
+
+    private Book book(final Long id, final String title, final String author, final String isbn) {
+        return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+    }
+
+}
@@ -1,24 +1,38 @@
 package com.cursowendt.libraryapi.api.service;
 
+import com.cursowendt.libraryapi.api.dto.BookDTO;
+import com.cursowendt.libraryapi.api.dto.LookupDTO;
 import com.cursowendt.libraryapi.exception.BusinessException;
 import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.projection.BookVersion;
+import com.cursowendt.libraryapi.model.projection.CatalogVersion;
 import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.service.BookSearchIndex;
 import com.cursowendt.libraryapi.service.BookService;
+import com.cursowendt.libraryapi.service.CountEstimator;
+import com.cursowendt.libraryapi.service.IsbnBloomFilter;
 import com.cursowendt.libraryapi.service.impl.BookServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.Example;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -41,7 +55,11 @@ public class BookServiceTest {
 
     @BeforeEach
     public void setUp() {
-        this.bookService = new BookServiceImpl(bookRepository);
+        this.bookService = new BookServiceImpl(bookRepository, new BookSearchIndex(), createIsbnFilter());
+    }
+
+    private IsbnBloomFilter createIsbnFilter() {
+        return new IsbnBloomFilter(bookRepository, new SimpleMeterRegistry(), 1_000, 0.01);
     }
 
     @Test
@@ -51,7 +69,7 @@ public class BookServiceTest {
         Book book = createValidBook();
         Mockito.when(bookRepository.existsByIsbn(Mockito.anyString())).thenReturn(false);
 
-        Mockito.when(bookRepository.save(book))
+        Mockito.when(bookRepository.saveAndFlush(book))
             .thenReturn(Book.builder()
                 .id(1L).isbn("123")
                 .author("Fulando")
@@ -87,7 +105,65 @@ public class BookServiceTest {
             .isInstanceOf(BusinessException.class)
             .hasMessage("Isbn já cadastrado.");
 
-        verify(bookRepository, Mockito.never()).save(book);
+        verify(bookRepository, Mockito.never()).saveAndFlush(book);
+    }
+
+    @Test
+    @DisplayName("Deve lançar erro de negócio quando a constraint de isbn único é violada")
+    void shouldTranslateUniqueIsbnViolation() {
+        // cenario
+        Book book = createValidBook();
+        Mockito.when(bookRepository.existsByIsbn(Mockito.anyString())).thenReturn(false);
+        Mockito.when(bookRepository.saveAndFlush(book)).thenThrow(new DataIntegrityViolationException("duplicate",
+            new ConstraintViolationException("duplicate", new SQLException(), "PUBLIC.UK_BOOK_ISBN_INDEX_1")));
+
+        // execucao
+        Throwable exception = Assertions.catchThrowable(() -> bookService.save(book));
+
+        // verificacao
+        assertThat(exception)
+            .isInstanceOf(BusinessException.class)
+            .hasMessage("Isbn já cadastrado.");
+    }
+
+    @Test
+    @DisplayName("Deve salvar um livro sem consultar o isbn quando o filtro garante que ele é novo")
+    public void saveBookSkippingIsbnQueryTest() {
+        // cenario
+        IsbnBloomFilter isbnFilter = createIsbnFilter();
+        Mockito.when(bookRepository.findByFilterAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(),
+            Mockito.anyLong(), Mockito.any(PageRequest.class)))
+            .thenReturn(new SliceImpl<>(Arrays.asList(Book.builder().id(1L).isbn("001").build())));
+        isbnFilter.load();
+        bookService = new BookServiceImpl(bookRepository, new BookSearchIndex(), isbnFilter);
+
+        Book book = createValidBook();
+        Mockito.when(bookRepository.saveAndFlush(book)).thenReturn(Book.builder().id(2L).isbn("123").build());
+
+        // execucao
+        bookService.save(book);
+
+        // verificacao
+        verify(bookRepository, Mockito.never()).existsByIsbn(Mockito.anyString());
+        assertThat(isbnFilter.mightContain("123")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Não deve contar falso positivo enquanto o filtro de isbn não estiver carregado")
+    public void saveBookWithColdFilterTest() {
+        // cenario
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        bookService = new BookServiceImpl(bookRepository, new BookSearchIndex(),
+            new IsbnBloomFilter(bookRepository, registry, 1_000, 0.01));
+        Book book = createValidBook();
+        Mockito.when(bookRepository.saveAndFlush(book)).thenReturn(Book.builder().id(1L).isbn("123").build());
+
+        // execucao
+        bookService.save(book);
+
+        // verificacao
+        verify(bookRepository).existsByIsbn("123");
+        assertThat(registry.get("library.isbn.filter.false.positives").counter().count()).isZero();
     }
 
     @Test
@@ -196,13 +272,13 @@ public class BookServiceTest {
         Book book = createValidBook();
 
         final PageRequest pageRequest = PageRequest.of(0, 10);
-        List<Book> lista = Arrays.asList(book);
-        Page<Book> page = new PageImpl<>(lista, pageRequest, 1);
-        Mockito.when(bookRepository.findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class)))
+        List<BookDTO> lista = Arrays.asList(new BookDTO(1L, book.getTitle(), book.getAuthor(), book.getIsbn()));
+        Page<BookDTO> page = new PageImpl<>(lista, pageRequest, 1);
+        Mockito.when(bookRepository.findDtoByFilter(book.getTitle(), book.getAuthor(), book.getIsbn(), pageRequest))
             .thenReturn(page);
 
         // execucao
-        Page<Book> result = bookService.find(book, pageRequest);
+        Page<BookDTO> result = bookService.find(book, pageRequest);
 
         // verificacao
         assertThat(result.getTotalElements()).isEqualTo(1);
@@ -211,6 +287,129 @@ public class BookServiceTest {
         assertThat(result.getPageable().getPageSize()).isEqualTo(10);
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros pelo índice e buscar somente a página pelo id")
+    public void findBookWithSearchIndexTest() {
+        // cenario
+        BookSearchIndex searchIndex = new BookSearchIndex();
+        bookService = new BookServiceImpl(bookRepository, searchIndex, createIsbnFilter());
+        Book first = Book.builder().id(1L).isbn("123").author("Fulano").title("As aventuras").build();
+        Book second = Book.builder().id(2L).isbn("456").author("Fulano").title("Novas aventuras").build();
+        searchIndex.put(first);
+        searchIndex.put(second);
+        searchIndex.markReady();
+
+        BookDTO secondDTO = new BookDTO(2L, second.getTitle(), second.getAuthor(), second.getIsbn());
+        Mockito.when(bookRepository.findDtosByIds(Arrays.asList(2L))).thenReturn(Arrays.asList(secondDTO));
+
+        // execucao
+        Page<BookDTO> result = bookService.find(Book.builder().title("aventuras").build(), PageRequest.of(1, 1));
+
+        // verificacao
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        assertThat(result.getContent()).containsExactly(secondDTO);
+        verify(bookRepository, Mockito.never()).findDtoByFilter(
+            Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(PageRequest.class));
+    }
+
+    @Test
+    @DisplayName("Deve obter vários livros pelos ids com uma consulta e devolvê-los na ordem pedida")
+    public void getDetailsByIdsTest() {
+        // cenario
+        List<Long> ids = Arrays.asList(3L, 1L, 2L, 3L);
+        BookDTO first = new BookDTO(1L, "titulo", "autor", "111");
+        BookDTO third = new BookDTO(3L, "titulo", "autor", "333");
+        Mockito.when(bookRepository.findDtosByIds(ids)).thenReturn(Arrays.asList(first, third));
+
+        // execucao
+        LookupDTO<Long, BookDTO> result = bookService.getDetailsByIds(ids);
+
+        // verificacao
+        assertThat(result.getContent()).containsExactly(third, first);
+        assertThat(result.getMissing()).containsExactly(2L);
+        verify(bookRepository, Mockito.times(1)).findDtosByIds(ids);
+        verify(bookRepository, Mockito.never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve obter vários livros pelos isbns informando os isbns inexistentes")
+    public void getDetailsByIsbnsTest() {
+        // cenario
+        List<String> isbns = Arrays.asList("999", "111");
+        BookDTO book = new BookDTO(1L, "titulo", "autor", "111");
+        Mockito.when(bookRepository.findDtosByIsbns(isbns)).thenReturn(Arrays.asList(book));
+
+        // execucao
+        LookupDTO<String, BookDTO> result = bookService.getDetailsByIsbns(isbns);
+
+        // verificacao
+        assertThat(result.getContent()).containsExactly(book);
+        assertThat(result.getMissing()).containsExactly("999");
+    }
+
+    @Test
+    @DisplayName("Deve atualizar o índice de busca com escritas feitas por outras instâncias")
+    public void refreshSearchIndexTest() {
+        // cenario
+        BookSearchIndex searchIndex = new BookSearchIndex();
+        BookServiceImpl service = new BookServiceImpl(bookRepository, searchIndex, createIsbnFilter());
+        ReflectionTestUtils.setField(service, "searchIndexEnabled", true);
+        Book kept = Book.builder().id(1L).title("O Hobbit").author("Tolkien").isbn("111").build();
+        Book deleted = Book.builder().id(2L).title("Aventuras").author("Fulano").isbn("222").build();
+        searchIndex.put(kept);
+        searchIndex.put(deleted);
+        searchIndex.markReady();
+
+        Book updated = Book.builder().id(1L).title("O Hobbit: Aventura").author("Tolkien").isbn("111").version(1).build();
+        Book created = Book.builder().id(3L).title("Novas Aventuras").author("Ciclano").isbn("333").build();
+        Mockito.when(bookRepository.findCatalogVersion()).thenReturn(catalog(2L, 3L, 1L));
+        Mockito.when(bookRepository.findVersionsAfter(Mockito.eq(0L), Mockito.any(Pageable.class)))
+            .thenReturn(Arrays.asList(version(1L, 1L), version(3L, 0L)));
+        Mockito.when(bookRepository.findAllById(Mockito.any())).thenReturn(Arrays.asList(updated, created));
+
+        // execucao
+        service.refreshSearchIndex();
+
+        // verificacao
+        assertThat(searchIndex.search("aventura", null, null, PageRequest.of(0, 10)).get().getIds())
+            .containsExactly(1L, 3L);
+        assertThat(searchIndex.isInSync(2, 3, 1)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Não deve percorrer o catálogo quando o índice estiver em dia")
+    public void refreshSearchIndexInSyncTest() {
+        // cenario
+        BookSearchIndex searchIndex = new BookSearchIndex();
+        BookServiceImpl service = new BookServiceImpl(bookRepository, searchIndex, createIsbnFilter());
+        ReflectionTestUtils.setField(service, "searchIndexEnabled", true);
+        searchIndex.put(Book.builder().id(1L).title("O Hobbit").author("Tolkien").isbn("111").build());
+        searchIndex.markReady();
+        Mockito.when(bookRepository.findCatalogVersion()).thenReturn(catalog(1L, 1L, 0L));
+
+        // execucao
+        service.refreshSearchIndex();
+
+        // verificacao
+        verify(bookRepository, Mockito.never()).findVersionsAfter(Mockito.anyLong(), Mockito.any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("Deve contar pelo mesmo filtro da listagem quando o índice de busca estiver desligado")
+    public void estimateCountWithoutIndexTest() {
+        // cenario
+        ReflectionTestUtils.setField(bookService, "countEstimator",
+            new CountEstimator(Duration.ofMinutes(1), new SimpleMeterRegistry()));
+        Mockito.when(bookRepository.countByFilter("aventuras", null, null)).thenReturn(3L);
+
+        // execucao
+        long count = bookService.estimateCount(Book.builder().title("aventuras").available(false).version(2).build());
+
+        // verificacao
+        assertThat(count).isEqualTo(3);
+        verify(bookRepository).countByFilter("aventuras", null, null);
+    }
+
     @Test
     @DisplayName("Deve obter um livro pelo isbn")
     public void getBookByIsbnTest() {
@@ -229,4 +428,37 @@ public class BookServiceTest {
         Mockito.verify(bookRepository, times(1)).findByIsbn(isbn);
     }
 
+    private static CatalogVersion catalog(final Long books, final Long maxId, final Long versions) {
+        return new CatalogVersion() {
+            @Override
+            public Long getBooks() {
+                return books;
+            }
+
+            @Override
+            public Long getMaxId() {
+                return maxId;
+            }
+
+            @Override
+            public Long getVersions() {
+                return versions;
+            }
+        };
+    }
+
+    private static BookVersion version(final Long id, final Long version) {
+        return new BookVersion() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getVersion() {
+                return version;
+            }
+        };
+    }
+
 }
@@ -0,0 +1,52 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.service.CountEstimator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CountEstimatorTest {
+
+    @Test
+    @DisplayName("Deve reutilizar a contagem enquanto ela não expirar")
+    public void cachedCountTest() {
+        // cenario
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CountEstimator estimator = new CountEstimator(Duration.ofMinutes(1), Clock.systemUTC(), meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        // execucao
+        long first = estimator.estimate("book", () -> 10 + calls.incrementAndGet());
+        long second = estimator.estimate("book", () -> 10 + calls.incrementAndGet());
+
+        // verificacao
+        assertThat(first).isEqualTo(11);
+        assertThat(second).isEqualTo(11);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("library.count.estimates").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("library.count.estimates").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve contar novamente após a expiração")
+    public void expiredCountTest() {
+        // cenario
+        CountEstimator estimator = new CountEstimator(Duration.ZERO, Clock.systemUTC(), new SimpleMeterRegistry());
+        AtomicInteger calls = new AtomicInteger();
+
+        // execucao
+        estimator.estimate("book", calls::incrementAndGet);
+        long count = estimator.estimate("book", calls::incrementAndGet);
+
+        // verificacao
+        assertThat(count).isEqualTo(2);
+    }
+
+}
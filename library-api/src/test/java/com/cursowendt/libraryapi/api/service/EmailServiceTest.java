@@ -0,0 +1,163 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.service.impl.EmailServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class EmailServiceTest {
+
+    EmailServiceImpl emailService;
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (emailService != null) {
+            emailService.shutdown();
+        }
+    }
+
+    private EmailServiceImpl start(final JavaMailSender sender, final int capacity, final int workers, final int batchSize) {
+        emailService = new EmailServiceImpl(sender, meterRegistry, "mail@library-api.com",
+            capacity, workers, batchSize, Duration.ofMillis(50));
+        emailService.start();
+        return emailService;
+    }
+
+    @Test
+    @DisplayName("Deve enviar uma mensagem por destinatário reutilizando a conexão SMTP em lotes")
+    public void sendMailsInBatchesTest() throws Exception {
+        try (SmtpStub smtp = new SmtpStub()) {
+            // cenario
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost("localhost");
+            sender.setPort(smtp.getPort());
+            List<String> mails = Arrays.asList("a@email.com", "b@email.com", "c@email.com", "d@email.com");
+
+            // execucao
+            start(sender, 10, 1, 10).sendMails("Atenção!", mails).get(10, TimeUnit.SECONDS);
+
+            // verificacao
+            assertThat(smtp.getMessages()).hasSize(4).allMatch(recipients -> recipients.size() == 1);
+            assertThat(smtp.getMessages()).flatExtracting(recipients -> recipients)
+                .containsExactlyInAnyOrderElementsOf(mails);
+            assertThat(smtp.getConnections()).isLessThan(4);
+            assertThat(meterRegistry.counter("library.mail.sent").count()).isEqualTo(4);
+            assertThat(meterRegistry.timer("library.mail.delivery").count()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve recusar mensagens quando a fila permanecer cheia")
+    public void rejectWhenQueueIsFullTest() throws Exception {
+        // cenario
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        Mockito.doAnswer(invocation -> {
+            sending.countDown();
+            release.await();
+            return null;
+        }).when(sender).send(Mockito.<SimpleMailMessage[]>any());
+        start(sender, 1, 1, 1);
+
+        // execucao
+        CompletableFuture<Void> first = emailService.sendMail("a@email.com", "assunto", "texto");
+        sending.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> queued = emailService.sendMail("b@email.com", "assunto", "texto");
+        CompletableFuture<Void> refused = emailService.sendMail("c@email.com", "assunto", "texto");
+        release.countDown();
+
+        // verificacao
+        first.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        Throwable exception = catchThrowable(() -> refused.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.counter("library.mail.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve recusar imediatamente quando a fila estiver cheia sem esperar espaço")
+    public void offerRejectsAtOnceWhenQueueIsFullTest() {
+        // cenario
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        emailService = new EmailServiceImpl(sender, meterRegistry, "mail@library-api.com",
+            1, 1, 1, Duration.ofSeconds(30));
+        emailService.offerMail("a@email.com", "assunto", "texto");
+
+        // execucao
+        CompletableFuture<Void> refused = emailService.offerMail("b@email.com", "assunto", "texto");
+
+        // verificacao
+        assertThat(refused).isCompletedExceptionally();
+        assertThat(catchThrowable(refused::join)).hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.counter("library.mail.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve completar com erro apenas as mensagens que falharam")
+    public void failOnlyFailedMessagesTest() throws Exception {
+        // cenario
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        Mockito.doAnswer(invocation -> {
+            Object[] messages = invocation.getArguments();
+            throw new org.springframework.mail.MailSendException(
+                Collections.singletonMap(messages[0], new IllegalStateException("mailbox unavailable")));
+        }).when(sender).send(Mockito.<SimpleMailMessage[]>any());
+        start(sender, 10, 1, 10);
+
+        // execucao
+        CompletableFuture<Void> result = emailService.sendMails("Atenção!", Collections.singletonList("a@email.com"));
+
+        // verificacao
+        Throwable exception = catchThrowable(() -> result.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasRootCauseMessage("mailbox unavailable");
+        assertThat(meterRegistry.counter("library.mail.failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve falhar apenas a mensagem que falhou quando o lote tiver mensagens iguais")
+    public void failOnlyFailedEqualMessageTest() throws Exception {
+        // cenario
+        JavaMailSender sender = Mockito.mock(JavaMailSender.class);
+        Mockito.doAnswer(invocation -> {
+            Object[] messages = invocation.getArguments();
+            throw new org.springframework.mail.MailSendException(
+                Collections.singletonMap(messages[1], new IllegalStateException("mailbox unavailable")));
+        }).when(sender).send(Mockito.<SimpleMailMessage[]>any());
+        emailService = new EmailServiceImpl(sender, meterRegistry, "mail@library-api.com",
+            10, 1, 10, Duration.ofMillis(50));
+        CompletableFuture<Void> first = emailService.sendMail("a@email.com", "assunto", "texto");
+        CompletableFuture<Void> second = emailService.sendMail("a@email.com", "assunto", "texto");
+
+        // execucao
+        emailService.start();
+
+        // verificacao
+        first.get(5, TimeUnit.SECONDS);
+        Throwable exception = catchThrowable(() -> second.get(5, TimeUnit.SECONDS));
+        assertThat(exception).hasRootCauseMessage("mailbox unavailable");
+        assertThat(meterRegistry.counter("library.mail.sent").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("library.mail.failed").count()).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.api.mapper.BookMapper;
+import com.cursowendt.libraryapi.api.mapper.LoanMapper;
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import com.cursowendt.libraryapi.service.DataFormat;
+import com.cursowendt.libraryapi.service.ExportService;
+import com.cursowendt.libraryapi.service.impl.ExportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ExportServiceTest {
+
+    ExportService exportService;
+
+    @MockBean
+    BookRepository bookRepository;
+
+    @MockBean
+    LoanRepository loanRepository;
+
+    @MockBean
+    EntityManager entityManager;
+
+    @BeforeEach
+    public void setUp() {
+        BookMapper bookMapper = new BookMapper();
+        this.exportService = new ExportServiceImpl(bookRepository, loanRepository, bookMapper,
+            new LoanMapper(bookMapper), entityManager, new ObjectMapper(), 2);
+    }
+
+    @Test
+    @DisplayName("Deve exportar os livros em NDJSON limpando o contexto de persistência em lotes")
+    public void exportBooksNdjsonTest() throws Exception {
+        // cenario
+        AtomicBoolean closed = new AtomicBoolean();
+        when(bookRepository.streamAll()).thenReturn(Stream.of(book(1L), book(2L), book(3L))
+            .onClose(() -> closed.set(true)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // execucao
+        exportService.exportBooks(output, DataFormat.NDJSON);
+
+        // verificacao
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+            "{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Fulano\",\"isbn\":\"001\"}\n"
+                + "{\"id\":2,\"title\":\"As aventuras\",\"author\":\"Fulano\",\"isbn\":\"002\"}\n"
+                + "{\"id\":3,\"title\":\"As aventuras\",\"author\":\"Fulano\",\"isbn\":\"003\"}\n");
+        verify(entityManager, times(1)).clear();
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve exportar os empréstimos em CSV")
+    public void exportLoansCsvTest() throws Exception {
+        // cenario
+        Book book = book(1L);
+        book.setTitle("Aventuras, volume \"1\"");
+        Loan loan = Loan.builder().id(7L).customer("Fulano").customerEmail("fulano@email.com").book(book).build();
+        when(loanRepository.streamAll()).thenReturn(Stream.of(loan));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // execucao
+        exportService.exportLoans(output, DataFormat.CSV);
+
+        // verificacao
+        assertThat(output.toString(StandardCharsets.UTF_8)).isEqualTo(
+            "id,customer,email,bookId,isbn,title,author\n"
+                + "7,Fulano,fulano@email.com,1,001,\"Aventuras, volume \"\"1\"\"\",Fulano\n");
+    }
+
+    private Book book(final Long id) {
+        return Book.builder().id(id).title("As aventuras").author("Fulano").isbn(String.format("%03d", id)).build();
+    }
+
+}
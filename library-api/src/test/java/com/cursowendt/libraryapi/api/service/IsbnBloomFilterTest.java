@@ -0,0 +1,67 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.service.IsbnBloomFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IsbnBloomFilterTest {
+
+    @Test
+    @DisplayName("Deve responder positivo até estar carregado")
+    public void notReadyTest() {
+        // cenario
+        IsbnBloomFilter filter = new IsbnBloomFilter(Mockito.mock(BookRepository.class), new SimpleMeterRegistry(), 100, 0.01);
+
+        // verificacao
+        assertThat(filter.isReady()).isFalse();
+        assertThat(filter.mightContain("123")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Deve conter todos os isbns carregados e recusar a maioria dos desconhecidos")
+    public void loadedIsbnsTest() {
+        // cenario
+        List<Book> books = new ArrayList<>();
+        for (long i = 1; i <= 1_000; i++) {
+            books.add(Book.builder().id(i).isbn("isbn-" + i).build());
+        }
+        BookRepository bookRepository = Mockito.mock(BookRepository.class);
+        Mockito.when(bookRepository.count()).thenReturn((long) books.size());
+        Mockito.when(bookRepository.findByFilterAfter(Mockito.isNull(), Mockito.isNull(), Mockito.isNull(),
+            Mockito.anyLong(), Mockito.any(PageRequest.class)))
+            .thenReturn(new SliceImpl<>(books), new SliceImpl<>(Collections.emptyList()));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IsbnBloomFilter filter = new IsbnBloomFilter(bookRepository, registry, 100, 0.01);
+
+        // execucao
+        filter.load();
+        filter.put("novo");
+        long falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("unknown-" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // verificacao
+        assertThat(filter.isReady()).isTrue();
+        assertThat(books).allMatch(book -> filter.mightContain(book.getIsbn()));
+        assertThat(filter.mightContain("novo")).isTrue();
+        assertThat(falsePositives).isLessThan(300);
+        assertThat(registry.get("library.isbn.filter.lookups").tag("result", "negative").counter().count())
+            .isEqualTo(10_000 - falsePositives);
+    }
+
+}
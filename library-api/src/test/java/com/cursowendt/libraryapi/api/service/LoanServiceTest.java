@@ -1,20 +1,31 @@
 package com.cursowendt.libraryapi.api.service;
 
+import com.cursowendt.libraryapi.api.dto.LoanBatchDTO;
+import com.cursowendt.libraryapi.api.dto.LoanBatchResultDTO;
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.api.dto.LoanFilterDTO;
+import com.cursowendt.libraryapi.api.dto.ReturnReportDTO;
 import com.cursowendt.libraryapi.exception.BusinessException;
 import com.cursowendt.libraryapi.model.entity.Book;
 import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.LoanableBook;
+import com.cursowendt.libraryapi.model.projection.ReturnableLoan;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
 import com.cursowendt.libraryapi.model.repository.LoanRepository;
 import com.cursowendt.libraryapi.service.LoanService;
+import com.cursowendt.libraryapi.service.OverdueLoanTracker;
+import com.cursowendt.libraryapi.service.ReturnStatus;
 import com.cursowendt.libraryapi.service.impl.LoanServiceImpl;
 import net.bytebuddy.asm.Advice;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -23,8 +34,11 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.TreeSet;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -41,9 +55,15 @@ public class LoanServiceTest {
     @MockBean
     private LoanRepository loanRepositoty;
 
+    @MockBean
+    private BookRepository bookRepository;
+
+    @MockBean
+    private OverdueLoanTracker overdueTracker;
+
     @BeforeEach
     public void setUp() {
-        this.loanService = new LoanServiceImpl(loanRepositoty);
+        this.loanService = new LoanServiceImpl(loanRepositoty, bookRepository, overdueTracker);
     }
 
     @Test
@@ -66,7 +86,7 @@ public class LoanServiceTest {
             .loanDate(LocalDate.now())
             .build();
 
-        when(loanRepositoty.existsByBookAndNotReturned(book)).thenReturn(false);
+        when(bookRepository.markLoaned(book.getId())).thenReturn(1);
         when(loanRepositoty.save(savingLoan)).thenReturn(savedLoan);
 
         // execucao
@@ -77,6 +97,7 @@ public class LoanServiceTest {
         assertThat(loan.getBook().getId()).isEqualTo(savedLoan.getBook().getId());
         assertThat(loan.getCustomer()).isEqualTo(savedLoan.getCustomer());
         assertThat(loan.getLoanDate()).isEqualTo(savedLoan.getLoanDate());
+        verify(overdueTracker).track(savedLoan);
     }
 
     @Test
@@ -92,7 +113,7 @@ public class LoanServiceTest {
             .loanDate(LocalDate.now())
             .build();
 
-        when(loanRepositoty.existsByBookAndNotReturned(book)).thenReturn(true);
+        when(bookRepository.markLoaned(book.getId())).thenReturn(0);
 
         // execucao
         Throwable exception = catchThrowable(() -> loanService.save(savingLoan));
@@ -130,22 +151,151 @@ public class LoanServiceTest {
     }
 
     @Test
-    @DisplayName("Deve atualizar um empréstimo")
-    public void updateLoanTest() {
-        // given
-        Loan loan = createLoan();
-        loan.setId(1L);
-        loan.setReturned(true);
+    @DisplayName("Deve emprestar em lote somente os livros encontrados e disponíveis")
+    public void checkoutTest() {
+        // cenario
+        LoanBatchDTO batch = LoanBatchDTO.builder()
+            .customer("Fulano")
+            .email("fulano@email.com")
+            .isbns(Arrays.asList("123", "000", "456", "789", "123"))
+            .build();
+        when(bookRepository.findLoanableByIsbns(new TreeSet<>(Arrays.asList("000", "123", "456", "789"))))
+            .thenReturn(Arrays.asList(loanable(1L, "123", true), loanable(2L, "456", false), loanable(3L, "789", true)));
+        when(bookRepository.markLoanedByIds(Mockito.anyCollection())).thenReturn(2);
+        when(bookRepository.getOne(Mockito.anyLong()))
+            .thenAnswer(invocation -> Book.builder().id(invocation.getArgument(0)).build());
+        when(loanRepositoty.saveAll(Mockito.anyList())).thenAnswer(invocation -> {
+            List<Loan> loans = invocation.getArgument(0);
+            loans.forEach(loan -> loan.setId(loan.getBook().getId() * 10));
+            return loans;
+        });
 
-        Mockito.when(loanRepositoty.save(loan)).thenReturn(loan);
+        // execucao
+        List<LoanBatchResultDTO> results = loanService.checkout(batch);
+
+        // verificacao
+        assertThat(results).extracting(LoanBatchResultDTO::getIsbn).containsExactly("123", "000", "456", "789", "123");
+        assertThat(results).extracting(LoanBatchResultDTO::getLoanId).containsExactly(10L, null, null, 30L, null);
+        assertThat(results).extracting(LoanBatchResultDTO::getError).containsExactly(null,
+            "Book not found for passed isbn", "Book already loaned", null, "Duplicated isbn in request");
+        verify(bookRepository).markLoanedByIds(new HashSet<>(Arrays.asList(1L, 3L)));
+        ArgumentCaptor<Loan> tracked = ArgumentCaptor.forClass(Loan.class);
+        verify(overdueTracker, Mockito.times(2)).track(tracked.capture());
+        assertThat(tracked.getAllValues()).extracting(Loan::getId).containsExactly(10L, 30L);
+        assertThat(tracked.getAllValues()).extracting(Loan::getCustomerEmail).containsOnly("fulano@email.com");
+        assertThat(tracked.getAllValues()).extracting(Loan::getLoanDate).containsOnly(LocalDate.now());
+    }
 
-        // when
-        Loan updatedLoan = loanService.update(loan);
+    @Test
+    @DisplayName("Não deve alterar nada quando nenhum livro do lote puder ser emprestado")
+    public void checkoutNothingAvailableTest() {
+        // cenario
+        LoanBatchDTO batch = LoanBatchDTO.builder().customer("Fulano").email("fulano@email.com")
+            .isbns(Arrays.asList("123", "000")).build();
+        when(bookRepository.findLoanableByIsbns(new TreeSet<>(batch.getIsbns())))
+            .thenReturn(Arrays.asList(loanable(1L, "123", false)));
 
-        // then
-        assertThat(updatedLoan.getReturned()).isTrue();
+        // execucao
+        List<LoanBatchResultDTO> results = loanService.checkout(batch);
 
-        verify(loanRepositoty).save(loan);
+        // verificacao
+        assertThat(results).extracting(LoanBatchResultDTO::getError)
+            .containsExactly("Book already loaned", "Book not found for passed isbn");
+        verify(bookRepository, never()).markLoanedByIds(Mockito.anyCollection());
+        verify(loanRepositoty, never()).saveAll(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Deve desfazer o lote quando algum livro já tiver sido emprestado por outra requisição")
+    public void checkoutConcurrentlyLoanedTest() {
+        // cenario
+        LoanBatchDTO batch = LoanBatchDTO.builder().customer("Fulano").email("fulano@email.com")
+            .isbns(Arrays.asList("123", "456")).build();
+        when(bookRepository.findLoanableByIsbns(new TreeSet<>(batch.getIsbns())))
+            .thenReturn(Arrays.asList(loanable(1L, "123", true), loanable(2L, "456", true)));
+        when(bookRepository.markLoanedByIds(Mockito.anyCollection())).thenReturn(1);
+
+        // execucao
+        Throwable exception = catchThrowable(() -> loanService.checkout(batch));
+
+        // verificacao
+        assertThat(exception).isInstanceOf(OptimisticLockingFailureException.class);
+        verify(loanRepositoty, never()).saveAll(Mockito.anyList());
+        verify(overdueTracker, never()).track(Mockito.any(Loan.class));
+    }
+
+    @Test
+    @DisplayName("Deve devolver um empréstimo com um update condicional")
+    public void returnLoanTest() {
+        // cenario
+        when(loanRepositoty.markReturned(1L)).thenReturn(1);
+
+        // execucao
+        ReturnStatus status = loanService.returnLoan(1L);
+
+        // verificacao
+        assertThat(status).isEqualTo(ReturnStatus.RETURNED);
+        verify(bookRepository).markAvailableByLoan(1L);
+        verify(overdueTracker).untrack(1L);
+        verify(loanRepositoty, never()).findById(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve distinguir empréstimo já devolvido de empréstimo inexistente quando nada for atualizado")
+    public void returnLoanNotUpdatedTest() {
+        // cenario
+        when(loanRepositoty.markReturned(Mockito.anyLong())).thenReturn(0);
+        when(loanRepositoty.existsById(1L)).thenReturn(true);
+        when(loanRepositoty.existsById(2L)).thenReturn(false);
+
+        // execucao
+        ReturnStatus alreadyReturned = loanService.returnLoan(1L);
+        ReturnStatus notFound = loanService.returnLoan(2L);
+
+        // verificacao
+        assertThat(alreadyReturned).isEqualTo(ReturnStatus.ALREADY_RETURNED);
+        assertThat(notFound).isEqualTo(ReturnStatus.NOT_FOUND);
+        verify(bookRepository, never()).markAvailableByLoan(Mockito.anyLong());
+        verify(overdueTracker, never()).untrack(Mockito.anyLong());
+    }
+
+    @Test
+    @DisplayName("Deve devolver vários empréstimos e informar os já devolvidos e os inexistentes na ordem pedida")
+    public void returnLoansTest() {
+        // cenario
+        List<Long> ids = Arrays.asList(3L, 1L, 4L, 2L, 3L);
+        when(loanRepositoty.findReturnableByIds(ids)).thenReturn(Arrays.asList(
+            returnable(1L, 10L, null), returnable(2L, 20L, true), returnable(3L, 10L, false)));
+
+        // execucao
+        ReturnReportDTO report = loanService.returnLoans(ids);
+
+        // verificacao
+        assertThat(report.getReturned()).containsExactly(3L, 1L);
+        assertThat(report.getAlreadyReturned()).containsExactly(2L);
+        assertThat(report.getNotFound()).containsExactly(4L);
+        verify(loanRepositoty).markReturnedByIds(Arrays.asList(3L, 1L));
+        verify(bookRepository).markAvailableByIds(Collections.singleton(10L));
+        verify(overdueTracker).untrack(3L);
+        verify(overdueTracker).untrack(1L);
+    }
+
+    @Test
+    @DisplayName("Não deve atualizar nada quando nenhum empréstimo pedido estiver em aberto")
+    public void returnLoansNothingOpenTest() {
+        // cenario
+        when(loanRepositoty.findReturnableByIds(Mockito.anyCollection()))
+            .thenReturn(Arrays.asList(returnable(2L, 20L, true)));
+
+        // execucao
+        ReturnReportDTO report = loanService.returnLoans(Arrays.asList(1L, 2L));
+
+        // verificacao
+        assertThat(report.getReturned()).isEmpty();
+        assertThat(report.getAlreadyReturned()).containsExactly(2L);
+        assertThat(report.getNotFound()).containsExactly(1L);
+        verify(loanRepositoty, never()).markReturnedByIds(Mockito.anyCollection());
+        verify(bookRepository, never()).markAvailableByIds(Mockito.anyCollection());
     }
 
     @Test
@@ -157,17 +307,16 @@ public class LoanServiceTest {
             .isbn("321")
             .build();
 
-        Loan loan = createLoan();
-        loan.setId(1L);
+        LoanDTO loan = new LoanDTO(1L, "Fulano", null, 1L, "As aventuras", "Artur", "321");
 
         final PageRequest pageRequest = PageRequest.of(0, 10);
-        List<Loan> lista = Arrays.asList(loan);
-        Page<Loan> page = new PageImpl<>(lista, pageRequest, lista.size());
-        Mockito.when(loanRepositoty.findByBookIsbnOrCustomer(Mockito.anyString(), Mockito.anyString() , Mockito.any(PageRequest.class)))
+        List<LoanDTO> lista = Arrays.asList(loan);
+        Page<LoanDTO> page = new PageImpl<>(lista, pageRequest, lista.size());
+        Mockito.when(loanRepositoty.findDtoByBookIsbnOrCustomer("321", "Fulano", pageRequest))
             .thenReturn(page);
 
         // execucao
-        Page<Loan> result = loanService.find(loanFilterDTO, pageRequest);
+        Page<LoanDTO> result = loanService.find(loanFilterDTO, pageRequest);
 
         // verificacao
         assertThat(result.getTotalElements()).isEqualTo(1);
@@ -187,4 +336,42 @@ public class LoanServiceTest {
             .build();
     }
 
+    private static LoanableBook loanable(final Long id, final String isbn, final Boolean available) {
+        return new LoanableBook() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getIsbn() {
+                return isbn;
+            }
+
+            @Override
+            public Boolean getAvailable() {
+                return available;
+            }
+        };
+    }
+
+    private static ReturnableLoan returnable(final Long id, final Long bookId, final Boolean returned) {
+        return new ReturnableLoan() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getBookId() {
+                return bookId;
+            }
+
+            @Override
+            public Boolean getReturned() {
+                return returned;
+            }
+        };
+    }
+
 }
@@ -0,0 +1,216 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+import com.cursowendt.libraryapi.model.repository.OutboxMessageRepository;
+import com.cursowendt.libraryapi.service.EmailService;
+import com.cursowendt.libraryapi.service.impl.OutboxServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OutboxServiceTest {
+
+    OutboxServiceImpl outboxService;
+
+    MeterRegistry meterRegistry;
+
+    @MockBean
+    OutboxMessageRepository repository;
+
+    @MockBean
+    EmailService emailService;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outboxService = new OutboxServiceImpl(repository, emailService, meterRegistry,
+            10, Duration.ofMinutes(5), 3, Duration.ofSeconds(30), Duration.ofMinutes(1), Duration.ofDays(7));
+    }
+
+    @Test
+    @DisplayName("Deve gravar no outbox apenas as mensagens com chave ainda não registrada")
+    @SuppressWarnings("unchecked")
+    public void enqueueSkipsKnownKeysTest() {
+        // cenario
+        when(repository.findExistingDedupKeys(any())).thenReturn(Collections.singletonList("k1"));
+        List<OutboxMessage> messages = Arrays.asList(message("k1"), message("k2"), message("k2"));
+
+        // execucao
+        int enqueued = outboxService.enqueue(messages);
+
+        // verificacao
+        ArgumentCaptor<List<OutboxMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(captor.capture());
+        assertThat(enqueued).isEqualTo(1);
+        assertThat(captor.getValue()).extracting(OutboxMessage::getDedupKey).containsExactly("k2");
+        assertThat(captor.getValue().get(0).getNextAttemptAt()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Deve marcar como enviadas as mensagens entregues")
+    public void dispatchMarksSentTest() {
+        // cenario
+        OutboxMessage message = claimed(1L, 0);
+        when(emailService.offerMail("a@email.com", "assunto", "texto")).thenReturn(CompletableFuture.completedFuture(null));
+
+        // execucao
+        int dispatched = outboxService.dispatch();
+
+        // verificacao
+        assertThat(dispatched).isEqualTo(1);
+        verify(repository).markSent(eq(1L), anyString(), any(LocalDateTime.class));
+        verify(repository, never()).markFailedAttempt(any(), any(), any(), any(), any());
+        assertThat(meterRegistry.counter("library.outbox.sent").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve reagendar com espera exponencial as mensagens que falharam")
+    public void dispatchRetriesWithBackoffTest() {
+        // cenario
+        claimed(1L, 1);
+        when(emailService.offerMail(anyString(), anyString(), anyString()))
+            .thenReturn(failed(new IllegalStateException("smtp down")));
+
+        // execucao
+        LocalDateTime before = LocalDateTime.now();
+        outboxService.dispatch();
+
+        // verificacao
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).markFailedAttempt(eq(1L), anyString(), eq(OutboxMessage.Status.PENDING),
+            nextAttempt.capture(), eq("smtp down"));
+        assertThat(nextAttempt.getValue()).isAfterOrEqualTo(before.plusSeconds(60));
+        assertThat(meterRegistry.counter("library.outbox.retried").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve desistir da mensagem após o número máximo de tentativas")
+    public void dispatchGivesUpAfterMaxAttemptsTest() {
+        // cenario
+        claimed(1L, 2);
+        when(emailService.offerMail(anyString(), anyString(), anyString()))
+            .thenReturn(failed(new IllegalStateException("mailbox unavailable")));
+
+        // execucao
+        outboxService.dispatch();
+
+        // verificacao
+        verify(repository).markFailedAttempt(eq(1L), anyString(), eq(OutboxMessage.Status.FAILED), any(), any());
+        assertThat(meterRegistry.counter("library.outbox.failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Não deve enviar nada quando outra instância reivindicou as mensagens")
+    public void dispatchSkipsRowsClaimedElsewhereTest() {
+        // cenario
+        when(repository.findClaimable(any(), any())).thenReturn(Collections.singletonList(1L));
+        when(repository.claim(any(), anyString(), any(), any())).thenReturn(0);
+
+        // execucao
+        int dispatched = outboxService.dispatch();
+
+        // verificacao
+        assertThat(dispatched).isZero();
+        verify(emailService, never()).offerMail(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Deve devolver sem contar tentativa as mensagens que não couberam na fila de e-mails")
+    @SuppressWarnings("unchecked")
+    public void dispatchReleasesWhenQueueIsFullTest() {
+        // cenario
+        OutboxMessage first = message("k1");
+        first.setId(1L);
+        OutboxMessage second = message("k2");
+        second.setId(2L);
+        second.setRecipient("b@email.com");
+        OutboxMessage third = message("k3");
+        third.setId(3L);
+        when(repository.findClaimable(any(), any())).thenReturn(Arrays.asList(1L, 2L, 3L));
+        when(repository.claim(any(), anyString(), any(), any())).thenReturn(3);
+        when(repository.findByClaimToken(anyString())).thenReturn(Arrays.asList(first, second, third));
+        when(emailService.offerMail(eq("a@email.com"), anyString(), anyString())).thenReturn(new CompletableFuture<>());
+        when(emailService.offerMail(eq("b@email.com"), anyString(), anyString()))
+            .thenReturn(failed(new RejectedExecutionException("Mail queue is full")));
+
+        // execucao
+        int dispatched = outboxService.dispatch();
+
+        // verificacao
+        assertThat(dispatched).isEqualTo(1);
+        ArgumentCaptor<List<Long>> released = ArgumentCaptor.forClass(List.class);
+        verify(repository).release(released.capture(), anyString());
+        assertThat(released.getValue()).containsExactly(2L, 3L);
+        verify(emailService, times(2)).offerMail(any(), any(), any());
+        verify(repository, never()).markFailedAttempt(any(), any(), any(), any(), any());
+        assertThat(meterRegistry.counter("library.outbox.deferred").count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve apagar em lotes as mensagens enviadas há mais tempo que a retenção")
+    public void purgeSentTest() {
+        // cenario
+        when(repository.findSentBefore(any(), any()))
+            .thenReturn(Arrays.asList(1L, 2L))
+            .thenReturn(Collections.emptyList());
+        when(repository.deleteByIds(Arrays.asList(1L, 2L))).thenReturn(2);
+
+        // execucao
+        LocalDateTime before = LocalDateTime.now().minusDays(7);
+        int purged = outboxService.purgeSent();
+
+        // verificacao
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository, times(2)).findSentBefore(cutoff.capture(), any());
+        assertThat(cutoff.getValue()).isAfterOrEqualTo(before);
+        assertThat(purged).isEqualTo(2);
+        assertThat(meterRegistry.counter("library.outbox.purged").count()).isEqualTo(2);
+    }
+
+    private OutboxMessage claimed(final Long id, final int attempts) {
+        OutboxMessage message = message("k" + id);
+        message.setId(id);
+        message.setAttempts(attempts);
+        when(repository.findClaimable(any(), any())).thenReturn(Collections.singletonList(id));
+        when(repository.claim(any(), anyString(), any(), any())).thenReturn(1);
+        when(repository.findByClaimToken(anyString())).thenReturn(Collections.singletonList(message));
+        return message;
+    }
+
+    private OutboxMessage message(final String key) {
+        return OutboxMessage.builder().dedupKey(key).recipient("a@email.com").subject("assunto").text("texto").build();
+    }
+
+    private static CompletableFuture<Void> failed(final Throwable ex) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+        return future;
+    }
+
+}
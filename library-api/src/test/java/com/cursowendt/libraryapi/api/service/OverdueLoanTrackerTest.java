@@ -0,0 +1,190 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.DueLoan;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import com.cursowendt.libraryapi.service.LoanOverdueEvent;
+import com.cursowendt.libraryapi.service.OverdueLoanTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class OverdueLoanTrackerTest {
+
+    static final LocalDate TODAY = LocalDate.of(2020, 9, 1);
+
+    @MockBean
+    LoanRepository loanRepository;
+
+    @MockBean
+    ApplicationEventPublisher publisher;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    MutableClock clock = new MutableClock(TODAY.atTime(10, 0).toInstant(ZoneOffset.UTC));
+
+    OverdueLoanTracker tracker;
+
+    @BeforeEach
+    public void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        tracker = new OverdueLoanTracker(loanRepository, publisher, transactionManager, new SimpleMeterRegistry(),
+            60_000, 60, clock);
+    }
+
+    @Test
+    @DisplayName("Deve publicar o evento de atraso quando o empréstimo chegar à data de vencimento")
+    public void publishWhenLoanBecomesDueTest() {
+        // cenario
+        tracker.track(Loan.builder().id(1L).dueDate(TODAY.plusDays(1)).build());
+        tracker.track(Loan.builder().id(2L).dueDate(TODAY.plusDays(2)).build());
+
+        // execucao
+        clock.set(TODAY.plusDays(1).atTime(0, 0, 30).toInstant(ZoneOffset.UTC));
+        tracker.advance();
+
+        // verificacao
+        verify(publisher).publishEvent(new LoanOverdueEvent(TODAY.plusDays(1), Collections.singletonList(1L)));
+        assertThat(tracker.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Não deve publicar o evento de empréstimos devolvidos antes do vencimento")
+    public void untrackReturnedLoanTest() {
+        // cenario
+        tracker.track(Loan.builder().id(1L).dueDate(TODAY.plusDays(1)).build());
+
+        // execucao
+        tracker.untrack(1L);
+        clock.set(TODAY.plusDays(2).atStartOfDay().toInstant(ZoneOffset.UTC));
+        tracker.advance();
+
+        // verificacao
+        verify(publisher, never()).publishEvent(any());
+    }
+
+    @Test
+    @DisplayName("Deve acompanhar o empréstimo apenas depois que a transação for confirmada")
+    public void trackAfterCommitTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // cenario
+            tracker.track(Loan.builder().id(1L).dueDate(TODAY.plusDays(1)).build());
+            assertThat(tracker.size()).isZero();
+
+            // execucao
+            TransactionSynchronizationUtils.triggerAfterCommit();
+
+            // verificacao
+            assertThat(tracker.size()).isEqualTo(1);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Não deve acompanhar o empréstimo quando a transação for desfeita")
+    public void doNotTrackRolledBackLoanTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // cenario
+            tracker.track(Loan.builder().id(1L).dueDate(TODAY.plusDays(1)).build());
+
+            // execucao
+            TransactionSynchronizationUtils.invokeAfterCompletion(
+                TransactionSynchronizationManager.getSynchronizations(), TransactionSynchronization.STATUS_ROLLED_BACK);
+
+            // verificacao
+            assertThat(tracker.size()).isZero();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve reconstruir a roda a partir da base e publicar os empréstimos que vencem hoje")
+    public void rebuildFromDatabaseTest() {
+        // cenario
+        when(loanRepository.streamOpenDueFrom(TODAY))
+            .thenReturn(Stream.of(dueLoan(1L, TODAY), dueLoan(2L, TODAY.plusDays(3))));
+
+        // execucao
+        tracker.rebuild();
+
+        // verificacao
+        verify(publisher).publishEvent(new LoanOverdueEvent(TODAY, Collections.singletonList(1L)));
+        assertThat(tracker.size()).isEqualTo(1);
+    }
+
+    private DueLoan dueLoan(final Long id, final LocalDate dueDate) {
+        return new DueLoan() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDate getDueDate() {
+                return dueDate;
+            }
+        };
+    }
+
+    static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(final Instant instant) {
+            this.instant = instant;
+        }
+
+        void set(final Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+    }
+
+}
@@ -0,0 +1,303 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.model.entity.JobCheckpoint;
+import com.cursowendt.libraryapi.model.entity.JobPartition;
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+import com.cursowendt.libraryapi.model.projection.IdRange;
+import com.cursowendt.libraryapi.model.projection.LateLoan;
+import com.cursowendt.libraryapi.model.repository.JobCheckpointRepository;
+import com.cursowendt.libraryapi.model.repository.JobPartitionRepository;
+import com.cursowendt.libraryapi.service.EmailService;
+import com.cursowendt.libraryapi.service.LoanOverdueEvent;
+import com.cursowendt.libraryapi.service.LoanService;
+import com.cursowendt.libraryapi.service.OutboxService;
+import com.cursowendt.libraryapi.service.ScheduleService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+public class ScheduleServiceTest {
+
+    static final String PARTITION_ID = "late-loans:0";
+
+    ScheduleService scheduleService;
+
+    MeterRegistry meterRegistry;
+
+    @MockBean
+    LoanService loanService;
+
+    @MockBean
+    OutboxService outboxService;
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @MockBean
+    JobCheckpointRepository checkpointRepository;
+
+    @MockBean
+    JobPartitionRepository partitionRepository;
+
+    LocalDate cutoff = LocalDate.now();
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        scheduleService = new ScheduleService(loanService, outboxService, transactionManager,
+            checkpointRepository, partitionRepository, meterRegistry);
+        ReflectionTestUtils.setField(scheduleService, "message", "Atenção!");
+        ReflectionTestUtils.setField(scheduleService, "chunkSize", 2);
+        ReflectionTestUtils.setField(scheduleService, "partitions", 3);
+        ReflectionTestUtils.setField(scheduleService, "workers", 1);
+        ReflectionTestUtils.setField(scheduleService, "lease", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(scheduleService, "maxAttempts", 3);
+        scheduleService.start();
+        ReflectionTestUtils.setField(scheduleService, "executor", (Executor) Runnable::run);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(partitionRepository.findClaimable(eq("late-loans"), any(), eq(3))).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    @DisplayName("Deve dividir os ids dos empréstimos atrasados em partições ao iniciar uma execução")
+    @SuppressWarnings("unchecked")
+    public void startRunCreatesPartitionsTest() {
+        // cenario
+        when(checkpointRepository.findById("late-loans")).thenReturn(Optional.empty());
+        when(loanService.getLateLoanIdRange(cutoff)).thenReturn(idRange(1L, 10L));
+
+        // execucao
+        scheduleService.sendMailToLateLoans();
+
+        // verificacao
+        ArgumentCaptor<JobCheckpoint> checkpoint = ArgumentCaptor.forClass(JobCheckpoint.class);
+        verify(checkpointRepository).save(checkpoint.capture());
+        assertThat(checkpoint.getValue().getCutoff()).isEqualTo(cutoff);
+        assertThat(checkpoint.getValue().getPartitions()).isEqualTo(3);
+
+        ArgumentCaptor<List<JobPartition>> plan = ArgumentCaptor.forClass(List.class);
+        verify(partitionRepository).saveAll(plan.capture());
+        assertThat(plan.getValue()).extracting(JobPartition::getLastId).containsExactly(0L, 4L, 8L);
+        assertThat(plan.getValue()).extracting(JobPartition::getUpTo).containsExactly(4L, 8L, 10L);
+        assertThat(plan.getValue()).allMatch(partition -> partition.getCutoff().equals(cutoff));
+    }
+
+    @Test
+    @DisplayName("Deve gravar os emails de uma partição no outbox em lotes e encerrar a execução na última partição")
+    public void processPartitionInChunksTest() {
+        // cenario
+        claimablePartition(0L, 10L);
+        when(loanService.getLateLoansBetween(cutoff, 0L, 10L, 2))
+            .thenReturn(Arrays.asList(lateLoan(1L, "a@email.com"), lateLoan(2L, null)));
+        when(loanService.getLateLoansBetween(cutoff, 2L, 10L, 2))
+            .thenReturn(Collections.singletonList(lateLoan(5L, "c@email.com")));
+        when(partitionRepository.checkpoint(eq(PARTITION_ID), anyString(), eq(cutoff), anyLong(), anyLong(), any())).thenReturn(1);
+        when(partitionRepository.finish(eq(PARTITION_ID), anyString(), eq(cutoff), any())).thenReturn(1);
+        when(partitionRepository.countByJobAndFinishedAtIsNull("late-loans")).thenReturn(0L);
+        when(checkpointRepository.finish(eq("late-loans"), any())).thenReturn(1);
+
+        // execucao
+        scheduleService.claimPartitions();
+
+        // verificacao
+        List<OutboxMessage> messages = enqueued(2);
+        assertThat(messages).extracting(OutboxMessage::getRecipient).containsExactly("a@email.com", "c@email.com");
+        assertThat(messages).extracting(OutboxMessage::getDedupKey)
+            .containsExactly("late-loans:" + cutoff + ":1", "late-loans:" + cutoff + ":5");
+        assertThat(messages).allMatch(message -> message.getSubject().equals(EmailService.LATE_LOANS_SUBJECT)
+            && message.getText().equals("Atenção!"));
+        verify(partitionRepository).checkpoint(eq(PARTITION_ID), anyString(), eq(cutoff), eq(2L), eq(2L), any());
+        verify(partitionRepository).checkpoint(eq(PARTITION_ID), anyString(), eq(cutoff), eq(5L), eq(1L), any());
+        verify(checkpointRepository).finish(eq("late-loans"), any());
+        assertThat(meterRegistry.counter("library.lateloans.processed").count()).isEqualTo(3);
+        assertThat(meterRegistry.get("library.lateloans.partition.lag").tag("partition", "0").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve parar de processar a partição quando perder a concessão para outra instância")
+    public void stopWhenLeaseIsLostTest() {
+        // cenario
+        claimablePartition(0L, 10L);
+        when(loanService.getLateLoansBetween(cutoff, 0L, 10L, 2))
+            .thenReturn(Arrays.asList(lateLoan(1L, "a@email.com"), lateLoan(2L, "b@email.com")));
+        when(partitionRepository.checkpoint(eq(PARTITION_ID), anyString(), eq(cutoff), anyLong(), anyLong(), any())).thenReturn(0);
+
+        // execucao
+        scheduleService.claimPartitions();
+
+        // verificacao
+        verify(outboxService, never()).enqueue(any());
+        verify(partitionRepository, never()).finish(any(), any(), any(), any());
+        assertThat(meterRegistry.counter("library.lateloans.lease.lost").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Não deve reiniciar a execução da mesma data enquanto ela não terminar")
+    public void doNotRestartUnfinishedRunTest() {
+        // cenario
+        JobCheckpoint checkpoint = JobCheckpoint.builder()
+            .job("late-loans").cutoff(cutoff).partitions(3).startedAt(LocalDateTime.now()).build();
+        when(checkpointRepository.findById("late-loans")).thenReturn(Optional.of(checkpoint));
+
+        // execucao
+        scheduleService.sendMailToLateLoans();
+
+        // verificacao
+        verify(loanService, never()).getLateLoanIdRange(any());
+        verify(partitionRepository, never()).saveAll(any());
+        verify(partitionRepository).findClaimable(eq("late-loans"), any(), eq(3));
+    }
+
+    @Test
+    @DisplayName("Deve substituir uma execução não terminada de uma data anterior")
+    public void supersedeStaleRunTest() {
+        // cenario
+        JobCheckpoint checkpoint = JobCheckpoint.builder()
+            .job("late-loans").cutoff(cutoff.minusDays(1)).partitions(3).startedAt(LocalDateTime.now()).build();
+        when(checkpointRepository.findById("late-loans")).thenReturn(Optional.of(checkpoint));
+        when(loanService.getLateLoanIdRange(cutoff)).thenReturn(idRange(1L, 10L));
+        when(checkpointRepository.restart(eq("late-loans"), eq(cutoff), eq(3), any())).thenReturn(1);
+
+        // execucao
+        scheduleService.sendMailToLateLoans();
+
+        // verificacao
+        verify(partitionRepository).deleteByJob("late-loans");
+        verify(partitionRepository).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("Não deve criar partições além do maior id atrasado")
+    @SuppressWarnings("unchecked")
+    public void planClampsToMaxIdTest() {
+        // cenario
+        ReflectionTestUtils.setField(scheduleService, "partitions", 8);
+        when(checkpointRepository.findById("late-loans")).thenReturn(Optional.empty());
+        when(loanService.getLateLoanIdRange(cutoff)).thenReturn(idRange(1L, 10L));
+
+        // execucao
+        scheduleService.sendMailToLateLoans();
+
+        // verificacao
+        ArgumentCaptor<JobCheckpoint> checkpoint = ArgumentCaptor.forClass(JobCheckpoint.class);
+        verify(checkpointRepository).save(checkpoint.capture());
+        assertThat(checkpoint.getValue().getPartitions()).isEqualTo(5);
+        ArgumentCaptor<List<JobPartition>> plan = ArgumentCaptor.forClass(List.class);
+        verify(partitionRepository).saveAll(plan.capture());
+        assertThat(plan.getValue()).extracting(JobPartition::getLastId).containsExactly(0L, 2L, 4L, 6L, 8L);
+        assertThat(plan.getValue()).extracting(JobPartition::getUpTo).containsExactly(2L, 4L, 6L, 8L, 10L);
+    }
+
+    @Test
+    @DisplayName("Não deve criar partições quando outra instância já reiniciou a execução")
+    public void doNotPlanWhenAnotherInstanceRestartedTest() {
+        // cenario
+        JobCheckpoint checkpoint = JobCheckpoint.builder().job("late-loans").cutoff(cutoff.minusDays(1))
+            .startedAt(LocalDateTime.now()).finishedAt(LocalDateTime.now()).build();
+        when(checkpointRepository.findById("late-loans")).thenReturn(Optional.of(checkpoint));
+        when(loanService.getLateLoanIdRange(cutoff)).thenReturn(idRange(1L, 10L));
+        when(checkpointRepository.restart(eq("late-loans"), eq(cutoff), eq(3), any())).thenReturn(0);
+
+        // execucao
+        scheduleService.sendMailToLateLoans();
+
+        // verificacao
+        verify(partitionRepository, never()).deleteByJob(any());
+        verify(partitionRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("Deve gravar no outbox os emails dos empréstimos que acabaram de vencer")
+    public void onLoanOverdueTest() {
+        // cenario
+        when(loanService.getLateLoans(cutoff, Arrays.asList(1L, 2L)))
+            .thenReturn(Arrays.asList(lateLoan(1L, "a@email.com"), lateLoan(2L, null)));
+        when(loanService.getLateLoans(cutoff, Collections.singletonList(3L)))
+            .thenReturn(Collections.singletonList(lateLoan(3L, "c@email.com")));
+
+        // execucao
+        scheduleService.onLoanOverdue(new LoanOverdueEvent(cutoff, Arrays.asList(1L, 2L, 3L)));
+
+        // verificacao
+        assertThat(enqueued(2)).extracting(OutboxMessage::getDedupKey)
+            .containsExactly("late-loans:" + cutoff + ":1", "late-loans:" + cutoff + ":3");
+    }
+
+    private void claimablePartition(final Long lastId, final Long upTo) {
+        JobPartition partition = JobPartition.builder().id(PARTITION_ID).job("late-loans").partitionIndex(0)
+            .cutoff(cutoff).lastId(lastId).upTo(upTo).build();
+        when(partitionRepository.findClaimable(eq("late-loans"), any(), eq(3)))
+            .thenReturn(Collections.singletonList(PARTITION_ID), Collections.emptyList());
+        when(partitionRepository.claim(eq(PARTITION_ID), anyString(), any(), any(), eq(3))).thenReturn(1);
+        when(partitionRepository.findById(PARTITION_ID)).thenReturn(Optional.of(partition));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OutboxMessage> enqueued(final int chunks) {
+        ArgumentCaptor<List<OutboxMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxService, Mockito.times(chunks)).enqueue(captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private IdRange idRange(final Long min, final Long max) {
+        return new IdRange() {
+            @Override
+            public Long getMinId() {
+                return min;
+            }
+
+            @Override
+            public Long getMaxId() {
+                return max;
+            }
+        };
+    }
+
+    private LateLoan lateLoan(final Long id, final String email) {
+        return new LateLoan() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getCustomerEmail() {
+                return email;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.cursowendt.libraryapi.api.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process SMTP server for tests. Accepts every message and records its recipients.
+ */
+class SmtpStub implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<List<String>> messages = new CopyOnWriteArrayList<>();
+
+    SmtpStub() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Recipients of each accepted message, in arrival order.
+     */
+    List<List<String>> getMessages() {
+        return messages;
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                executor.execute(() -> converse(socket));
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void converse(final Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+            reply(out, "220 localhost SMTP stub");
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String command = line.toUpperCase(Locale.ROOT);
+                if (command.startsWith("RCPT TO:")) {
+                    recipients.add(line.substring("RCPT TO:".length()).trim().replaceAll("[<>]", ""));
+                    reply(out, "250 OK");
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        // message body is not needed by the tests
+                    }
+                    messages.add(recipients);
+                    recipients = new ArrayList<>();
+                    reply(out, "250 OK");
+                } else if (command.startsWith("RSET")) {
+                    recipients = new ArrayList<>();
+                    reply(out, "250 OK");
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "250 OK");
+                }
+            }
+        } catch (IOException ex) {
+            // client went away
+        }
+    }
+
+    private static void reply(final PrintWriter out, final String line) {
+        out.print(line + "\r\n");
+        out.flush();
+    }
+
+}
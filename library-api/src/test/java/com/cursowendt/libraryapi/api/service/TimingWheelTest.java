@@ -0,0 +1,84 @@
+package com.cursowendt.libraryapi.api.service;
+
+import com.cursowendt.libraryapi.service.TimingWheel;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    @Test
+    @DisplayName("Deve expirar cada chave no tick do seu prazo")
+    public void expireOnDeadlineTest() {
+        // cenario
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        wheel.schedule("a", 15);
+        wheel.schedule("b", 30);
+
+        // execucao / verificacao
+        assertThat(wheel.advance(9)).isEmpty();
+        assertThat(wheel.advance(10)).containsExactly("a");
+        assertThat(wheel.advance(29)).isEmpty();
+        assertThat(wheel.advance(30)).containsExactly("b");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Deve descer entradas das rodas superiores e expirá-las no tick correto")
+    public void cascadeFromOverflowWheelsTest() {
+        // cenario
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 4, 0);
+        Random random = new Random(42);
+        List<long[]> deadlines = new ArrayList<>();
+        for (int key = 0; key < 500; key++) {
+            long deadline = 10 + random.nextInt(20_000);
+            deadlines.add(new long[]{key, deadline});
+            assertThat(wheel.schedule(key, deadline)).isTrue();
+        }
+
+        // execucao / verificacao
+        for (long now = 0; now <= 20_010; now += 7) {
+            for (Integer key : wheel.advance(now)) {
+                long deadline = deadlines.get(key)[1];
+                long tickStart = deadline - deadline % 10;
+                assertThat(tickStart).isLessThanOrEqualTo(now).isGreaterThan(now - 7);
+            }
+        }
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Não deve expirar chaves canceladas ou reagendadas")
+    public void cancelAndRescheduleTest() {
+        // cenario
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+        wheel.schedule("a", 100);
+        wheel.schedule("b", 100);
+        wheel.schedule("c", 100);
+
+        // execucao
+        wheel.cancel("a");
+        wheel.schedule("b", 500);
+
+        // verificacao
+        assertThat(wheel.advance(100)).containsExactly("c");
+        assertThat(wheel.advance(499)).isEmpty();
+        assertThat(wheel.advance(500)).containsExactly("b");
+    }
+
+    @Test
+    @DisplayName("Deve recusar prazos que já passaram")
+    public void rejectPastDeadlineTest() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 4, 100);
+
+        assertThat(wheel.schedule("a", 105)).isFalse();
+        assertThat(wheel.schedule("b", 50)).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+}
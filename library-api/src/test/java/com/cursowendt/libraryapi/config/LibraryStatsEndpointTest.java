@@ -0,0 +1,56 @@
+package com.cursowendt.libraryapi.config;
+
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO;
+import com.cursowendt.libraryapi.api.dto.LibraryStatsDTO.LatencyDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LibraryStatsEndpointTest {
+
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    LibraryStatsEndpoint endpoint = new LibraryStatsEndpoint(meterRegistry);
+
+    @Test
+    @DisplayName("Deve calcular os percentis somando os histogramas dos timers do mesmo método")
+    public void mergeHistogramsTest() {
+        // cenario
+        Timer success = timer("none");
+        Timer failure = timer("IllegalStateException");
+        for (int i = 0; i < 97; i++) {
+            success.record(1, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < 3; i++) {
+            failure.record(1, TimeUnit.SECONDS);
+        }
+
+        // execucao
+        LibraryStatsDTO stats = endpoint.stats();
+
+        // verificacao
+        assertThat(stats.getRepositories()).hasSize(1);
+        LatencyDTO latency = stats.getRepositories().get(0);
+        assertThat(latency.getName()).isEqualTo("BookRepository.findDtoById");
+        assertThat(latency.getCount()).isEqualTo(100);
+        assertThat(latency.getErrors()).isEqualTo(3);
+        assertThat(latency.getP50()).isEqualTo(1.0);
+        assertThat(latency.getP99()).isEqualTo(1000.0);
+    }
+
+    private Timer timer(final String exception) {
+        return Timer.builder(MethodMetricsAspect.REPOSITORY_INVOCATIONS)
+            .tags("repository", "BookRepository", "method", "findDtoById", "exception", exception)
+            .serviceLevelObjectives(Duration.ofMillis(1), Duration.ofMillis(10), Duration.ofMillis(100),
+                Duration.ofSeconds(1), Duration.ofSeconds(10))
+            .register(meterRegistry);
+    }
+
+}
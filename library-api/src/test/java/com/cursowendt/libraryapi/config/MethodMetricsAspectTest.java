@@ -0,0 +1,145 @@
+package com.cursowendt.libraryapi.config;
+
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
+import com.cursowendt.libraryapi.model.repository.BookRepository;
+import com.cursowendt.libraryapi.model.repository.LoanRepository;
+import com.cursowendt.libraryapi.service.LoanService;
+import com.cursowendt.libraryapi.service.OverdueLoanTracker;
+import com.cursowendt.libraryapi.service.impl.LoanServiceImpl;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class MethodMetricsAspectTest {
+
+    MeterRegistry meterRegistry;
+
+    LoanRepository loanRepository = Mockito.mock(LoanRepository.class);
+
+    BookRepository bookRepository = Mockito.mock(BookRepository.class);
+
+    LoanRepository timedLoanRepository;
+
+    BookRepository timedBookRepository;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        timedLoanRepository = proxy(loanRepository, LoanRepository.class);
+        timedBookRepository = proxy(bookRepository, BookRepository.class);
+    }
+
+    @Test
+    @DisplayName("Deve medir o tempo e as linhas retornadas por método do repositório")
+    public void timeRepositoryMethodTest() {
+        // cenario
+        PageRequest pageRequest = PageRequest.of(0, 10);
+        Mockito.when(loanRepository.findDtoByBookIsbnOrCustomer("123", "Fulano", pageRequest))
+            .thenReturn(new PageImpl<>(Arrays.asList(loanDTO(1L), loanDTO(2L)), pageRequest, 2));
+
+        // execucao
+        timedLoanRepository.findDtoByBookIsbnOrCustomer("123", "Fulano", pageRequest);
+        timedBookRepository.existsByIsbn("123");
+
+        // verificacao
+        assertThat(meterRegistry.get(MethodMetricsAspect.REPOSITORY_INVOCATIONS)
+            .tags("repository", "LoanRepository", "method", "findDtoByBookIsbnOrCustomer", "exception", "none")
+            .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MethodMetricsAspect.REPOSITORY_ROWS)
+            .tags("repository", "LoanRepository", "method", "findDtoByBookIsbnOrCustomer")
+            .summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get(MethodMetricsAspect.REPOSITORY_INVOCATIONS)
+            .tags("repository", "BookRepository", "method", "existsByIsbn").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find(MethodMetricsAspect.REPOSITORY_ROWS)
+            .tags("method", "existsByIsbn").summary()).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve marcar a exceção lançada pelo método do repositório")
+    public void tagRepositoryExceptionTest() {
+        // cenario
+        Mockito.when(bookRepository.markLoaned(1L)).thenThrow(new IllegalStateException("falha"));
+
+        // execucao
+        Throwable exception = catchThrowable(() -> timedBookRepository.markLoaned(1L));
+
+        // verificacao
+        assertThat(exception).isInstanceOf(IllegalStateException.class);
+        assertThat(meterRegistry.get(MethodMetricsAspect.REPOSITORY_INVOCATIONS)
+            .tags("method", "markLoaned", "exception", "IllegalStateException").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve medir o tempo por método de serviço")
+    public void timeServiceMethodTest() {
+        // cenario
+        LoanService loanService = proxy(new LoanServiceImpl(timedLoanRepository, timedBookRepository,
+            Mockito.mock(OverdueLoanTracker.class)), LoanService.class);
+        Mockito.when(loanRepository.findDtoByBookId(1L, PageRequest.of(0, 10)))
+            .thenReturn(new PageImpl<>(Collections.emptyList()));
+
+        // execucao
+        loanService.getLoansByBook(1L, PageRequest.of(0, 10));
+
+        // verificacao
+        assertThat(meterRegistry.get(MethodMetricsAspect.SERVICE_INVOCATIONS)
+            .tags("service", "LoanServiceImpl", "method", "getLoansByBook", "exception", "none")
+            .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(MethodMetricsAspect.REPOSITORY_ROWS)
+            .tags("repository", "LoanRepository", "method", "findDtoByBookId").summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve registrar o medidor uma única vez por método e exceção")
+    public void registerMetersOnceTest() {
+        // cenario
+        AtomicInteger registrations = new AtomicInteger();
+        meterRegistry.config().meterFilter(new MeterFilter() {
+            @Override
+            public Meter.Id map(final Meter.Id id) {
+                if (id.getName().equals(MethodMetricsAspect.REPOSITORY_INVOCATIONS)) {
+                    registrations.incrementAndGet();
+                }
+                return id;
+            }
+        });
+
+        // execucao
+        timedBookRepository.existsByIsbn("123");
+        timedBookRepository.existsByIsbn("456");
+        timedBookRepository.existsByIsbn("789");
+
+        // verificacao
+        assertThat(registrations.get()).isEqualTo(1);
+        assertThat(meterRegistry.get(MethodMetricsAspect.REPOSITORY_INVOCATIONS)
+            .tags("method", "existsByIsbn").timer().count()).isEqualTo(3);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(final Object target, final Class<T> type) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setInterfaces(type);
+        factory.addAspect(new MethodMetricsAspect(meterRegistry));
+        return (T) factory.getProxy();
+    }
+
+    private LoanDTO loanDTO(final Long id) {
+        return new LoanDTO(id, "Fulano", null, 1L, "As aventuras", "Artur", "123");
+    }
+
+}
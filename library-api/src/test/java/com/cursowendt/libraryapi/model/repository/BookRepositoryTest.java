@@ -1,16 +1,29 @@
 package com.cursowendt.libraryapi.model.repository;
 
+import com.cursowendt.libraryapi.api.dto.BookDTO;
 import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.BookVersion;
+import com.cursowendt.libraryapi.model.projection.CatalogVersion;
+import com.cursowendt.libraryapi.model.projection.LoanableBook;
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -97,6 +110,224 @@ public class BookRepositoryTest {
 
     }
 
+    @Test
+    @DisplayName("Deve filtrar livros sem contar o total.")
+    public void findByFilterTest() {
+        // cenario
+        entityManager.persist(createNewBook("123"));
+        entityManager.persist(createNewBook("456"));
+
+        // execucao
+        Slice<BookDTO> result = bookRepository.findDtoSliceByFilter(null, "fulano", "45", PageRequest.of(0, 10));
+
+        // verificacoes
+        assertThat(result.getContent()).hasSize(1);
+        assertThat(result.getContent().get(0).getIsbn()).isEqualTo("456");
+        assertThat(result.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve buscar a próxima página de livros a partir do cursor.")
+    public void findByFilterAfterTest() {
+        // cenario
+        Book first = createNewBook("123");
+        Book second = createNewBook("456");
+        Book third = createNewBook("789");
+        entityManager.persist(first);
+        entityManager.persist(second);
+        entityManager.persist(third);
+
+        // execucao
+        Slice<Book> firstPage = bookRepository.findByFilterAfter("AVENTURA", null, null, 0L, PageRequest.of(0, 2));
+        Slice<Book> lastPage = bookRepository.findByFilterAfter("AVENTURA", null, null, second.getId(), PageRequest.of(0, 2));
+
+        // verificacoes
+        assertThat(firstPage.getContent()).containsExactly(first, second);
+        assertThat(firstPage.hasNext()).isTrue();
+        assertThat(lastPage.getContent()).containsExactly(third);
+        assertThat(lastPage.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve percorrer todos os livros em ordem de id.")
+    public void streamAllTest() {
+        // cenario
+        Book first = createNewBook("123");
+        Book second = createNewBook("456");
+        entityManager.persist(first);
+        entityManager.persist(second);
+
+        // execucao
+        List<Book> result;
+        try (Stream<Book> books = bookRepository.streamAll()) {
+            result = books.collect(Collectors.toList());
+        }
+
+        // verificacoes
+        assertThat(result).containsExactly(first, second);
+    }
+
+    @Test
+    @DisplayName("Deve marcar o livro como emprestado apenas se ele estiver disponível.")
+    public void markLoanedTest() {
+        // cenario
+        Book book = createNewBook("123");
+        entityManager.persist(book);
+
+        // execucao
+        int first = bookRepository.markLoaned(book.getId());
+        int second = bookRepository.markLoaned(book.getId());
+        entityManager.clear();
+
+        // verificacoes
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isZero();
+        assertThat(entityManager.find(Book.class, book.getId()).isAvailable()).isFalse();
+        assertThat(entityManager.find(Book.class, book.getId()).getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve contar pelo filtro livros emprestados e já atualizados.")
+    public void countByFilterTest() {
+        // cenario
+        Book loaned = entityManager.persist(createNewBook("123"));
+        entityManager.persist(createNewBook("456"));
+        entityManager.flush();
+        bookRepository.markLoaned(loaned.getId());
+        entityManager.clear();
+
+        // execucao
+        long byIsbn = bookRepository.countByFilter(null, null, "123");
+        long all = bookRepository.countByFilter(null, null, null);
+
+        // verificacoes
+        assertThat(byIsbn).isEqualTo(1);
+        assertThat(all).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve resumir o catálogo e listar ids e versões a partir de um id.")
+    public void catalogVersionTest() {
+        // cenario
+        Book first = entityManager.persist(createNewBook("123"));
+        Book second = entityManager.persist(createNewBook("456"));
+        entityManager.flush();
+        bookRepository.markLoaned(second.getId());
+
+        // execucao
+        CatalogVersion catalog = bookRepository.findCatalogVersion();
+        List<BookVersion> versions = bookRepository.findVersionsAfter(first.getId(), PageRequest.of(0, 10));
+
+        // verificacoes
+        assertThat(catalog.getBooks()).isEqualTo(2);
+        assertThat(catalog.getMaxId()).isEqualTo(second.getId());
+        assertThat(catalog.getVersions()).isEqualTo(1);
+        assertThat(versions).extracting(BookVersion::getId).containsExactly(second.getId());
+        assertThat(versions).extracting(BookVersion::getVersion).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("Deve buscar os detalhes de vários livros pelos isbns.")
+    public void findDtosByIsbnsTest() {
+        // cenario
+        Book first = entityManager.persist(createNewBook("123"));
+        entityManager.persist(createNewBook("456"));
+        entityManager.flush();
+
+        // execucao
+        List<BookDTO> books = bookRepository.findDtosByIsbns(Arrays.asList("123", "789"));
+
+        // verificacoes
+        assertThat(books).extracting(BookDTO::getId).containsExactly(first.getId());
+        assertThat(books).extracting(BookDTO::getIsbn).containsExactly("123");
+    }
+
+    @Test
+    @DisplayName("Deve buscar os livros de vários isbns em ordem de id e emprestar somente os disponíveis.")
+    public void findLoanableByIsbnsAndMarkLoanedTest() {
+        // cenario
+        Book available = createNewBook("123");
+        Book loaned = createNewBook("456");
+        loaned.setAvailable(false);
+        entityManager.persist(available);
+        entityManager.persist(loaned);
+        entityManager.flush();
+
+        // execucao
+        List<LoanableBook> books = bookRepository.findLoanableByIsbns(Arrays.asList("789", "456", "123"));
+        int updated = bookRepository.markLoanedByIds(Arrays.asList(available.getId(), loaned.getId()));
+        entityManager.clear();
+
+        // verificacoes
+        assertThat(books).extracting(LoanableBook::getIsbn).containsExactly("123", "456");
+        assertThat(books).filteredOn(book -> book.getIsbn().equals("123"))
+            .extracting(LoanableBook::getAvailable).containsExactly(true);
+        assertThat(books).filteredOn(book -> book.getIsbn().equals("456"))
+            .extracting(LoanableBook::getAvailable).containsExactly(false);
+        assertThat(updated).isEqualTo(1);
+        assertThat(entityManager.find(Book.class, available.getId()).isAvailable()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve marcar como disponível o livro do empréstimo devolvido.")
+    public void markAvailableByLoanTest() {
+        // cenario
+        Book book = createNewBook("123");
+        entityManager.persist(book);
+        Loan loan = entityManager.persistAndFlush(
+            Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        bookRepository.markLoaned(book.getId());
+
+        // execucao
+        int updated = bookRepository.markAvailableByLoan(loan.getId());
+        int missing = bookRepository.markAvailableByLoan(-1L);
+
+        // verificacoes
+        assertThat(updated).isEqualTo(1);
+        assertThat(missing).isZero();
+        assertThat(bookRepository.markLoaned(book.getId())).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve mudar a versão do livro a cada empréstimo e devolução.")
+    public void loansChangeBookVersionTest() {
+        // cenario
+        Book book = entityManager.persistFlushFind(createNewBook("123"));
+        Loan loan = entityManager.persistAndFlush(
+            Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+
+        // execucao
+        bookRepository.markLoaned(book.getId());
+        Optional<Long> loaned = bookRepository.findVersionById(book.getId());
+        bookRepository.markAvailableByLoan(loan.getId());
+        Optional<Long> returned = bookRepository.findVersionById(book.getId());
+
+        // verificacoes
+        assertThat(loaned).contains(1L);
+        assertThat(returned).contains(2L);
+        assertThat(bookRepository.findVersionById(book.getId() + 1)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Não deve carregar os empréstimos ao comparar ou imprimir um livro")
+    public void equalsDoesNotLoadLoansTest() {
+        // cenario
+        Book book = entityManager.persist(createNewBook("123"));
+        entityManager.persist(Loan.builder().book(book).customer("Fulano").loanDate(LocalDate.now()).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        // execucao
+        Book found = bookRepository.findById(book.getId()).get();
+        found.hashCode();
+        found.toString();
+        boolean equal = found.equals(createNewBook("123"));
+
+        // verificacao
+        assertThat(equal).isFalse();
+        assertThat(Hibernate.isInitialized(found.getLoans())).isFalse();
+    }
+
     public static Book createNewBook(final String isbn) {
         return Book.builder()
             .title("Aventuras")
@@ -0,0 +1,115 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import com.cursowendt.libraryapi.model.entity.JobPartition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class JobPartitionRepositoryTest {
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    JobPartitionRepository repository;
+
+    @Test
+    @DisplayName("Deve listar apenas as partições sem concessão ou com a concessão expirada")
+    public void findClaimableTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        persist(0, null, null, null);
+        persist(1, "node-a", now.minusSeconds(1), null);
+        persist(2, "node-a", now.plusMinutes(5), null);
+        persist(3, null, null, now);
+        persist(4, "node-a", now.minusSeconds(1), null).setAttempts(3);
+        entityManager.flush();
+
+        // execucao / verificacao
+        assertThat(repository.findClaimable("late-loans", now, 3)).containsExactly("late-loans:0", "late-loans:1");
+        assertThat(repository.countParked("late-loans", now, 3)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Deve conceder a partição a uma única instância enquanto a concessão for válida")
+    public void claimTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        persist(0, null, null, null);
+        entityManager.flush();
+
+        // execucao
+        int first = repository.claim("late-loans:0", "node-a", now, now.plusMinutes(5), 2);
+        int second = repository.claim("late-loans:0", "node-b", now, now.plusMinutes(5), 2);
+        int afterExpiry = repository.claim("late-loans:0", "node-b", now.plusMinutes(6), now.plusMinutes(11), 2);
+        int exhausted = repository.claim("late-loans:0", "node-c", now.plusMinutes(12), now.plusMinutes(17), 2);
+        entityManager.clear();
+
+        // verificacao
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isZero();
+        assertThat(afterExpiry).isEqualTo(1);
+        assertThat(exhausted).isZero();
+        JobPartition partition = repository.findById("late-loans:0").get();
+        assertThat(partition.getOwner()).isEqualTo("node-b");
+        assertThat(partition.getAttempts()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Deve registrar o progresso apenas para a instância que detém a concessão")
+    public void checkpointTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        persist(0, "node-a", now.plusMinutes(5), null);
+        entityManager.flush();
+
+        // execucao
+        LocalDate cutoff = LocalDate.now();
+        int stale = repository.checkpoint("late-loans:0", "node-b", cutoff, 50L, 10, now.plusMinutes(10));
+        int superseded = repository.checkpoint("late-loans:0", "node-a", cutoff.minusDays(1), 50L, 10, now.plusMinutes(10));
+        int renewed = repository.checkpoint("late-loans:0", "node-a", cutoff, 50L, 10, now.plusMinutes(10));
+        int finished = repository.finish("late-loans:0", "node-a", cutoff, now);
+        entityManager.clear();
+
+        // verificacao
+        assertThat(stale).isZero();
+        assertThat(superseded).isZero();
+        assertThat(renewed).isEqualTo(1);
+        assertThat(finished).isEqualTo(1);
+        JobPartition partition = repository.findById("late-loans:0").get();
+        assertThat(partition.getLastId()).isEqualTo(50L);
+        assertThat(partition.getProcessed()).isEqualTo(10);
+        assertThat(partition.getOwner()).isNull();
+        assertThat(repository.countByJobAndFinishedAtIsNull("late-loans")).isZero();
+        assertThat(repository.sumProcessed("late-loans")).isEqualTo(10);
+    }
+
+    private JobPartition persist(final int index, final String owner, final LocalDateTime leaseUntil,
+                                 final LocalDateTime finishedAt) {
+        return entityManager.persist(JobPartition.builder()
+            .id(JobPartition.id("late-loans", index))
+            .job("late-loans")
+            .partitionIndex(index)
+            .cutoff(LocalDate.now())
+            .lastId(index * 100L)
+            .upTo(index * 100L + 100)
+            .owner(owner)
+            .leaseUntil(leaseUntil)
+            .finishedAt(finishedAt)
+            .build());
+    }
+
+}
@@ -1,7 +1,12 @@
 package com.cursowendt.libraryapi.model.repository;
 
+import com.cursowendt.libraryapi.api.dto.LoanDTO;
 import com.cursowendt.libraryapi.model.entity.Book;
 import com.cursowendt.libraryapi.model.entity.Loan;
+import com.cursowendt.libraryapi.model.projection.DueLoan;
+import com.cursowendt.libraryapi.model.projection.IdRange;
+import com.cursowendt.libraryapi.model.projection.LateLoan;
+import com.cursowendt.libraryapi.model.projection.ReturnableLoan;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,11 +15,15 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.cursowendt.libraryapi.model.repository.BookRepositoryTest.createNewBook;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -30,19 +39,6 @@ public class LoanRepositoryTest {
     @Autowired
     private TestEntityManager entityManager;
 
-    @Test
-    @DisplayName("Deve verificar se existe o empréstimo não devolvido para o livro")
-    public void existsByBookAndNotReturnedTest() {
-        // given - cenario
-        Loan loan = createAndPersistLoan(LocalDate.now());
-        Book book = loan.getBook();
-
-        // when - execucao
-        Boolean exists = loanRepository.existsByBookAndNotReturned(book);
-
-        assertThat(exists).isTrue();
-    }
-
     @Test
     @DisplayName("Deve buscar o emprestimo pelo isbn do livro ou customer")
     public void findByBookIsbnOrCustomer() {
@@ -50,40 +46,170 @@ public class LoanRepositoryTest {
         Loan loan = createAndPersistLoan(LocalDate.now());
 
         //execucao
-        Page<Loan> result = loanRepository.findByBookIsbnOrCustomer("123", "Fulando", PageRequest.of(0, 10));
+        Page<LoanDTO> result = loanRepository.findDtoByBookIsbnOrCustomer("123", "Fulando", PageRequest.of(0, 10));
 
         // verificacao
         assertThat(result.getContent()).hasSize(1);
-        assertThat(result.getContent()).contains(loan);
+        assertThat(result.getContent()).extracting(LoanDTO::getId).containsExactly(loan.getId());
+        assertThat(result.getContent().get(0).getBook().getIsbn()).isEqualTo("123");
         assertThat(result.getPageable().getPageSize()).isEqualTo(10);
         assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
         assertThat(result.getTotalElements()).isEqualTo(1);
     }
 
     @Test
-    @DisplayName("Deve obter empréstimos cuja data do empréstimo for menor ou igual a três dias atrás e não retornados")
-    public void findByLoanDateLessThanAndNotReturned() {
+    @DisplayName("Deve buscar os empréstimos atrasados em lotes a partir do último id")
+    public void findLateLoansBetween() {
+        // given
+        Loan first = createAndPersistLoan(LocalDate.now().minusDays(5));
+        Loan second = Loan.builder().book(first.getBook()).customer("Ciclano").customerEmail("ciclano@email.com")
+            .loanDate(LocalDate.now().minusDays(6)).build();
+        Loan returned = Loan.builder().book(first.getBook()).customer("Beltrano").returned(true)
+            .loanDate(LocalDate.now().minusDays(6)).build();
+        entityManager.persist(second);
+        entityManager.persist(returned);
+
+        // when
+        LocalDate cutoff = LocalDate.now();
+        List<LateLoan> firstChunk = loanRepository.findLateLoansBetween(cutoff, 0L, Long.MAX_VALUE, PageRequest.of(0, 1));
+        List<LateLoan> lastChunk = loanRepository.findLateLoansBetween(cutoff, first.getId(), Long.MAX_VALUE, PageRequest.of(0, 1));
+        List<LateLoan> bounded = loanRepository.findLateLoansBetween(cutoff, 0L, first.getId(), PageRequest.of(0, 10));
+        IdRange range = loanRepository.findLateLoanIdRange(cutoff);
+
+        // then
+        assertThat(firstChunk).extracting(LateLoan::getId).containsExactly(first.getId());
+        assertThat(lastChunk).extracting(LateLoan::getCustomerEmail).containsExactly("ciclano@email.com");
+        assertThat(bounded).extracting(LateLoan::getId).containsExactly(first.getId());
+        assertThat(range.getMinId()).isEqualTo(first.getId());
+        assertThat(range.getMaxId()).isEqualTo(second.getId());
+    }
+
+    @Test
+    @DisplayName("Deve buscar a próxima página de empréstimos do livro a partir do cursor")
+    public void findByBookAfter() {
+        // given
+        Loan first = createAndPersistLoan(LocalDate.now());
+        Loan second = Loan.builder().book(first.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build();
+        entityManager.persist(second);
+
+        // when
+        Long bookId = first.getBook().getId();
+        Slice<LoanDTO> firstPage = loanRepository.findDtoByBookIdAfter(bookId, 0L, PageRequest.of(0, 1));
+        Slice<LoanDTO> lastPage = loanRepository.findDtoByBookIdAfter(bookId, first.getId(), PageRequest.of(0, 1));
+
+        // then
+        assertThat(firstPage.getContent()).extracting(LoanDTO::getId).containsExactly(first.getId());
+        assertThat(firstPage.hasNext()).isTrue();
+        assertThat(lastPage.getContent()).extracting(LoanDTO::getId).containsExactly(second.getId());
+        assertThat(lastPage.hasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Deve buscar a próxima página de empréstimos pelo isbn ou customer a partir do cursor")
+    public void findByBookIsbnOrCustomerAfter() {
         // given
-        Loan loan = createAndPersistLoan(LocalDate.now().minusDays(5));
+        Loan loan = createAndPersistLoan(LocalDate.now());
 
         // when
-        List<Loan> result = loanRepository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+        Slice<LoanDTO> result = loanRepository.findDtoByBookIsbnOrCustomerAfter("123", "Fulano", 0L, PageRequest.of(0, 10));
+        Slice<LoanDTO> afterLast = loanRepository.findDtoByBookIsbnOrCustomerAfter("123", "Fulano", loan.getId(), PageRequest.of(0, 10));
 
         // then
-        assertThat(result).hasSize(1).contains(loan);
+        assertThat(result.getContent()).extracting(LoanDTO::getId).containsExactly(loan.getId());
+        assertThat(result.hasNext()).isFalse();
+        assertThat(afterLast.getContent()).isEmpty();
     }
 
     @Test
-    @DisplayName("Deve retornar vazio quando houver empréstimos atrasados")
-    public void notFindByLoanDateLessThanAndNotReturned() {
+    @DisplayName("Deve percorrer todos os empréstimos com seus livros em ordem de id")
+    public void streamAllTest() {
         // given
         Loan loan = createAndPersistLoan(LocalDate.now());
+        entityManager.flush();
+        entityManager.clear();
 
         // when
-        List<Loan> result = loanRepository.findByLoanDateLessThanAndNotReturned(LocalDate.now().minusDays(4));
+        List<Loan> result;
+        try (Stream<Loan> loans = loanRepository.streamAll()) {
+            result = loans.collect(Collectors.toList());
+        }
 
         // then
-        assertThat(result).isEmpty();
+        assertThat(result).extracting(Loan::getId).containsExactly(loan.getId());
+        assertThat(result.get(0).getBook().getIsbn()).isEqualTo("123");
+    }
+
+    @Test
+    @DisplayName("Deve definir o vencimento a partir da data do empréstimo e buscar os empréstimos em aberto pelo vencimento")
+    public void dueDateTest() {
+        // given
+        Loan late = createAndPersistLoan(LocalDate.now().minusDays(5));
+        Loan open = Loan.builder().book(late.getBook()).customer("Ciclano").loanDate(LocalDate.now()).build();
+        Loan returned = Loan.builder().book(late.getBook()).customer("Beltrano").returned(true).loanDate(LocalDate.now()).build();
+        entityManager.persist(open);
+        entityManager.persist(returned);
+        entityManager.flush();
+
+        // when
+        List<DueLoan> due;
+        try (Stream<DueLoan> stream = loanRepository.streamOpenDueFrom(LocalDate.now())) {
+            due = stream.collect(Collectors.toList());
+        }
+        List<LateLoan> lateByIds = loanRepository.findLateLoansByIds(LocalDate.now(),
+            Arrays.asList(late.getId(), open.getId(), returned.getId()));
+
+        // then
+        assertThat(late.getDueDate()).isEqualTo(LocalDate.now().minusDays(5).plusDays(Loan.LOAN_DAYS));
+        assertThat(due).extracting(DueLoan::getId).containsExactly(open.getId());
+        assertThat(due).extracting(DueLoan::getDueDate).containsExactly(LocalDate.now().plusDays(Loan.LOAN_DAYS));
+        assertThat(lateByIds).extracting(LateLoan::getId).containsExactly(late.getId());
+    }
+
+    @Test
+    @DisplayName("Deve devolver somente empréstimos em aberto e incrementar a versão")
+    public void markReturnedTest() {
+        // cenario
+        Loan open = createAndPersistLoan(LocalDate.now());
+        Loan returned = Loan.builder().book(open.getBook()).customer("Beltrano").returned(true).loanDate(LocalDate.now()).build();
+        entityManager.persist(returned);
+        entityManager.flush();
+        entityManager.clear();
+
+        // execucao
+        int first = loanRepository.markReturned(open.getId());
+        int second = loanRepository.markReturned(open.getId());
+        int alreadyReturned = loanRepository.markReturned(returned.getId());
+        int missing = loanRepository.markReturned(-1L);
+
+        // verificacao
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isZero();
+        assertThat(alreadyReturned).isZero();
+        assertThat(missing).isZero();
+        Loan reloaded = entityManager.find(Loan.class, open.getId());
+        assertThat(reloaded.getReturned()).isTrue();
+        assertThat(reloaded.getVersion()).isEqualTo(open.getVersion() + 1);
+    }
+
+    @Test
+    @DisplayName("Deve devolver em lote somente os empréstimos em aberto")
+    public void markReturnedByIdsTest() {
+        // cenario
+        Loan open = createAndPersistLoan(LocalDate.now());
+        Loan returned = Loan.builder().book(open.getBook()).customer("Beltrano").returned(true).loanDate(LocalDate.now()).build();
+        entityManager.persist(returned);
+        entityManager.flush();
+        List<Long> ids = Arrays.asList(open.getId(), returned.getId(), -1L);
+
+        // execucao
+        List<ReturnableLoan> returnable = loanRepository.findReturnableByIds(ids);
+        int updated = loanRepository.markReturnedByIds(ids);
+
+        // verificacao
+        assertThat(returnable).extracting(ReturnableLoan::getId).containsExactlyInAnyOrder(open.getId(), returned.getId());
+        assertThat(returnable).extracting(ReturnableLoan::getBookId).containsOnly(open.getBook().getId());
+        assertThat(returnable).extracting(ReturnableLoan::getReturned).containsExactlyInAnyOrder(null, true);
+        assertThat(updated).isEqualTo(1);
     }
 
     private Loan createAndPersistLoan(final LocalDate loanDate) {
@@ -0,0 +1,151 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import com.cursowendt.libraryapi.model.entity.OutboxMessage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest
+public class OutboxMessageRepositoryTest {
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    OutboxMessageRepository repository;
+
+    @Test
+    @DisplayName("Deve reivindicar apenas as mensagens pendentes, vencidas e sem reivindicação ativa")
+    public void claimTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage due = persist("due", OutboxMessage.Status.PENDING, now.minusMinutes(1), null);
+        OutboxMessage expiredClaim = persist("expired", OutboxMessage.Status.PENDING, now.minusMinutes(1), now.minusSeconds(1));
+        OutboxMessage claimedElsewhere = persist("claimed", OutboxMessage.Status.PENDING, now.minusMinutes(1), now.plusMinutes(5));
+        persist("later", OutboxMessage.Status.PENDING, now.plusMinutes(1), null);
+        persist("sent", OutboxMessage.Status.SENT, now.minusMinutes(1), null);
+        entityManager.flush();
+
+        // execucao
+        List<Long> claimable = repository.findClaimable(now, PageRequest.of(0, 10));
+        int claimed = repository.claim(
+            Arrays.asList(due.getId(), expiredClaim.getId(), claimedElsewhere.getId()), "token", now, now.plusMinutes(5));
+        entityManager.clear();
+
+        // verificacao
+        assertThat(claimable).containsExactly(due.getId(), expiredClaim.getId());
+        assertThat(claimed).isEqualTo(2);
+        assertThat(repository.findByClaimToken("token")).extracting(OutboxMessage::getDedupKey)
+            .containsExactlyInAnyOrder("due", "expired");
+    }
+
+    @Test
+    @DisplayName("Deve marcar como enviada apenas a mensagem reivindicada com o mesmo token")
+    public void markSentTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage message = persist("due", OutboxMessage.Status.PENDING, now, now.plusMinutes(5));
+        message.setClaimToken("token");
+        entityManager.flush();
+
+        // execucao
+        int stale = repository.markSent(message.getId(), "other", now);
+        int sent = repository.markSent(message.getId(), "token", now);
+        entityManager.clear();
+
+        // verificacao
+        assertThat(stale).isZero();
+        assertThat(sent).isEqualTo(1);
+        OutboxMessage found = repository.findById(message.getId()).get();
+        assertThat(found.getStatus()).isEqualTo(OutboxMessage.Status.SENT);
+        assertThat(found.getAttempts()).isEqualTo(1);
+        assertThat(found.getClaimToken()).isNull();
+    }
+
+    @Test
+    @DisplayName("Deve liberar a reivindicação sem contar tentativa")
+    public void releaseTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage message = persist("due", OutboxMessage.Status.PENDING, now, now.plusMinutes(5));
+        message.setClaimToken("token");
+        entityManager.flush();
+
+        // execucao
+        int released = repository.release(Arrays.asList(message.getId()), "token");
+        entityManager.clear();
+
+        // verificacao
+        assertThat(released).isEqualTo(1);
+        OutboxMessage found = repository.findById(message.getId()).get();
+        assertThat(found.getAttempts()).isZero();
+        assertThat(found.getClaimToken()).isNull();
+        assertThat(repository.findClaimable(now.plusSeconds(1), PageRequest.of(0, 10))).containsExactly(message.getId());
+    }
+
+    @Test
+    @DisplayName("Deve apagar apenas as mensagens enviadas antes do limite")
+    public void purgeSentTest() {
+        // cenario
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage old = persist("old", OutboxMessage.Status.SENT, now.minusDays(8), null);
+        old.setSentAt(now.minusDays(8));
+        OutboxMessage recent = persist("recent", OutboxMessage.Status.SENT, now, null);
+        recent.setSentAt(now);
+        persist("pending", OutboxMessage.Status.PENDING, now.minusDays(8), null);
+        entityManager.flush();
+
+        // execucao
+        List<Long> ids = repository.findSentBefore(now.minusDays(7), PageRequest.of(0, 10));
+        int deleted = repository.deleteByIds(ids);
+        entityManager.clear();
+
+        // verificacao
+        assertThat(ids).containsExactly(old.getId());
+        assertThat(deleted).isEqualTo(1);
+        assertThat(repository.findAll()).extracting(OutboxMessage::getDedupKey)
+            .containsExactlyInAnyOrder("recent", "pending");
+    }
+
+    @Test
+    @DisplayName("Deve retornar as chaves de deduplicação já registradas")
+    public void findExistingDedupKeysTest() {
+        // cenario
+        persist("k1", OutboxMessage.Status.PENDING, LocalDateTime.now(), null);
+        entityManager.flush();
+
+        // execucao
+        List<String> keys = repository.findExistingDedupKeys(Arrays.asList("k1", "k2"));
+
+        // verificacao
+        assertThat(keys).containsExactly("k1");
+    }
+
+    private OutboxMessage persist(final String key, final OutboxMessage.Status status,
+                                  final LocalDateTime nextAttemptAt, final LocalDateTime claimedUntil) {
+        return entityManager.persist(OutboxMessage.builder()
+            .dedupKey(key)
+            .recipient("a@email.com")
+            .subject("assunto")
+            .text("texto")
+            .status(status)
+            .nextAttemptAt(nextAttemptAt)
+            .claimedUntil(claimedUntil)
+            .build());
+    }
+
+}
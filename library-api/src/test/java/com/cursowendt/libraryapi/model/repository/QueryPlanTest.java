@@ -0,0 +1,188 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import com.cursowendt.libraryapi.model.entity.Book;
+import com.cursowendt.libraryapi.model.projection.DueLoan;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs {@code EXPLAIN} on the SQL a repository query generated and checks the index H2 picked, so a change to a
+ * query or to the migrations that turns an index lookup into a table scan fails the build. The isbn-or-customer
+ * filters are left out: an OR across the join is answered with a scan.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+    "com.cursowendt.libraryapi.model.repository.SqlCapture")
+public class QueryPlanTest {
+
+    /**
+     * H2 backs the loan to book foreign key with an index of its own, so either one is a valid plan.
+     */
+    static final String[] BOOK_INDEXES = {"IX_LOAN_BOOK", "FK_LOAN_BOOK"};
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    LoanRepository loanRepository;
+
+    Book book;
+
+    @BeforeEach
+    public void setUp() {
+        book = entityManager.persistFlushFind(Book.builder().isbn("123").title("titulo").author("autor").build());
+        SqlCapture.clear();
+    }
+
+    @Test
+    @DisplayName("Deve buscar livros pelo isbn usando o índice único")
+    public void isbnLookupsUseUniqueIndexTest() {
+        bookRepository.existsByIsbn("123");
+        assertUsesIndex("UK_BOOK_ISBN");
+
+        bookRepository.findByIsbn("123");
+        assertUsesIndex("UK_BOOK_ISBN");
+
+        bookRepository.findExistingIsbns(Arrays.asList("123", "456"));
+        assertUsesIndex("UK_BOOK_ISBN");
+
+        bookRepository.findDtosByIsbns(Arrays.asList("123", "456"));
+        assertUsesIndex("UK_BOOK_ISBN");
+    }
+
+    @Test
+    @DisplayName("Deve paginar e atualizar livros pela chave primária")
+    public void bookKeysetAndUpdatesUsePrimaryKeyTest() {
+        bookRepository.findByFilterAfter(null, null, null, 0L, PageRequest.of(0, 10));
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.findDtoByFilterAfter(null, null, null, 0L, PageRequest.of(0, 10));
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.findDtoById(book.getId());
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.findDtosByIds(Arrays.asList(book.getId()));
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.findVersionById(book.getId());
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.findVersionsAfter(0L, PageRequest.of(0, 10));
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.markLoaned(book.getId());
+        assertUsesIndex("PRIMARY_KEY");
+    }
+
+    @Test
+    @DisplayName("Deve buscar os empréstimos de um livro pelo índice do livro")
+    public void loansByBookUseBookIndexTest() {
+        loanRepository.findDtoByBookId(book.getId(), PageRequest.of(0, 10));
+        assertUsesIndex(BOOK_INDEXES);
+
+        loanRepository.countByBookId(book.getId());
+        assertUsesIndex(BOOK_INDEXES);
+
+        loanRepository.findDtoByBookIdAfter(book.getId(), 0L, PageRequest.of(0, 10));
+        assertUsesIndex(BOOK_INDEXES);
+    }
+
+    @Test
+    @DisplayName("Deve buscar os empréstimos atrasados pelo índice de vencimento")
+    public void lateLoansUseDueDateIndexTest() {
+        loanRepository.findLateLoanIdRange(LocalDate.now());
+        assertUsesIndex("IX_LOAN_DUE_DATE");
+
+        try (Stream<DueLoan> loans = loanRepository.streamOpenDueFrom(LocalDate.now())) {
+            loans.count();
+        }
+        assertUsesIndex("IX_LOAN_DUE_DATE");
+    }
+
+    @Test
+    @DisplayName("Deve percorrer os empréstimos atrasados de uma partição pela chave primária")
+    public void lateLoanChunksUsePrimaryKeyTest() {
+        loanRepository.findLateLoansBetween(LocalDate.now(), 0L, 100L, PageRequest.of(0, 10));
+        assertUsesIndex("PRIMARY_KEY");
+
+        loanRepository.findLateLoansByIds(LocalDate.now(), Arrays.asList(1L, 2L));
+        assertUsesIndex("PRIMARY_KEY");
+    }
+
+    @Test
+    @DisplayName("Deve devolver empréstimos e liberar seus livros pela chave primária")
+    public void loanReturnsUsePrimaryKeyTest() {
+        loanRepository.markReturned(1L);
+        assertUsesIndex("PRIMARY_KEY");
+
+        loanRepository.findReturnableByIds(Arrays.asList(1L, 2L));
+        assertUsesIndex("PRIMARY_KEY");
+
+        loanRepository.markReturnedByIds(Arrays.asList(1L, 2L));
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.markAvailableByLoan(1L);
+        assertUsesIndex("PRIMARY_KEY");
+
+        bookRepository.markAvailableByIds(Arrays.asList(book.getId()));
+        assertUsesIndex("PRIMARY_KEY");
+    }
+
+    @Test
+    @DisplayName("Deve emprestar livros em lote pelo índice de isbn e pela chave primária")
+    public void bookCheckoutUsesIndexesTest() {
+        bookRepository.findLoanableByIsbns(Arrays.asList("123", "456"));
+        assertUsesIndex("UK_BOOK_ISBN");
+
+        bookRepository.markLoanedByIds(Arrays.asList(book.getId()));
+        assertUsesIndex("PRIMARY_KEY");
+    }
+
+    private void assertUsesIndex(final String... indexes) {
+        final String plan = explain(SqlCapture.last());
+        assertThat(plan).doesNotContain("tableScan");
+        assertThat(Arrays.stream(indexes)).anyMatch(index -> plan.contains("/* PUBLIC." + index));
+    }
+
+    private String explain(final String sql) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                final int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setObject(i, null);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getString(1);
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.cursowendt.libraryapi.model.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Records the SQL Hibernate sends, so tests can look at the plan of the statement a repository method issued.
+ */
+public class SqlCapture implements StatementInspector {
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    static void clear() {
+        STATEMENTS.clear();
+    }
+
+    static String last() {
+        return STATEMENTS.isEmpty() ? null : STATEMENTS.get(STATEMENTS.size() - 1);
+    }
+
+    @Override
+    public String inspect(final String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+}
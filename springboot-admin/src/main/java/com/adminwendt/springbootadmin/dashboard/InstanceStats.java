@@ -0,0 +1,44 @@
+package com.adminwendt.springbootadmin.dashboard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The {@code librarystats} document of one instance, or the reason it could not be read.
+ */
+public class InstanceStats {
+
+	private final String id;
+	private final String url;
+	private final String status;
+	private final JsonNode stats;
+	private final String error;
+
+	public InstanceStats(String id, String url, String status, JsonNode stats, String error) {
+		this.id = id;
+		this.url = url;
+		this.status = status;
+		this.stats = stats;
+		this.error = error;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public JsonNode getStats() {
+		return stats;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.adminwendt.springbootadmin.dashboard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.codecentric.boot.admin.server.domain.entities.Instance;
+import de.codecentric.boot.admin.server.services.InstanceRegistry;
+import de.codecentric.boot.admin.server.web.client.InstanceWebClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Backs the library dashboard view: reads the {@code librarystats} endpoint of every registered library-api
+ * instance in parallel and answers with the merged document, so the browser polls a single URL.
+ */
+@RestController
+public class LibraryDashboardController {
+
+	static final String ENDPOINT = "librarystats";
+
+	private final InstanceRegistry instanceRegistry;
+	private final InstanceWebClient instanceWebClient;
+	private final LibraryStatsAggregator aggregator;
+	private final String application;
+	private final Duration timeout;
+
+	public LibraryDashboardController(InstanceRegistry instanceRegistry,
+									  InstanceWebClient instanceWebClient,
+									  LibraryStatsAggregator aggregator,
+									  @Value("${library.dashboard.application:library-api}") String application,
+									  @Value("${library.dashboard.timeout:2s}") Duration timeout) {
+		this.instanceRegistry = instanceRegistry;
+		this.instanceWebClient = instanceWebClient;
+		this.aggregator = aggregator;
+		this.application = application;
+		this.timeout = timeout;
+	}
+
+	@GetMapping(path = "/library-dashboard", produces = "application/json")
+	public Mono<ObjectNode> dashboard() {
+		return instanceRegistry.getInstances(application)
+			.filter(Instance::isRegistered)
+			.flatMap(this::stats)
+			.collectSortedList((left, right) -> left.getId().compareTo(right.getId()))
+			.map(aggregator::aggregate);
+	}
+
+	private Mono<InstanceStats> stats(Instance instance) {
+		String id = instance.getId().getValue();
+		String url = instance.getRegistration().getServiceUrl();
+		String status = instance.getStatusInfo().getStatus();
+		if (!instance.getEndpoints().isPresent(ENDPOINT)) {
+			return Mono.just(new InstanceStats(id, url, status, null, "Endpoint " + ENDPOINT + " not exposed"));
+		}
+		return instanceWebClient.instance(instance)
+			.get()
+			.uri(ENDPOINT)
+			.retrieve()
+			.bodyToMono(JsonNode.class)
+			.timeout(timeout)
+			.map(stats -> new InstanceStats(id, url, status, stats, null))
+			.onErrorResume(ex -> Mono.just(new InstanceStats(id, url, status, null, ex.toString())));
+	}
+
+}
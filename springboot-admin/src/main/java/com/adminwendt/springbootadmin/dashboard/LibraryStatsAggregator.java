@@ -0,0 +1,125 @@
+package com.adminwendt.springbootadmin.dashboard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges the {@code librarystats} documents of every library-api instance into the dashboard view.
+ * <p>
+ * Percentiles cannot be added up, so across instances p50 is weighted by request count and p99 is the worst
+ * instance's. The late-loan partitions live in the shared database, so every instance reports the same unfinished
+ * count and the highest one is kept.
+ */
+@Component
+public class LibraryStatsAggregator {
+
+	private final ObjectMapper objectMapper;
+
+	public LibraryStatsAggregator(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	public ObjectNode aggregate(List<InstanceStats> instances) {
+		ObjectNode dashboard = objectMapper.createObjectNode();
+		ArrayNode instanceNodes = dashboard.putArray("instances");
+		ObjectNode pool = objectMapper.createObjectNode();
+		ObjectNode lateLoans = objectMapper.createObjectNode();
+		Map<String, ObjectNode> endpoints = new TreeMap<>();
+		Map<String, ObjectNode> repositories = new TreeMap<>();
+		Map<String, ObjectNode> caches = new TreeMap<>();
+
+		for (InstanceStats instance : instances) {
+			ObjectNode instanceNode = instanceNodes.addObject()
+				.put("id", instance.getId())
+				.put("url", instance.getUrl())
+				.put("status", instance.getStatus());
+			if (instance.getStats() == null) {
+				instanceNode.put("error", instance.getError());
+				continue;
+			}
+			JsonNode stats = instance.getStats();
+			instanceNode.set("pool", withSaturation(addPool(objectMapper.createObjectNode(), stats.path("pool"))));
+			instanceNode.set("lateLoans", stats.path("lateLoans"));
+
+			mergeLatencies(endpoints, stats.path("endpoints"));
+			mergeLatencies(repositories, stats.path("repositories"));
+			mergeCaches(caches, stats.path("caches"));
+			addPool(pool, stats.path("pool"));
+			sum(lateLoans, stats.path("lateLoans"), "remaining", "processed", "leaseLost");
+			lateLoans.put("unfinishedPartitions", Math.max(lateLoans.path("unfinishedPartitions").asLong(),
+				stats.path("lateLoans").path("unfinishedPartitions").asLong()));
+		}
+
+		dashboard.putArray("endpoints").addAll(finishLatencies(endpoints));
+		dashboard.putArray("repositories").addAll(finishLatencies(repositories));
+		ArrayNode cacheNodes = dashboard.putArray("caches");
+		caches.values().forEach(cache -> {
+			long hits = cache.path("hits").asLong();
+			long lookups = hits + cache.path("misses").asLong();
+			cacheNodes.add(cache.put("hitRate", lookups == 0 ? 0 : (double) hits / lookups));
+		});
+		dashboard.set("pool", withSaturation(pool));
+		dashboard.set("lateLoans", lateLoans);
+		return dashboard;
+	}
+
+	private void mergeLatencies(Map<String, ObjectNode> merged, JsonNode latencies) {
+		for (JsonNode latency : latencies) {
+			ObjectNode total = merged.computeIfAbsent(latency.path("name").asText(), name -> objectMapper.createObjectNode()
+				.put("name", name));
+			long count = latency.path("count").asLong();
+			total.put("weightedP50", total.path("weightedP50").asDouble() + latency.path("p50").asDouble() * count);
+			sum(total, latency, "count", "errors");
+			max(total, latency, "p99");
+		}
+	}
+
+	private ArrayNode finishLatencies(Map<String, ObjectNode> merged) {
+		ArrayNode nodes = objectMapper.createArrayNode();
+		merged.values().forEach(latency -> {
+			long count = latency.path("count").asLong();
+			double weightedP50 = latency.remove("weightedP50").asDouble();
+			nodes.add(latency.put("p50", count == 0 ? 0 : weightedP50 / count));
+		});
+		return nodes;
+	}
+
+	private void mergeCaches(Map<String, ObjectNode> merged, JsonNode caches) {
+		for (JsonNode cache : caches) {
+			ObjectNode total = merged.computeIfAbsent(cache.path("name").asText(), name -> objectMapper.createObjectNode()
+				.put("name", name));
+			sum(total, cache, "hits", "misses");
+		}
+	}
+
+	private static ObjectNode addPool(ObjectNode target, JsonNode pool) {
+		sum(target, pool, "active", "idle", "pending", "max");
+		max(target, pool, "acquireP99", "usageP99");
+		return target;
+	}
+
+	private static ObjectNode withSaturation(ObjectNode pool) {
+		long max = pool.path("max").asLong();
+		return pool.put("saturation", max == 0 ? 0 : pool.path("active").asDouble() / max);
+	}
+
+	private static void sum(ObjectNode target, JsonNode source, String... fields) {
+		for (String field : fields) {
+			target.put(field, target.path(field).asLong() + source.path(field).asLong());
+		}
+	}
+
+	private static void max(ObjectNode target, JsonNode source, String... fields) {
+		for (String field : fields) {
+			target.put(field, Math.max(target.path(field).asDouble(), source.path(field).asDouble()));
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Library dashboard: one top-level view that polls /library-dashboard, which merges the librarystats endpoint of
+ * every registered library-api instance. Written as a plain render function because the bundled Vue has no
+ * template compiler.
+ */
+(function () {
+  var REFRESH_MILLIS = 5000;
+
+  function ms(value) {
+    return value.toFixed(value < 10 ? 2 : 0) + ' ms';
+  }
+
+  function percent(value) {
+    return (value * 100).toFixed(1) + ' %';
+  }
+
+  function table(h, headers, rows) {
+    return h('table', {class: 'table is-fullwidth is-narrow is-hoverable'}, [
+      h('thead', [h('tr', headers.map(function (header) {
+        return h('th', header);
+      }))]),
+      h('tbody', rows.map(function (row) {
+        return h('tr', row.map(function (cell) {
+          return h('td', cell);
+        }));
+      }))
+    ]);
+  }
+
+  function latencies(h, title, values) {
+    var sorted = values.slice().sort(function (left, right) {
+      return right.p99 - left.p99;
+    });
+    return h('div', {class: 'box'}, [
+      h('h2', {class: 'title is-5'}, title),
+      table(h, ['Name', 'Count', 'Errors', 'p50', 'p99'], sorted.map(function (latency) {
+        return [latency.name, latency.count, latency.errors, ms(latency.p50), ms(latency.p99)];
+      }))
+    ]);
+  }
+
+  var LibraryDashboard = {
+    data: function () {
+      return {dashboard: null, error: null, timer: null};
+    },
+    created: function () {
+      this.refresh();
+      this.timer = setInterval(this.refresh, REFRESH_MILLIS);
+    },
+    beforeDestroy: function () {
+      clearInterval(this.timer);
+    },
+    methods: {
+      refresh: function () {
+        var vm = this;
+        fetch('library-dashboard', {credentials: 'include', headers: {Accept: 'application/json'}})
+          .then(function (response) {
+            if (!response.ok) {
+              throw new Error('HTTP ' + response.status);
+            }
+            return response.json();
+          })
+          .then(function (dashboard) {
+            vm.dashboard = dashboard;
+            vm.error = null;
+          })
+          .catch(function (error) {
+            vm.error = error.message;
+          });
+      }
+    },
+    render: function (h) {
+      var dashboard = this.dashboard;
+      var children = [];
+      if (this.error) {
+        children.push(h('div', {class: 'notification is-danger'}, 'Could not load the dashboard: ' + this.error));
+      }
+      if (!dashboard) {
+        return h('section', {class: 'section'}, children);
+      }
+      children.push(h('div', {class: 'box'}, [
+        h('h2', {class: 'title is-5'}, 'Instances'),
+        table(h, ['Instance', 'Status', 'Pool saturation', 'Pending connections', 'Late loans left', 'Error'],
+          dashboard.instances.map(function (instance) {
+            return [
+              instance.url || instance.id,
+              instance.status,
+              instance.pool ? percent(instance.pool.saturation) : '-',
+              instance.pool ? instance.pool.pending : '-',
+              instance.lateLoans ? instance.lateLoans.remaining : '-',
+              instance.error || ''
+            ];
+          }))
+      ]));
+      children.push(h('div', {class: 'columns'}, [
+        h('div', {class: 'column'}, [h('div', {class: 'box'}, [
+          h('h2', {class: 'title is-5'}, 'Connection pool'),
+          table(h, ['Active', 'Idle', 'Pending', 'Max', 'Saturation', 'Acquire p99', 'Usage p99'], [[
+            dashboard.pool.active, dashboard.pool.idle, dashboard.pool.pending, dashboard.pool.max,
+            percent(dashboard.pool.saturation), ms(dashboard.pool.acquireP99), ms(dashboard.pool.usageP99)
+          ]])
+        ])]),
+        h('div', {class: 'column'}, [h('div', {class: 'box'}, [
+          h('h2', {class: 'title is-5'}, 'Late loans job'),
+          table(h, ['Unfinished partitions', 'Loans left', 'Processed', 'Leases lost'], [[
+            dashboard.lateLoans.unfinishedPartitions, dashboard.lateLoans.remaining,
+            dashboard.lateLoans.processed, dashboard.lateLoans.leaseLost
+          ]])
+        ])]),
+        h('div', {class: 'column'}, [h('div', {class: 'box'}, [
+          h('h2', {class: 'title is-5'}, 'Caches'),
+          table(h, ['Cache', 'Hit rate', 'Hits', 'Misses'], dashboard.caches.map(function (cache) {
+            return [cache.name, percent(cache.hitRate), cache.hits, cache.misses];
+          }))
+        ])])
+      ]));
+      children.push(latencies(h, 'Endpoints', dashboard.endpoints));
+      children.push(latencies(h, 'Repository methods', dashboard.repositories));
+      return h('section', {class: 'section'}, children);
+    }
+  };
+
+  SBA.use({
+    install: function (options) {
+      options.viewRegistry.addView({
+        name: 'library',
+        path: '/library',
+        component: LibraryDashboard,
+        label: 'Library',
+        order: 1000
+      });
+    }
+  });
+}());
@@ -0,0 +1,73 @@
+package com.adminwendt.springbootadmin.dashboard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LibraryStatsAggregatorTest {
+
+	ObjectMapper objectMapper = new ObjectMapper();
+
+	LibraryStatsAggregator aggregator = new LibraryStatsAggregator(objectMapper);
+
+	@Test
+	public void mergeAcrossInstancesTest() throws IOException {
+		// cenario
+		InstanceStats first = new InstanceStats("a", "http://a", "UP", stats(
+			"{\"endpoints\":[{\"name\":\"GET /api/books\",\"count\":30,\"errors\":1,\"p50\":10,\"p99\":40}],"
+				+ "\"caches\":[{\"name\":\"count-estimate\",\"hits\":3,\"misses\":1}],"
+				+ "\"pool\":{\"active\":5,\"idle\":5,\"pending\":2,\"max\":10,\"acquireP99\":3,\"usageP99\":8},"
+				+ "\"lateLoans\":{\"unfinishedPartitions\":4,\"remaining\":100,\"processed\":500,\"leaseLost\":0}}"), null);
+		InstanceStats second = new InstanceStats("b", "http://b", "UP", stats(
+			"{\"endpoints\":[{\"name\":\"GET /api/books\",\"count\":10,\"errors\":0,\"p50\":30,\"p99\":90}],"
+				+ "\"caches\":[{\"name\":\"count-estimate\",\"hits\":1,\"misses\":3}],"
+				+ "\"pool\":{\"active\":10,\"idle\":0,\"pending\":0,\"max\":10,\"acquireP99\":12,\"usageP99\":4},"
+				+ "\"lateLoans\":{\"unfinishedPartitions\":4,\"remaining\":50,\"processed\":200,\"leaseLost\":1}}"), null);
+
+		// execucao
+		ObjectNode dashboard = aggregator.aggregate(Arrays.asList(first, second));
+
+		// verificacao
+		JsonNode endpoint = dashboard.path("endpoints").path(0);
+		assertThat(endpoint.path("count").asLong()).isEqualTo(40);
+		assertThat(endpoint.path("errors").asLong()).isEqualTo(1);
+		assertThat(endpoint.path("p50").asDouble()).isCloseTo(15, within(0.001));
+		assertThat(endpoint.path("p99").asDouble()).isEqualTo(90);
+		assertThat(endpoint.has("weightedP50")).isFalse();
+		assertThat(dashboard.path("caches").path(0).path("hitRate").asDouble()).isEqualTo(0.5);
+		assertThat(dashboard.path("pool").path("saturation").asDouble()).isEqualTo(0.75);
+		assertThat(dashboard.path("pool").path("acquireP99").asDouble()).isEqualTo(12);
+		assertThat(dashboard.path("instances").path(1).path("pool").path("saturation").asDouble()).isEqualTo(1);
+		assertThat(dashboard.path("lateLoans").path("unfinishedPartitions").asLong()).isEqualTo(4);
+		assertThat(dashboard.path("lateLoans").path("remaining").asLong()).isEqualTo(150);
+		assertThat(dashboard.path("lateLoans").path("leaseLost").asLong()).isEqualTo(1);
+	}
+
+	@Test
+	public void unreachableInstanceTest() throws IOException {
+		// cenario
+		InstanceStats up = new InstanceStats("a", "http://a", "UP", stats(
+			"{\"pool\":{\"active\":1,\"max\":10},\"endpoints\":[],\"repositories\":[],\"caches\":[]}"), null);
+		InstanceStats down = new InstanceStats("b", "http://b", "DOWN", null, "timeout");
+
+		// execucao
+		ObjectNode dashboard = aggregator.aggregate(Arrays.asList(up, down));
+
+		// verificacao
+		assertThat(dashboard.path("instances")).hasSize(2);
+		assertThat(dashboard.path("instances").path(1).path("error").asText()).isEqualTo("timeout");
+		assertThat(dashboard.path("pool").path("max").asLong()).isEqualTo(10);
+	}
+
+	private JsonNode stats(String json) throws IOException {
+		return objectMapper.readTree(json);
+	}
+
+}